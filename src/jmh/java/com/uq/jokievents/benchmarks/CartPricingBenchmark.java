@@ -0,0 +1,72 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.utils.CartPricing;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The running total in cents against recomputing the cart with BigDecimal on every change, over the same sequence
+ * of adds and removes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CartPricingBenchmark {
+
+    @Param({"8", "64"})
+    public int lines;
+
+    private double[] prices;
+    private int[] tickets;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        prices = new double[lines];
+        tickets = new int[lines];
+        for (int i = 0; i < lines; i++) {
+            prices[i] = BigDecimal.valueOf(random.nextInt(50_000), 2).doubleValue();
+            tickets[i] = 1 + random.nextInt(8);
+        }
+    }
+
+    @Benchmark
+    public long runningTotalInCents(Blackhole blackhole) {
+        long total = 0;
+        long[] lineCents = new long[lines];
+        for (int i = 0; i < lines; i++) {
+            lineCents[i] = CartPricing.lineTotalCents(prices[i], tickets[i]);
+            total += lineCents[i];
+            blackhole.consume(CartPricing.applyDiscount(total, 1500)); // The discounted total the cart view shows after each change
+        }
+        for (int i = 0; i < lines; i += 2) {
+            total -= lineCents[i];
+            blackhole.consume(CartPricing.applyDiscount(total, 1500));
+        }
+        return CartPricing.applyDiscount(total, 1500);
+    }
+
+    @Benchmark
+    public void recomputedWithBigDecimal(Blackhole blackhole) {
+        BigDecimal discountFactor = BigDecimal.ONE.subtract(new BigDecimal("0.15"));
+        for (int size = 1; size <= lines; size++) {
+            blackhole.consume(recompute(0, size, 1, discountFactor));
+        }
+        for (int removed = 0; removed < lines; removed += 2) {
+            blackhole.consume(recompute(removed + 2, lines, 1, discountFactor).add(recompute(1, removed + 1, 2, discountFactor)));
+        }
+    }
+
+    private BigDecimal recompute(int from, int to, int step, BigDecimal discountFactor) {
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = from; i < to; i += step) {
+            total = total.add(BigDecimal.valueOf(prices[i]).multiply(BigDecimal.valueOf(tickets[i])));
+        }
+        return total.multiply(discountFactor).setScale(2, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,77 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.model.enums.EventType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.*;
+
+// Seeded data shaped like the real collections, the same seed gives the same data on every run
+public final class Fixtures {
+
+    private static final String[] CITIES = {"Armenia", "Bogotá", "Medellín", "Cali", "Pereira", "Manizales", "Cartagena", "Barranquilla"};
+    private static final String[] WORDS = {"Rock", "Jazz", "Summit", "Fest", "Cup", "Live", "Night", "Tour", "Expo", "Classic"};
+    private static final String[] LOCALITIES = {"General", "Preferencial", "VIP", "Platea", "Palco"};
+
+    private Fixtures() {
+    }
+
+    public static Map<String, Event> events(int count, long seed) {
+        Random random = new Random(seed);
+        Map<String, Event> events = new LinkedHashMap<>();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 20, 0);
+        for (int i = 0; i < count; i++) {
+            List<Locality> localities = new ArrayList<>();
+            for (int l = 0; l < 1 + random.nextInt(LOCALITIES.length); l++) {
+                localities.add(Locality.builder()
+                        .name(LOCALITIES[l])
+                        .price(20 + random.nextInt(400) + random.nextInt(100) / 100.0)
+                        .maxCapacity(100 + random.nextInt(5000))
+                        .build());
+            }
+            Event event = Event.builder()
+                    .id(String.format("%024x", i))
+                    .name(WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i)
+                    .city(CITIES[random.nextInt(CITIES.length)])
+                    .address("Calle " + random.nextInt(200) + " # " + random.nextInt(100))
+                    .eventDate(start.plusHours(random.nextInt(24 * 365)))
+                    .eventType(EventType.values()[random.nextInt(EventType.values().length)])
+                    .availableForPurchase(true)
+                    .localities(localities)
+                    .build();
+            events.put(event.getId(), event);
+        }
+        return events;
+    }
+
+    public static List<Purchase> purchases(Map<String, Event> events, int count, int year, int month, long seed) {
+        Random random = new Random(seed);
+        List<Event> eventList = new ArrayList<>(events.values());
+        List<Purchase> purchases = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<LocalityOrder> items = new ArrayList<>();
+            BigDecimal total = BigDecimal.ZERO;
+            for (int j = 0; j < 1 + random.nextInt(3); j++) {
+                Event event = eventList.get(random.nextInt(eventList.size()));
+                Locality locality = event.getLocalities().get(random.nextInt(event.getLocalities().size()));
+                int tickets = 1 + random.nextInt(6);
+                double amount = locality.getPrice() * tickets;
+                items.add(new LocalityOrder(null, event.getId(), null, tickets, locality.getName(), amount));
+                total = total.add(BigDecimal.valueOf(amount));
+            }
+            Purchase purchase = new Purchase();
+            purchase.setId(String.format("%024x", i));
+            purchase.setClientId("client-" + random.nextInt(count / 4 + 1));
+            purchase.setPurchaseDate(LocalDateTime.of(year, month, 1 + random.nextInt(28), random.nextInt(24), 0));
+            purchase.setPurchasedItems(items);
+            purchase.setTotalAmount(total);
+            purchase.setPaymentMethod("PayPal");
+            purchases.add(purchase);
+        }
+        return purchases;
+    }
+}
@@ -0,0 +1,86 @@
+package com.uq.jokievents.benchmarks;
+
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Spring Data repositories backed by a map, so the services can be benchmarked without Mongo. Only the usual
+ * CRUD reads are implemented, anything else has to be given as a named query or it throws.
+ */
+public final class InMemoryRepositories {
+
+    private InMemoryRepositories() {
+    }
+
+    public static <R, T> R of(Class<R> repositoryType, Map<String, T> byId) {
+        return of(repositoryType, byId, Map.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <R, T> R of(Class<R> repositoryType, Map<String, T> byId, Map<String, Function<Object[], Object>> queries) {
+        return (R) Proxy.newProxyInstance(repositoryType.getClassLoader(), new Class<?>[]{repositoryType}, (proxy, method, args) -> {
+            String name = method.getName();
+            if (queries.containsKey(name)) {
+                return queries.get(name).apply(args);
+            }
+            switch (name) {
+                case "findById":
+                    return Optional.ofNullable(byId.get((String) args[0]));
+                case "existsById":
+                    return byId.containsKey((String) args[0]);
+                case "findAll":
+                    if (args == null || args.length == 0) {
+                        return new ArrayList<>(byId.values());
+                    }
+                    break;
+                case "findAllById":
+                    List<T> found = new ArrayList<>();
+                    for (Object id : (Iterable<?>) args[0]) {
+                        T entity = byId.get((String) id);
+                        if (entity != null) {
+                            found.add(entity);
+                        }
+                    }
+                    return found;
+                case "count":
+                    return (long) byId.size();
+                case "toString":
+                    return "InMemory" + repositoryType.getSimpleName();
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                default:
+                    break;
+            }
+            throw new UnsupportedOperationException(repositoryType.getSimpleName() + "." + name + " is not faked");
+        });
+    }
+
+    // A MongoTemplate that never reaches a database, findAll of the given type answers with the map values
+    @SuppressWarnings("unchecked")
+    public static <T> MongoTemplate template(Class<T> entityType, Map<String, T> byId) {
+        MongoDatabaseFactory noDatabase = (MongoDatabaseFactory) Proxy.newProxyInstance(MongoDatabaseFactory.class.getClassLoader(),
+                new Class<?>[]{MongoDatabaseFactory.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "getExceptionTranslator" -> new MongoExceptionTranslator();
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "NoDatabase";
+                    default -> throw new UnsupportedOperationException("MongoDatabaseFactory." + method.getName() + " is not faked");
+                });
+        return new MongoTemplate(noDatabase) {
+            @Override
+            public <E> List<E> findAll(Class<E> entityClass) {
+                if (entityClass != entityType) {
+                    throw new UnsupportedOperationException("findAll(" + entityClass.getSimpleName() + ") is not faked");
+                }
+                return (List<E>) new ArrayList<>(byId.values());
+            }
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.model.Client;
+import com.uq.jokievents.service.implementation.JwtServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JwtBenchmark {
+
+    private JwtServiceImpl jwtService;
+    private Client client;
+    private String token;
+
+    @Setup
+    public void setup() {
+        jwtService = new JwtServiceImpl(null, null);
+        ReflectionTestUtils.setField(jwtService, "SECRET_KEY", "a-benchmark-secret-that-is-long-enough-for-hs256");
+        client = Client.builder().id("6706a5101654657267419fef").email("someone@example.com").build();
+        token = jwtService.getClientToken(client);
+    }
+
+    @Benchmark
+    public String issueClientToken() {
+        return jwtService.getClientToken(client);
+    }
+
+    @Benchmark
+    public String verifyClientToken() {
+        return jwtService.getUsernameFromToken(token);
+    }
+}
@@ -0,0 +1,42 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.dtos.EventReportDTO;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.repository.EventRepository;
+import com.uq.jokievents.repository.PurchaseRepository;
+import com.uq.jokievents.service.implementation.AdminServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MonthlyReportBenchmark {
+
+    @Param({"200"})
+    public int events;
+
+    @Param({"2000", "20000"})
+    public int purchases;
+
+    private AdminServiceImpl adminService;
+
+    @Setup
+    public void setup() {
+        Map<String, Event> catalog = Fixtures.events(events, 42);
+        List<Purchase> month = Fixtures.purchases(catalog, purchases, 2024, 10, 7);
+        EventRepository eventRepository = InMemoryRepositories.of(EventRepository.class, catalog);
+        PurchaseRepository purchaseRepository = InMemoryRepositories.of(PurchaseRepository.class, Map.<String, Purchase>of(),
+                Map.of("findByPurchaseDateBetween", args -> month));
+        adminService = new AdminServiceImpl(null, eventRepository, null, purchaseRepository, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<EventReportDTO> monthlyEventReport() {
+        return adminService.generateMonthlyEventReport(10, 2024);
+    }
+}
@@ -0,0 +1,20 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.utils.Generators;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class QrCodeBenchmark {
+
+    // About the size of a signed ticket token
+    private final String ticketToken = "AQAYNjcwNmE1MTAxNjU0NjU3MjY3NDE5ZmVmABg2NmYzYjcxYzk1ZGNiOTU5MTU4MGQwNzgAA1ZJUAAEx9l3Yq1p0Qk2s8d1fZ3bGQ";
+
+    @Benchmark
+    public String generateQrCode() throws Exception {
+        return Generators.generateQRCode(ticketToken);
+    }
+}
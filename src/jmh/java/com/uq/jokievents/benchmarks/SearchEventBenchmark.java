@@ -0,0 +1,54 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.dtos.SearchEventDTO;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.enums.EventType;
+import com.uq.jokievents.repository.EventRepository;
+import com.uq.jokievents.service.implementation.ClientServiceImpl;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchEventBenchmark {
+
+    @Param({"1000", "20000"})
+    public int events;
+
+    private ClientServiceImpl clientService;
+    private SearchEventDTO byName;
+    private SearchEventDTO byCityAndDates;
+    private SearchEventDTO everything;
+
+    @Setup
+    public void setup() {
+        Map<String, Event> catalog = Fixtures.events(events, 42);
+        EventRepository eventRepository = InMemoryRepositories.of(EventRepository.class, catalog);
+        MongoTemplate catalogMongoTemplate = InMemoryRepositories.template(Event.class, catalog);
+        clientService = new ClientServiceImpl(null, null, null, null, eventRepository, null, null, null, catalogMongoTemplate, null);
+
+        byName = new SearchEventDTO("rock", "", null, null, null);
+        byCityAndDates = new SearchEventDTO("", "armenia", LocalDateTime.of(2024, 3, 1, 0, 0), LocalDateTime.of(2024, 9, 1, 0, 0), EventType.CONCERT);
+        everything = new SearchEventDTO("", "", null, null, null);
+    }
+
+    @Benchmark
+    public Map<String, Object> searchByName() {
+        return clientService.searchEvent(byName, 0, 20);
+    }
+
+    @Benchmark
+    public Map<String, Object> searchByCityDatesAndType() {
+        return clientService.searchEvent(byCityAndDates, 0, 20);
+    }
+
+    @Benchmark
+    public Map<String, Object> searchWithoutFilters() {
+        return clientService.searchEvent(everything, 3, 20);
+    }
+}
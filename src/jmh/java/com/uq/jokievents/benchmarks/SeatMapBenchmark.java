@@ -0,0 +1,51 @@
+package com.uq.jokievents.benchmarks;
+
+import com.uq.jokievents.utils.SeatMap;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Best available allocations in a stadium sized locality with many buyers at once, and the run length view the seats
+ * endpoint sends for a half sold one. A sold out locality is swapped for an empty one so the claims keep measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SeatMapBenchmark {
+
+    @Param({"60000"})
+    public int capacity;
+
+    private final AtomicReference<SeatMap> locality = new AtomicReference<>();
+    private SeatMap halfSold;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        locality.set(new SeatMap(capacity));
+        halfSold = new SeatMap(capacity);
+        Random random = new Random(42);
+        while (halfSold.available() > capacity / 2) {
+            halfSold.claim(random.nextInt(capacity)); // Scattered sales, the worst case for the runs
+        }
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int[] claimBestAvailable() {
+        SeatMap seatMap = locality.get();
+        int[] seats = seatMap.claimBestAvailable(1 + ThreadLocalRandom.current().nextInt(8));
+        if (seats.length == 0) {
+            locality.compareAndSet(seatMap, new SeatMap(capacity));
+        }
+        return seats;
+    }
+
+    @Benchmark
+    public int[] runLengths() {
+        return halfSold.runLengths();
+    }
+}
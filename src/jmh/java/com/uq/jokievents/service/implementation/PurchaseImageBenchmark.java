@@ -0,0 +1,40 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.benchmarks.Fixtures;
+import com.uq.jokievents.benchmarks.InMemoryRepositories;
+import com.uq.jokievents.model.Client;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.repository.EventRepository;
+import io.micrometer.observation.ObservationRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// In the service package because createCustomPurchaseImage is package private
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PurchaseImageBenchmark {
+
+    private PaymentServiceImpl paymentService;
+    private Client client;
+    private Purchase purchase;
+
+    @Setup
+    public void setup() {
+        System.setProperty("java.awt.headless", "true");
+        Map<String, Event> catalog = Fixtures.events(50, 42);
+        EventRepository eventRepository = InMemoryRepositories.of(EventRepository.class, catalog);
+        paymentService = new PaymentServiceImpl(null, null, null, null, eventRepository, null, null, null, null, null, null, null, null, ObservationRegistry.NOOP);
+        client = Client.builder().id("client").name("Laura Gómez").email("laura@example.com").build();
+        purchase = Fixtures.purchases(catalog, 1, 2024, 10, 7).get(0);
+    }
+
+    @Benchmark
+    public BufferedImage createPurchaseImage() {
+        return paymentService.createCustomPurchaseImage(client, purchase);
+    }
+}
@@ -0,0 +1,152 @@
+package com.uq.jokievents.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * One virtual user. Registers once and then goes through browse, search, order-locality, apply-coupon,
+ * create-payment and success as many times as it is told. A failing step ends that iteration, the same as a real
+ * buyer giving up.
+ */
+public class CheckoutScenario implements Runnable {
+
+    static final String COUPON = "ONSALE10";
+
+    private final HttpClient http;
+    private final ObjectMapper objectMapper;
+    private final String baseUrl;
+    private final List<Event> events;
+    private final LatencyRecorder recorder;
+    private final int user;
+    private final int iterations;
+    private final Random random;
+
+    private String clientId;
+
+    public CheckoutScenario(HttpClient http, ObjectMapper objectMapper, String baseUrl, List<Event> events,
+                            LatencyRecorder recorder, int user, int iterations) {
+        this.http = http;
+        this.objectMapper = objectMapper;
+        this.baseUrl = baseUrl;
+        this.events = events;
+        this.recorder = recorder;
+        this.user = user;
+        this.iterations = iterations;
+        this.random = new Random(user);
+    }
+
+    @Override
+    public void run() {
+        if (!register()) {
+            return;
+        }
+        for (int i = 0; i < iterations; i++) {
+            checkout();
+        }
+    }
+
+    private boolean register() {
+        Map<String, Object> body = Map.of(
+                "idCard", String.format("LT%08d", user),
+                "name", "Load Tester " + user,
+                "address", "Calle " + user,
+                "phone", "+57 300 " + String.format("%07d", user),
+                "email", "loadtester" + user + "@jokievents.test",
+                "password", "loadtest");
+        JsonNode response = send("POST /auth/register-client", post("/auth/register-client", body));
+        if (response == null) {
+            return false;
+        }
+        clientId = response.path("data").asText();
+        return true;
+    }
+
+    private void checkout() {
+        if (send("GET /api/client/get-paginated-events", get("/api/client/get-paginated-events?page=" + random.nextInt(5) + "&size=16")) == null) {
+            return;
+        }
+
+        Event event = events.get(random.nextInt(events.size()));
+        Map<String, Object> search = new HashMap<>();
+        search.put("eventName", event.getName().split(" ")[0]);
+        search.put("city", event.getCity());
+        search.put("eventType", event.getEventType());
+        if (send("POST /api/client/search-event", post("/api/client/search-event?page=0&size=16", search)) == null) {
+            return;
+        }
+
+        Locality locality = event.getLocalities().get(random.nextInt(event.getLocalities().size()));
+        int tickets = 1 + random.nextInt(4);
+        Map<String, Object> order = Map.of(
+                "eventId", event.getId(),
+                "localityName", locality.getName(),
+                "totalPaymentAmount", BigDecimal.valueOf(locality.getPrice()).multiply(BigDecimal.valueOf(tickets)),
+                "selectedTickets", tickets);
+        if (send("POST /api/client/{clientId}/order-locality", post("/api/client/" + clientId + "/order-locality", order)) == null) {
+            return;
+        }
+
+        if (send("POST /api/client/{clientId}/apply-coupon", post("/api/client/" + clientId + "/apply-coupon?couponName=" + COUPON, null)) == null) {
+            return;
+        }
+
+        JsonNode payment = send("POST /api/payment/{clientId}/create-payment", post("/api/payment/" + clientId + "/create-payment", null));
+        if (payment == null) {
+            return;
+        }
+        String approvalUrl = payment.path("data").asText();
+        String token = approvalUrl.substring(approvalUrl.indexOf("token=") + "token=".length());
+        send("GET /api/payment/success", get("/api/payment/success?token=" + URLEncoder.encode(token, StandardCharsets.UTF_8)));
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30)).GET().build();
+    }
+
+    private HttpRequest post(String path, Object body) {
+        try {
+            HttpRequest.BodyPublisher publisher = body == null
+                    ? HttpRequest.BodyPublishers.noBody()
+                    : HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body));
+            return HttpRequest.newBuilder(URI.create(baseUrl + path)).timeout(Duration.ofSeconds(30))
+                    .header("Content-Type", "application/json")
+                    .POST(publisher)
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Returns the parsed body, or null when the call failed so the iteration stops there
+    private JsonNode send(String endpoint, HttpRequest request) {
+        long start = System.nanoTime();
+        try {
+            HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+            boolean ok = response.statusCode() / 100 == 2;
+            recorder.record(endpoint, System.nanoTime() - start, ok);
+            return ok ? objectMapper.readTree(response.body()) : null;
+        } catch (IOException e) {
+            recorder.record(endpoint, System.nanoTime() - start, false);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+}
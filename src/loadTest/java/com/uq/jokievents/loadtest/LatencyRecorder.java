@@ -0,0 +1,66 @@
+package com.uq.jokievents.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects every request latency per endpoint. A run is a few hundred thousand requests at most, so the raw samples
+ * are kept and sorted once at the end instead of bucketing them into a histogram.
+ */
+public class LatencyRecorder {
+
+    private final Map<String, Samples> byEndpoint = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, long nanos, boolean ok) {
+        byEndpoint.computeIfAbsent(endpoint, name -> new Samples()).add(nanos, ok);
+    }
+
+    /**
+     * @param elapsedNanos wall time of the whole run, throughput is measured against it
+     */
+    public List<EndpointStats> summarize(long elapsedNanos) {
+        List<EndpointStats> stats = new ArrayList<>();
+        byEndpoint.forEach((endpoint, samples) -> stats.add(samples.summarize(endpoint, elapsedNanos)));
+        stats.sort((a, b) -> a.endpoint().compareTo(b.endpoint()));
+        return stats;
+    }
+
+    public record EndpointStats(String endpoint, int requests, int errors, double throughputPerSecond,
+                                double p50Ms, double p90Ms, double p99Ms, double maxMs) {}
+
+    private static class Samples {
+        private long[] nanos = new long[1024];
+        private int size;
+        private int errors;
+
+        synchronized void add(long latency, boolean ok) {
+            if (size == nanos.length) {
+                nanos = Arrays.copyOf(nanos, size * 2);
+            }
+            nanos[size++] = latency;
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        synchronized EndpointStats summarize(String endpoint, long elapsedNanos) {
+            long[] sorted = Arrays.copyOf(nanos, size);
+            Arrays.sort(sorted);
+            return new EndpointStats(endpoint, size, errors, size / (elapsedNanos / 1e9),
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        }
+
+        // Nearest rank
+        private static double percentile(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(quantile * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+}
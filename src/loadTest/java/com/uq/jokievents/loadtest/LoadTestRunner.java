@@ -0,0 +1,196 @@
+package com.uq.jokievents.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import com.uq.jokievents.JokieventsApplication;
+import com.uq.jokievents.model.Coupon;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.model.enums.CouponType;
+import com.uq.jokievents.model.enums.EventType;
+import org.bson.types.ObjectId;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Boots JokieventsApplication on a random port with embedded Mongo, GreenMail as the SMTP server, local image
+ * storage and the simulated payment gateway, seeds a catalog and runs loadtest.users virtual users through the
+ * checkout at the same time. Run it with the loadTest Gradle task. The seeded data is not cleaned up, so point
+ * -PmongoUri at a throwaway database.
+ * <p>
+ * Requests are served on virtual threads when the build runs on Java 21 (-PjavaVersion=21). Run it again with
+ * -PvirtualThreads=false to get the numbers of the 200 thread Tomcat pool under the same gateway latency.
+ */
+public class LoadTestRunner {
+
+    private static final String[] CITIES = {"Armenia", "Bogota", "Medellin", "Cali", "Pereira"};
+    private static final String[] NAMES = {"Rock", "Salsa", "Jazz", "Tech", "Comedy", "Opera", "Vallenato", "Indie"};
+    // 1x1 png, only used as the default image when something is missing
+    private static final String PIXEL = "data:image/png;base64,iVBORw0KGgoAAAANSUhEUgAAAAEAAAABCAYAAAAfFcSJAAAADUlEQVR42mP8z8BQDwAEhQGAhKmMIQAAAABJRU5ErkJggg==";
+
+    public static void main(String[] args) throws Exception {
+        int users = Integer.getInteger("loadtest.users", 20);
+        int iterations = Integer.getInteger("loadtest.iterations", 10);
+        int eventCount = Integer.getInteger("loadtest.events", 200);
+        long gatewayLatencyMs = Long.getLong("loadtest.gateway-latency-ms", 150L);
+        boolean virtualThreads = Boolean.parseBoolean(System.getProperty("loadtest.virtual-threads", "true"));
+        Path reportDir = Path.of(System.getProperty("loadtest.report-dir", "build/reports/loadtest"));
+
+        GreenMail smtp = new GreenMail(ServerSetupTest.SMTP.dynamicPort());
+        smtp.start();
+
+        SpringApplication application = new SpringApplication(JokieventsApplication.class);
+        application.setAdditionalProfiles("loadtest");
+        application.setDefaultProperties(properties(smtp.getSmtp().getPort(), gatewayLatencyMs, virtualThreads));
+        ConfigurableApplicationContext context = application.run(args);
+        try {
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            MongoTemplate mongoTemplate = context.getBean(MongoTemplate.class);
+            List<Event> events = seed(mongoTemplate, eventCount);
+
+            HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            LatencyRecorder recorder = new LatencyRecorder();
+
+            System.out.printf("Running %d users x %d checkouts against port %d (%s)%n", users, iterations, port,
+                    virtualThreads && Runtime.version().feature() >= 21 ? "virtual threads" : "platform threads");
+            ExecutorService virtualUsers = Executors.newFixedThreadPool(users);
+            long start = System.nanoTime();
+            for (int user = 0; user < users; user++) {
+                virtualUsers.submit(new CheckoutScenario(http, objectMapper, "http://localhost:" + port, events,
+                        recorder, user, iterations));
+            }
+            virtualUsers.shutdown();
+            if (!virtualUsers.awaitTermination(1, TimeUnit.HOURS)) {
+                virtualUsers.shutdownNow();
+            }
+            long elapsed = System.nanoTime() - start;
+
+            List<LatencyRecorder.EndpointStats> stats = recorder.summarize(elapsed);
+            print(stats, elapsed, mongoTemplate.count(new Query(), Purchase.class),
+                    smtp.getReceivedMessages().length);
+            write(stats, reportDir);
+        } finally {
+            context.close();
+            smtp.stop();
+        }
+    }
+
+    private static Map<String, Object> properties(int smtpPort, long gatewayLatencyMs, boolean virtualThreads) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", "0");
+        properties.put("spring.threads.virtual.enabled", String.valueOf(virtualThreads));
+        // Embedded Mongo downloads mongod on the first run, -PmongoUri points the run at an existing server instead
+        String mongoUri = System.getProperty("loadtest.mongo-uri", "");
+        if (mongoUri.isBlank()) {
+            properties.put("de.flapdoodle.mongodb.embedded.version", "7.0.14");
+        } else {
+            properties.put("spring.data.mongodb.uri", mongoUri);
+            properties.put("spring.autoconfigure.exclude", "de.flapdoodle.embed.mongo.spring.autoconfigure.EmbeddedMongoAutoConfiguration");
+        }
+        properties.put("spring.data.mongodb.database", "jokievents-loadtest");
+        properties.put("spring.mail.host", "localhost");
+        properties.put("spring.mail.port", String.valueOf(smtpPort));
+        properties.put("jwt.secret", "a-load-test-secret-that-is-long-enough-for-hs256");
+        properties.put("paypal.client.id", "loadtest");
+        properties.put("paypal.client.secret", "loadtest");
+        properties.put("paypal.mode", "sandbox");
+        properties.put("payment.gateway", "simulated");
+        properties.put("payment.simulated.latency-ms", String.valueOf(gatewayLatencyMs));
+        properties.put("payment.simulated.jitter-ms", String.valueOf(gatewayLatencyMs / 2));
+        properties.put("base64.image", PIXEL);
+        properties.put("image.not.found", PIXEL);
+        properties.put("management.endpoints.web.exposure.include", "health,metrics,prometheus");
+        properties.put("logging.level.root", "WARN");
+        return properties;
+    }
+
+    private static List<Event> seed(MongoTemplate mongoTemplate, int count) {
+        Random random = new Random(42);
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            List<Locality> localities = List.of(
+                    locality("General", 45.50 + random.nextInt(50)),
+                    locality("Preferential", 120.25 + random.nextInt(80)),
+                    locality("VIP", 310.99 + random.nextInt(200)));
+            events.add(Event.builder()
+                    .id(new ObjectId().toHexString())
+                    .name(NAMES[random.nextInt(NAMES.length)] + " Night " + i)
+                    .address("Stadium " + i)
+                    .city(CITIES[random.nextInt(CITIES.length)])
+                    .eventDate(LocalDateTime.now().plusDays(30 + random.nextInt(300)))
+                    .availableForPurchase(true)
+                    .localities(localities)
+                    .totalAvailablePlaces(3_000_000)
+                    .finalTotalPlaces(3_000_000)
+                    .eventImageUrl(PIXEL)
+                    .localitiesImageUrl(PIXEL)
+                    .eventType(EventType.values()[random.nextInt(EventType.values().length)])
+                    .build());
+        }
+        mongoTemplate.insertAll(events);
+
+        // Registration mails out a random INDIVIDUAL coupon, the scenario applies the other one
+        mongoTemplate.insertAll(List.of(coupon("WELCOME5", 5, CouponType.INDIVIDUAL), coupon(CheckoutScenario.COUPON, 10, CouponType.UNIQUE)));
+        return events;
+    }
+
+    private static Locality locality(String name, double price) {
+        return Locality.builder()
+                .id(new ObjectId().toHexString())
+                .name(name)
+                .price(price)
+                .maxCapacity(1_000_000)
+                .numberedSeating(false)
+                .build();
+    }
+
+    private static Coupon coupon(String name, double discountPercent, CouponType type) {
+        Coupon coupon = new Coupon();
+        coupon.setName(name);
+        coupon.setDiscountPercent(discountPercent);
+        coupon.setExpirationDate(LocalDateTime.now().plusYears(1));
+        coupon.setMinPurchaseAmount(0);
+        coupon.setCouponType(type);
+        return coupon;
+    }
+
+    private static void print(List<LatencyRecorder.EndpointStats> stats, long elapsedNanos, long purchases, int mails) {
+        System.out.printf("%nFinished in %.1f s, %d purchases stored, %d mails delivered%n%n", elapsedNanos / 1e9, purchases, mails);
+        System.out.printf("%-48s %8s %7s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (LatencyRecorder.EndpointStats s : stats) {
+            System.out.printf("%-48s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", s.endpoint(), s.requests(), s.errors(),
+                    s.throughputPerSecond(), s.p50Ms(), s.p90Ms(), s.p99Ms(), s.maxMs());
+        }
+    }
+
+    private static void write(List<LatencyRecorder.EndpointStats> stats, Path reportDir) throws IOException {
+        Files.createDirectories(reportDir);
+        Path report = reportDir.resolve("loadtest-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".csv");
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+            out.println("endpoint,requests,errors,throughput_per_s,p50_ms,p90_ms,p99_ms,max_ms");
+            for (LatencyRecorder.EndpointStats s : stats) {
+                out.printf(Locale.ROOT, "%s,%d,%d,%.2f,%.2f,%.2f,%.2f,%.2f%n", s.endpoint(), s.requests(), s.errors(),
+                        s.throughputPerSecond(), s.p50Ms(), s.p90Ms(), s.p99Ms(), s.maxMs());
+            }
+        }
+        System.out.println("\nReport written to " + report);
+    }
+}
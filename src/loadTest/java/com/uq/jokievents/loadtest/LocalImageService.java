@@ -0,0 +1,45 @@
+package com.uq.jokievents.loadtest;
+
+import com.uq.jokievents.service.interfaces.ImageService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.UUID;
+
+// Stand-in for the Firebase bucket, writes the images to a temp folder and hands back file urls
+@Service
+@Profile("loadtest")
+public class LocalImageService implements ImageService {
+
+    private final Path folder;
+
+    public LocalImageService() throws IOException {
+        this.folder = Files.createTempDirectory("jokievents-images");
+        this.folder.toFile().deleteOnExit();
+    }
+
+    @Override
+    public String uploadImage(String base64Image) throws IOException {
+        String[] parts = base64Image.trim().split(",");
+        if (parts.length != 2 || !parts[0].startsWith("data:image/")) {
+            throw new IllegalArgumentException("Invalid Base64 image format.");
+        }
+        String extension = parts[0].substring("data:image/".length(), parts[0].indexOf(';'));
+        Path image = folder.resolve(UUID.randomUUID() + "." + extension);
+        Files.write(image, Base64.getDecoder().decode(parts[1]));
+        return image.toUri().toString();
+    }
+
+    @Override
+    public void deleteImage(String imageName) {
+        try {
+            Files.deleteIfExists(folder.resolve(imageName));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not delete " + imageName, e);
+        }
+    }
+}
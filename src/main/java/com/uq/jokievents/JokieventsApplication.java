@@ -4,6 +4,8 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.ApplicationContext;
 
+import java.util.Map;
+
 
 @SpringBootApplication
 public class JokieventsApplication {
@@ -13,7 +15,17 @@ public class JokieventsApplication {
 	 * @param args
 	 */
 	public static void main(String[] args) {
-		ApplicationContext context = SpringApplication.run(JokieventsApplication.class, args);
+		SpringApplication application = new SpringApplication(JokieventsApplication.class);
+		// Lowest priority defaults, application.properties or the command line can still turn them off.
+		// On Java 21 Tomcat and the @Async executor run on virtual threads, so blocking on Mongo, SMTP, Firebase or PayPal
+		// no longer eats the 200 platform threads. Spring Boot skips this on Java 17.
+		// Metrics are scraped from /actuator/prometheus. Every request is traced so a single slow purchase can be looked
+		// up, the trace and span ids show up in the log lines
+		application.setDefaultProperties(Map.of(
+				"spring.threads.virtual.enabled", "true",
+				"management.endpoints.web.exposure.include", "health,info,metrics,prometheus",
+				"management.tracing.sampling.probability", "1.0"));
+		ApplicationContext context = application.run(args);
 	}
 
 
@@ -14,6 +14,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -27,6 +28,7 @@ import java.util.Optional;
 
 @Configuration
 @EnableAsync
+@EnableScheduling
 @RequiredArgsConstructor
 public class ApplicationConfig {
 
@@ -109,9 +111,23 @@ public class ApplicationConfig {
     @Value("${paypal.mode}")
     private String mode;
 
+    @Value("${paypal.http.connect-timeout-ms:2000}")
+    private int payPalConnectTimeoutMs;
+
+    @Value("${paypal.http.read-timeout-ms:8000}")
+    private int payPalReadTimeoutMs;
+
+    @Bean
+    public PayPalEnvironment payPalEnvironment() {
+        return new PayPalEnvironment.Sandbox(this.getClientId(), this.getClientSecret());
+    }
+
     @Bean
-    public PayPalHttpClient payPalHttpClient() {
-        PayPalEnvironment.Sandbox environment = new PayPalEnvironment.Sandbox(this.getClientId(), this.getClientSecret());
-        return new PayPalHttpClient(environment);
+    public PayPalHttpClient payPalHttpClient(PayPalEnvironment environment) {
+        PayPalHttpClient client = new PayPalHttpClient(environment);
+        // The SDK waits 30s for an answer by default, way too long for someone waiting on a checkout
+        client.setConnectTimeout(payPalConnectTimeoutMs);
+        client.setReadTimeout(payPalReadTimeoutMs);
+        return client;
     }
 }
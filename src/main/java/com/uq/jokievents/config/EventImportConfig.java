@@ -0,0 +1,58 @@
+package com.uq.jokievents.config;
+
+import jakarta.servlet.MultipartConfigElement;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.ServletRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Bulk event imports carry base64 images, so their upload can be far bigger than the 1MB multipart default.
+ * Tomcat takes the multipart limits from the servlet, so the import endpoint gets a DispatcherServlet of its own over
+ * the same controllers and every other endpoint keeps the defaults.
+ */
+@Configuration
+public class EventImportConfig {
+
+    private static final String IMPORT_PATH = "/api/admin/import-events";
+
+    @Value("${events.import.max-upload-size:512MB}")
+    private DataSize maxUploadSize;
+
+    @Value("${events.import.image-concurrency:8}")
+    private int imageConcurrency;
+
+    @Value("${events.import.chunk-size:200}")
+    private int chunkSize;
+
+    @Bean
+    public ServletRegistrationBean<DispatcherServlet> eventImportServlet(WebApplicationContext context) {
+        // Exact mapping, the import status under /import-events/{importId} stays on the main servlet
+        ServletRegistrationBean<DispatcherServlet> registration = new ServletRegistrationBean<>(new DispatcherServlet(context), IMPORT_PATH);
+        registration.setName("eventImportServlet");
+        registration.setMultipartConfig(new MultipartConfigElement(null, maxUploadSize.toBytes(), maxUploadSize.toBytes(), 0));
+        return registration;
+    }
+
+    /**
+     * Parses and uploads the rows of an import chunk. Sized to the Firebase uploads it runs so a big import does not
+     * take the shared executor from the rest of the app. The queue holds one chunk, past that the import thread runs
+     * the row itself and slows down instead of failing it.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor eventImportTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(imageConcurrency);
+        executor.setMaxPoolSize(imageConcurrency);
+        executor.setQueueCapacity(chunkSize);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setThreadNamePrefix("event-import-");
+        return executor;
+    }
+}
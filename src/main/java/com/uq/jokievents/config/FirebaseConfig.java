@@ -5,11 +5,14 @@ import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 
+// The load test runs without the service account, images go to a local folder there
 @Configuration
+@Profile("!loadtest")
 public class FirebaseConfig {
 
     @Bean
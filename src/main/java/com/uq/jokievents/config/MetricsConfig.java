@@ -0,0 +1,40 @@
+package com.uq.jokievents.config;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Set;
+
+/**
+ * Spring Boot already times every controller (http.server.requests, tagged by uri, method and status), every
+ * repository method (spring.data.repository.invocations) and every Mongo command (mongodb.driver.commands).
+ * This turns on percentile histograms for them, so /actuator/prometheus has buckets to work out p95/p99 from.
+ */
+@Configuration
+public class MetricsConfig {
+
+    private static final Set<String> HISTOGRAM_TIMERS = Set.of(
+            "http.server.requests",
+            "spring.data.repository.invocations",
+            "mongodb.driver.commands",
+            "mongodb.driver.pool.wait");
+
+    @Bean
+    public MeterFilter latencyHistograms() {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HISTOGRAM_TIMERS.contains(id.getName())) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .percentilesHistogram(true)
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
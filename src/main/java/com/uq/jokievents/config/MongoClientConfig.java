@@ -0,0 +1,86 @@
+package com.uq.jokievents.config;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.uq.jokievents.utils.MongoPoolWaitListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One client, so one connection pool, and a MongoTemplate per kind of work. Services pick theirs with @Qualifier:
+ * - mongoTemplate: driver defaults, also used by every repository
+ * - catalogMongoTemplate: event search and reporting, can read from a secondary and take load off the primary
+ * - checkoutMongoTemplate: inventory and purchase writes, only acknowledged once a majority has them so a failover
+ *   cannot lose sold seats or a paid purchase
+ * On a standalone server (dev, load tests) the read preference and write concern make no difference.
+ */
+@Configuration
+public class MongoClientConfig {
+
+    // The driver waits up to 2 minutes for a connection by default, a checkout would rather fail fast
+    @Value("${mongo.pool.max-size:100}")
+    private int maxPoolSize;
+
+    @Value("${mongo.pool.min-size:10}")
+    private int minPoolSize;
+
+    @Value("${mongo.pool.max-wait-ms:2000}")
+    private long maxWaitMs;
+
+    @Value("${mongo.pool.max-connecting:4}")
+    private int maxConnecting;
+
+    @Value("${mongo.pool.max-idle-ms:300000}")
+    private long maxIdleMs;
+
+    @Value("${mongo.catalog.read-preference:secondaryPreferred}")
+    private String catalogReadPreference;
+
+    @Value("${mongo.checkout.write-concern:majority}")
+    private String checkoutWriteConcern;
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoPoolCustomizer(MeterRegistry meterRegistry) {
+        return settings -> settings.applyToConnectionPoolSettings(pool -> pool
+                .maxSize(maxPoolSize)
+                .minSize(minPoolSize)
+                .maxWaitTime(maxWaitMs, TimeUnit.MILLISECONDS)
+                .maxConnecting(maxConnecting)
+                .maxConnectionIdleTime(maxIdleMs, TimeUnit.MILLISECONDS)
+                .addConnectionPoolListener(new MongoPoolWaitListener(meterRegistry)));
+    }
+
+    // Replaces the one Spring Boot would make, which backs off as soon as there is any MongoTemplate bean
+    @Bean
+    @Primary
+    public MongoTemplate mongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter) {
+        return new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+    }
+
+    @Bean
+    public MongoTemplate catalogMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter) {
+        MongoTemplate template = new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+        template.setReadPreference(ReadPreference.valueOf(catalogReadPreference));
+        return template;
+    }
+
+    @Bean
+    public MongoTemplate checkoutMongoTemplate(MongoDatabaseFactory mongoDatabaseFactory, MongoConverter mongoConverter) {
+        WriteConcern writeConcern = WriteConcern.valueOf(checkoutWriteConcern);
+        if (writeConcern == null) {
+            throw new IllegalArgumentException("Unknown write concern in mongo.checkout.write-concern: " + checkoutWriteConcern);
+        }
+        MongoTemplate template = new MongoTemplate(mongoDatabaseFactory, mongoConverter);
+        template.setWriteConcern(writeConcern);
+        return template;
+    }
+}
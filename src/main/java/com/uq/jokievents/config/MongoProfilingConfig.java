@@ -0,0 +1,40 @@
+package com.uq.jokievents.config;
+
+import com.mongodb.client.MongoClient;
+import com.uq.jokievents.utils.MongoCommandProfiler;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnProperty(name = "mongo.profiler.enabled", havingValue = "true", matchIfMissing = true)
+public class MongoProfilingConfig {
+
+    @Value("${mongo.profiler.slow-threshold-ms:100}")
+    private long slowThresholdMs;
+
+    @Value("${mongo.profiler.explain-interval-ms:600000}")
+    private long explainIntervalMs;
+
+    @Value("${mongo.profiler.max-shapes:1000}")
+    private int maxShapes;
+
+    // The client is looked up lazily, it is built with this profiler as one of its listeners
+    @Bean(destroyMethod = "shutdown")
+    public MongoCommandProfiler mongoCommandProfiler(ObjectProvider<MongoClient> mongoClient, MeterRegistry meterRegistry) {
+        return new MongoCommandProfiler((database, command) -> mongoClient.getObject().getDatabase(database)
+                .runCommand(new BsonDocument("explain", command).append("verbosity", new BsonString("executionStats"))),
+                slowThresholdMs, explainIntervalMs, maxShapes, meterRegistry);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer mongoCommandProfilerCustomizer(MongoCommandProfiler profiler) {
+        return settings -> settings.addCommandListener(profiler);
+    }
+}
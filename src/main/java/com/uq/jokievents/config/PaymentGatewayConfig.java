@@ -0,0 +1,98 @@
+package com.uq.jokievents.config;
+
+import com.paypal.core.PayPalEnvironment;
+import com.paypal.core.PayPalHttpClient;
+import com.paypal.core.object.AccessToken;
+import com.paypal.core.request.AccessTokenRequest;
+import com.uq.jokievents.dtos.AccessTokenDTO;
+import com.uq.jokievents.service.implementation.ResilientPaymentGateway;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import com.uq.jokievents.utils.CircuitBreaker;
+import com.uq.jokievents.utils.GatewayTokenManager;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.List;
+
+@Configuration
+public class PaymentGatewayConfig {
+
+    @Value("${payment.gateway.max-concurrent-calls:20}")
+    private int maxConcurrentCalls;
+
+    @Value("${payment.gateway.acquire-timeout-ms:500}")
+    private long acquireTimeoutMs;
+
+    @Value("${payment.gateway.create-timeout-ms:5000}")
+    private long createTimeoutMs;
+
+    @Value("${payment.gateway.capture-timeout-ms:10000}")
+    private long captureTimeoutMs;
+
+    @Value("${payment.gateway.breaker.window:20}")
+    private int breakerWindow;
+
+    @Value("${payment.gateway.breaker.failure-rate:0.5}")
+    private double breakerFailureRate;
+
+    @Value("${payment.gateway.breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Value("${paypal.token.refresh-ahead-ms:300000}")
+    private long tokenRefreshAheadMs;
+
+    @Value("${paypal.token.expiry-safety-ms:30000}")
+    private long tokenExpirySafetyMs;
+
+    @Value("${paypal.token.fetch-timeout-ms:5000}")
+    private long tokenFetchTimeoutMs;
+
+    /**
+     * The PayPal SDK uses HttpURLConnection, whose keep-alive pool only keeps 5 idle connections per host by default.
+     * Sized to the bulkhead so every call in it can reuse a TLS connection. The JDK reads the property once, on the
+     * first keep-alive connection, so it is set before any gateway bean exists. A -Dhttp.maxConnections wins.
+     */
+    @PostConstruct
+    public void sizeKeepAlivePool() {
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(maxConcurrentCalls));
+        }
+    }
+
+    /**
+     * OAuth tokens for the PayPal client. The SDK would fetch one on the request path when the cached one expires,
+     * with this the requests carry our own Authorization header and the SDK skips its own provider.
+     */
+    @Bean(initMethod = "start", destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "payment.gateway", havingValue = "paypal", matchIfMissing = true)
+    public GatewayTokenManager payPalTokenManager(PayPalHttpClient payPalHttpClient, PayPalEnvironment payPalEnvironment) {
+        return new GatewayTokenManager(() -> {
+            AccessToken token = payPalHttpClient.execute(new AccessTokenRequest(payPalEnvironment)).result();
+            return new AccessTokenDTO(token.authorizationString(), token.expiresIn());
+        }, tokenRefreshAheadMs, tokenExpirySafetyMs, tokenFetchTimeoutMs);
+    }
+
+    /**
+     * What the services get injected. The list holds the one gateway enabled by payment.gateway, Spring leaves this
+     * bean out of it.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public ResilientPaymentGateway resilientPaymentGateway(List<PaymentGateway> gateways, MeterRegistry meterRegistry) {
+        if (gateways.size() != 1) {
+            throw new IllegalStateException("Expected exactly one payment gateway, found " + gateways.size());
+        }
+        CircuitBreaker circuitBreaker = new CircuitBreaker(breakerWindow, breakerFailureRate, breakerOpenMs);
+        Gauge.builder("payment.gateway.circuit.open", circuitBreaker, breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .description("1 while the payment gateway circuit breaker is open or half open")
+                .register(meterRegistry);
+        return new ResilientPaymentGateway(gateways.get(0), circuitBreaker, meterRegistry,
+                maxConcurrentCalls, acquireTimeoutMs, createTimeoutMs, captureTimeoutMs);
+    }
+}
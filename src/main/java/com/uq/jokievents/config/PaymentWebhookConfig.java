@@ -0,0 +1,75 @@
+package com.uq.jokievents.config;
+
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.service.interfaces.PaymentService;
+import com.uq.jokievents.utils.PaymentWebhookProcessor;
+import com.uq.jokievents.utils.WebhookSignatureVerifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Configuration
+public class PaymentWebhookConfig {
+
+    @Value("${paypal.webhook.id:}")
+    private String webhookId;
+
+    @Value("${paypal.webhook.workers:4}")
+    private int workers;
+
+    @Value("${paypal.webhook.batch-size:50}")
+    private int batchSize;
+
+    @Value("${paypal.webhook.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${paypal.webhook.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${paypal.webhook.retry-backoff-ms:1000}")
+    private long retryBackoffMs;
+
+    @Bean
+    public WebhookSignatureVerifier webhookSignatureVerifier() {
+        // PayPal rotates the signing certificate rarely, so each one is downloaded once
+        Map<String, PublicKey> certificates = new ConcurrentHashMap<>();
+        return new WebhookSignatureVerifier(webhookId, certUrl -> certificates.computeIfAbsent(certUrl, PaymentWebhookConfig::downloadPublicKey));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public PaymentWebhookProcessor paymentWebhookProcessor(PaymentService paymentService) {
+        return new PaymentWebhookProcessor(event -> {
+            try {
+                paymentService.finishPayment(event.orderId(), event.eventType().startsWith("PAYMENT.CAPTURE"));
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new PaymentException(e.getMessage());
+            }
+        }, workers, batchSize, queueCapacity, maxAttempts, retryBackoffMs);
+    }
+
+    private static PublicKey downloadPublicKey(String certUrl) {
+        URI uri = URI.create(certUrl);
+        // Otherwise anyone could sign a fake event and point us to their own certificate
+        if (!"https".equals(uri.getScheme()) || uri.getHost() == null
+                || !(uri.getHost().equals("paypal.com") || uri.getHost().endsWith(".paypal.com"))) {
+            throw new PaymentException("Webhook certificate is not hosted by PayPal: " + certUrl);
+        }
+        try (InputStream in = uri.toURL().openStream()) {
+            X509Certificate certificate = (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(in);
+            certificate.checkValidity();
+            return certificate.getPublicKey();
+        } catch (Exception e) {
+            throw new PaymentException("Could not load the webhook certificate: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.uq.jokievents.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.boot.task.SimpleAsyncTaskExecutorBuilder;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors of the app. Boot only creates its applicationTaskExecutor when there is no other Executor bean, so once
+ * checkout has a pool of its own the shared one is declared here, built the same way Boot would build it.
+ */
+@Configuration
+public class TaskExecutorConfig {
+
+    @Value("${payment.completion.threads:32}")
+    private int checkoutThreads;
+
+    @Value("${payment.completion.queue-capacity:256}")
+    private int checkoutQueueCapacity;
+
+    @Value("${purchases.export.concurrency:4}")
+    private int exportConcurrency;
+
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    @ConditionalOnThreading(Threading.VIRTUAL)
+    public SimpleAsyncTaskExecutor applicationTaskExecutorVirtualThreads(SimpleAsyncTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    @Lazy
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    @ConditionalOnThreading(Threading.PLATFORM)
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * The stages of a paid order (inventory, purchase insert, cart reset, client lookup). Imports, exports and index
+     * builds run on the shared executor and can not keep a paid order waiting past its deadline. Bounded, when the
+     * queue is full the submission is rejected and the order fails before anything is committed.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor checkoutTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(checkoutThreads);
+        executor.setMaxPoolSize(checkoutThreads);
+        executor.setQueueCapacity(checkoutQueueCapacity);
+        executor.setThreadNamePrefix("checkout-");
+        executor.setWaitForTasksToCompleteOnShutdown(true); // A stage that started should get to undo itself
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    /**
+     * Purchase exports, each one holds a thread and a Mongo cursor for as long as the download lasts. No queue, an
+     * export over purchases.export.concurrency is turned away right away instead of waiting behind the others.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor purchaseExportTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(exportConcurrency);
+        executor.setMaxPoolSize(exportConcurrency);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("purchase-export-");
+        return executor;
+    }
+}
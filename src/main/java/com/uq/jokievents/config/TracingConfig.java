@@ -0,0 +1,15 @@
+package com.uq.jokievents.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.ContextPropagatingTaskDecorator;
+
+@Configuration
+public class TracingConfig {
+
+    // Spring Boot puts it on the @Async/task executor, so work handed to it keeps the trace id in its logs
+    @Bean
+    public ContextPropagatingTaskDecorator contextPropagatingTaskDecorator() {
+        return new ContextPropagatingTaskDecorator();
+    }
+}
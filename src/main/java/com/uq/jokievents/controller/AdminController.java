@@ -8,25 +8,43 @@ import com.uq.jokievents.model.Admin;
 import com.uq.jokievents.model.Client;
 import com.uq.jokievents.model.Coupon;
 import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.enums.ExportFormat;
 import com.uq.jokievents.service.interfaces.AdminService;
+import com.uq.jokievents.service.interfaces.EventImportService;
+import com.uq.jokievents.service.interfaces.PurchaseExportService;
 
 import com.uq.jokievents.utils.ApiResponse;
 import com.uq.jokievents.utils.ApiTokenResponse;
+import com.uq.jokievents.utils.MongoCommandProfiler;
+import com.uq.jokievents.utils.MongoIndexBootstrapper;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncManager;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.io.ByteArrayInputStream;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -38,6 +56,14 @@ public class AdminController {
     // TODO Refresh Tokens
     // TODO Admin actions logger, can be one of the two additional functionalities
     private final AdminService adminService;
+    private final EventImportService eventImportService;
+    private final PurchaseExportService purchaseExportService;
+    private final ObjectProvider<MongoCommandProfiler> mongoCommandProfiler; // Missing when mongo.profiler.enabled=false
+    private final MongoIndexBootstrapper mongoIndexBootstrapper;
+    @Qualifier("purchaseExportTaskExecutor") private final AsyncTaskExecutor purchaseExportTaskExecutor;
+
+    @Value("${purchases.export.timeout-ms:3600000}")
+    private long exportTimeoutMs;
 
     @GetMapping("/get-all-admins")
     public ResponseEntity<ApiTokenResponse<?>> getAllAdmins() {
@@ -178,6 +204,30 @@ public class AdminController {
         }
     }
 
+    // JSON Lines with one HandleEventDTO per line, or CSV with a header. Answers right away, poll the import for progress
+    @PostMapping(value = "/import-events", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<?>> importEvents(@RequestParam("file") MultipartFile file) {
+        try {
+            EventImportDTO eventImport = eventImportService.startImport(file);
+            ApiResponse<EventImportDTO> response = new ApiResponse<>("Success", "Import started", eventImport);
+            return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+        } catch (LogicException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @GetMapping("/import-events/{importId}")
+    public ResponseEntity<ApiResponse<?>> getEventImport(@PathVariable String importId) {
+        Optional<EventImportDTO> eventImport = eventImportService.getImport(importId);
+        if (eventImport.isEmpty()) {
+            ApiResponse<String> response = new ApiResponse<>("Error", "Import not found", null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+        ApiResponse<EventImportDTO> response = new ApiResponse<>("Success", "Import " + eventImport.get().status(), eventImport.get());
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
     @PostMapping("/{eventId}/update-event")
     public ResponseEntity<ApiResponse<?>> updateEvent(
             @PathVariable String eventId,
@@ -263,4 +313,82 @@ public class AdminController {
             return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
-}
\ No newline at end of file
+
+    // One row per purchased item, from inclusive and to exclusive, both optional. The file is written while it downloads
+    @GetMapping("/export-purchases")
+    public ResponseEntity<StreamingResponseBody> exportPurchases(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        ExportFormat exportFormat;
+        try {
+            exportFormat = ExportFormat.valueOf(format.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new UnknownExportFormatException();
+        }
+
+        // The export gets its own executor and timeout, every other async request keeps Spring's defaults
+        WebAsyncManager asyncManager = WebAsyncUtils.getAsyncManager(request);
+        asyncManager.setTaskExecutor(purchaseExportTaskExecutor);
+        asyncManager.getAsyncWebRequest().setTimeout(exportTimeoutMs);
+        StreamingResponseBody body = out -> purchaseExportService.exportPurchases(
+                from == null ? null : from.atStartOfDay(), to == null ? null : to.atStartOfDay(), exportFormat, gzip, out);
+        String fileName = "purchases." + exportFormat.name().toLowerCase() + (gzip ? ".gz" : "");
+        MediaType contentType = gzip ? MediaType.parseMediaType("application/gzip")
+                : exportFormat == ExportFormat.CSV ? MediaType.parseMediaType("text/csv") : MediaType.parseMediaType("application/x-ndjson");
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + fileName)
+                .contentType(contentType)
+                .body(body);
+    }
+
+    // Spring only streams a body the method is declared to return, so the export reports its errors through these
+    @ExceptionHandler(UnknownExportFormatException.class)
+    public ResponseEntity<ApiResponse<String>> handleUnknownExportFormat() {
+        ApiResponse<String> response = new ApiResponse<>("Error", "Format must be ndjson or csv", null);
+        return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    // Already purchases.export.concurrency exports running, nothing was written yet
+    @ExceptionHandler(TaskRejectedException.class)
+    public ResponseEntity<ApiResponse<String>> handleRejectedExport() {
+        ApiResponse<String> response = new ApiResponse<>("Error", "Too many exports running, try again later", null);
+        return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    private static class UnknownExportFormatException extends RuntimeException {
+    }
+
+    @GetMapping("/slow-queries")
+    public ResponseEntity<ApiResponse<?>> getSlowQueries(@RequestParam(defaultValue = "20") int limit) {
+        MongoCommandProfiler profiler = mongoCommandProfiler.getIfAvailable();
+        if (profiler == null) {
+            ApiResponse<String> response = new ApiResponse<>("Error", "The Mongo profiler is turned off", null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+        ApiResponse<List<SlowQueryDTO>> response = new ApiResponse<>("Success", "Slowest query shapes recorded so far", profiler.slowQueries(limit));
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @PostMapping("/slow-queries/reset")
+    public ResponseEntity<ApiResponse<?>> resetSlowQueries() {
+        MongoCommandProfiler profiler = mongoCommandProfiler.getIfAvailable();
+        if (profiler == null) {
+            ApiResponse<String> response = new ApiResponse<>("Error", "The Mongo profiler is turned off", null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+        profiler.reset();
+        ApiResponse<String> response = new ApiResponse<>("Success", "Slow query report cleared", null);
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @GetMapping("/indexes")
+    public ResponseEntity<ApiResponse<?>> getIndexReport() {
+        List<IndexStatusDTO> report = mongoIndexBootstrapper.getLastReport();
+        String message = report.isEmpty() ? "Indexes were not checked yet" : "Declared indexes as of the last check";
+        ApiResponse<List<IndexStatusDTO>> response = new ApiResponse<>("Success", message, report);
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+}
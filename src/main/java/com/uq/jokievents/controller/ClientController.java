@@ -6,6 +6,7 @@ import com.uq.jokievents.exceptions.*;
 import com.uq.jokievents.model.Admin;
 import com.uq.jokievents.model.Client;
 import com.uq.jokievents.service.interfaces.ClientService;
+import com.uq.jokievents.service.interfaces.SeatMapService;
 import com.uq.jokievents.utils.ApiResponse;
 import com.uq.jokievents.utils.ApiTokenResponse;
 import jakarta.validation.Valid;
@@ -29,6 +30,7 @@ import java.util.Map;
 public class ClientController {
 
     private final ClientService clientService;
+    private final SeatMapService seatMapService;
 
     @PostMapping("/{clientId}/verify")
     public ResponseEntity<ApiResponse<String>> verifyClient(@PathVariable String clientId, @RequestParam String verificationCode) {
@@ -129,6 +131,18 @@ public class ClientController {
         }
     }
 
+    @GetMapping("/event/{eventId}/locality/{localityName}/seats")
+    public ResponseEntity<ApiResponse<?>> getSeatAvailability(@PathVariable String eventId, @PathVariable String localityName) {
+        try {
+            Map<String, Object> seats = seatMapService.getSeatAvailability(eventId, localityName);
+            ApiResponse<Map<String, Object>> response = new ApiResponse<>("Success", "Seat availability as run lengths, starting with free seats", seats);
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (EventException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+    }
+
     @PostMapping("/{clientId}/order-locality")
     public ResponseEntity<?> orderLocality(@PathVariable String clientId, @RequestBody  LocalityOrderAsClientDTO dto) {
         try {
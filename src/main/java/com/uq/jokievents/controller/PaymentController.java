@@ -1,20 +1,26 @@
 package com.uq.jokievents.controller;
 
-import com.braintreepayments.http.HttpResponse;
-import com.paypal.orders.Capture;
-import com.paypal.orders.LinkDescription;
-import com.paypal.orders.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.dtos.WebhookEventDTO;
 import com.uq.jokievents.exceptions.AccountException;
 import com.uq.jokievents.exceptions.LogicException;
-import com.uq.jokievents.model.ShoppingCart;
-import com.uq.jokievents.repository.ShoppingCartRepository;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.exceptions.PaymentGatewayUnavailableException;
+import com.uq.jokievents.exceptions.ShoppingCartException;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.service.interfaces.CaptureIdempotencyService;
 import com.uq.jokievents.service.interfaces.PaymentService;
 import com.uq.jokievents.utils.ApiResponse;
+import com.uq.jokievents.utils.PaymentWebhookProcessor;
+import com.uq.jokievents.utils.WebhookSignatureVerifier;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/payment")
@@ -22,28 +28,21 @@ import java.util.Optional;
 public class PaymentController {
 
     private final PaymentService paymentService;
-    private final ShoppingCartRepository shoppingCartRepository;
+    private final CaptureIdempotencyService captureIdempotencyService;
+    private final WebhookSignatureVerifier webhookSignatureVerifier;
+    private final PaymentWebhookProcessor paymentWebhookProcessor;
+    private final ObjectMapper objectMapper;
+
+    private static final Set<String> HANDLED_EVENTS = Set.of("CHECKOUT.ORDER.APPROVED", "PAYMENT.CAPTURE.COMPLETED");
+
+    @Value("${paypal.webhook.enabled:false}")
+    private boolean webhookEnabled;
 
     @PostMapping("/{clientId}/create-payment")
     public ResponseEntity<ApiResponse<String>> createOrder(@PathVariable String clientId) {
         try {
-            HttpResponse<Order> orderHttpResponse = paymentService.createPaymentOrder(clientId);
-
-            String orderId = orderHttpResponse.result().id();
-            ShoppingCart shoppingCart = paymentService.getShoppingCart(clientId);
-            shoppingCart.setPaymentGatewayId(orderId);
-            shoppingCartRepository.save(shoppingCart);
-
-            Order order = orderHttpResponse.result();
-            String approvalUrl = null;
-
-            // Iterate over the links to find the approval URL
-            for (LinkDescription link : order.links()) {
-                if ("approve".equals(link.rel())) {
-                    approvalUrl = link.href();
-                    break;
-                }
-            }
+            GatewayOrderDTO order = paymentService.createPaymentOrder(clientId);
+            String approvalUrl = order.approvalUrl();
             if (approvalUrl != null) {
                 ApiResponse<String> response = new ApiResponse<>("Success", "Redirecting you to the payment link", approvalUrl);
                 return new ResponseEntity<>(response, HttpStatus.OK);
@@ -54,8 +53,11 @@ public class PaymentController {
         } catch (LogicException e) {
             ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
             return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        } catch (PaymentGatewayUnavailableException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
         }
-        catch (AccountException e) {
+        catch (AccountException | PaymentException e) {
             ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
             return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
         } catch (Exception e) {
@@ -65,32 +67,82 @@ public class PaymentController {
 
     @GetMapping("/success")
     public ResponseEntity<ApiResponse<String>> handlePaymentSuccess(@RequestParam("token") String token) {
-        try {
-            // Step 1: Capture the payment
-            Capture capture = paymentService.capturePayment(token);
+        // With webhooks on, PayPal tells us when the order is paid and this is usually just a status lookup for the browser
+        if (webhookEnabled) {
+            Optional<CaptureStatus> status = captureIdempotencyService.getStatus(token);
+            if (status.isPresent() && status.get() == CaptureStatus.COMPLETED) {
+                ApiResponse<String> response = new ApiResponse<>("Success", "Payment done", null);
+                return new ResponseEntity<>(response, HttpStatus.OK);
+            }
+            if (status.isPresent() && status.get() == CaptureStatus.IN_PROGRESS) {
+                ApiResponse<String> response = new ApiResponse<>("Success", "Payment is being processed", status.get().name());
+                return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+            }
+            // No webhook yet, or the worker failed on it: finish it here, finishPayment only runs once per order anyway
+        }
 
-            // Step 2: Check if payment status is 'COMPLETED'
-            if ("COMPLETED".equals(capture.status())) {
-                // Step 3: Retrieve the ShoppingCart based on the payment token
-                Optional<ShoppingCart> order = shoppingCartRepository.findByPaymentGatewayId(token);
-                if (order.isEmpty()) {
-                    ApiResponse<String> response = new ApiResponse<>("Error", "Could not find the order", capture.status());
-                    return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
-                }
-                paymentService.updateEventAndLocalities(order.get());
-                paymentService.fillPurchaseAfterSuccess(order.get());
+        try {
+            CaptureStatus status = paymentService.finishPayment(token, false);
+            if (status == CaptureStatus.COMPLETED) {
                 ApiResponse<String> response = new ApiResponse<>("Success", "Payment done", null);
                 return new ResponseEntity<>(response, HttpStatus.OK);
-            } else {
-                ApiResponse<String> response = new ApiResponse<>("Success", "Payment done, probably cancelled", capture.status());
-                return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
             }
+            ApiResponse<String> response = new ApiResponse<>("Success", "Payment is being processed", status.name());
+            return new ResponseEntity<>(response, HttpStatus.ACCEPTED);
+        } catch (PaymentGatewayUnavailableException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+        } catch (PaymentException e) {
+            ApiResponse<String> response = new ApiResponse<>("Success", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        } catch (ShoppingCartException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
         } catch (Exception e) {
             ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
             return new ResponseEntity<>(response, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    @PostMapping("/webhook")
+    public ResponseEntity<ApiResponse<String>> handleWebhook(@RequestHeader(value = "PAYPAL-TRANSMISSION-ID", required = false) String transmissionId,
+                                                             @RequestHeader(value = "PAYPAL-TRANSMISSION-TIME", required = false) String transmissionTime,
+                                                             @RequestHeader(value = "PAYPAL-CERT-URL", required = false) String certUrl,
+                                                             @RequestHeader(value = "PAYPAL-AUTH-ALGO", required = false) String authAlgo,
+                                                             @RequestHeader(value = "PAYPAL-TRANSMISSION-SIG", required = false) String transmissionSig,
+                                                             @RequestBody String body) {
+        if (!webhookEnabled) {
+            // The redirect finishes the orders on its own, events that would race it are not taken
+            ApiResponse<String> response = new ApiResponse<>("Error", "Webhooks are turned off", null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+        try {
+            webhookSignatureVerifier.verify(transmissionId, transmissionTime, certUrl, authAlgo, transmissionSig, body);
+            WebhookEventDTO event = PaymentWebhookProcessor.parse(objectMapper.readTree(body));
+            if (!HANDLED_EVENTS.contains(event.eventType())) {
+                // PayPal only needs a 2xx to stop retrying, anything we do not care about is acknowledged and dropped
+                ApiResponse<String> response = new ApiResponse<>("Success", "Event ignored", event.eventType());
+                return new ResponseEntity<>(response, HttpStatus.OK);
+            }
+            if (event.orderId().isEmpty()) {
+                ApiResponse<String> response = new ApiResponse<>("Error", "Event does not reference an order", event.id());
+                return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+            }
+            if (!paymentWebhookProcessor.submit(event)) {
+                ApiResponse<String> response = new ApiResponse<>("Error", "Too many events, try again later", null);
+                return new ResponseEntity<>(response, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            ApiResponse<String> response = new ApiResponse<>("Success", "Event queued", event.id());
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (PaymentException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.UNAUTHORIZED);
+        } catch (Exception e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
     // Qué pesar este método kjaskjaksjkajs
     @GetMapping("/cancel")
     public ResponseEntity<ApiResponse<String>> handlePaymentCancel() {
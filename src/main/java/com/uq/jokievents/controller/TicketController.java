@@ -0,0 +1,73 @@
+package com.uq.jokievents.controller;
+
+import com.uq.jokievents.dtos.ScanResultDTO;
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.exceptions.EventException;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.model.enums.CheckInStatus;
+import com.uq.jokievents.service.interfaces.CheckInService;
+import com.uq.jokievents.service.interfaces.TicketTokenService;
+import com.uq.jokievents.utils.ApiResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/ticket")
+@RequiredArgsConstructor
+public class TicketController {
+
+    private final TicketTokenService ticketTokenService;
+    private final CheckInService checkInService;
+
+    // Only checks the signature, no database involved, so it is safe to call it as many times as the scanner wants
+    @PostMapping("/verify")
+    public ResponseEntity<ApiResponse<?>> verifyTicket(@RequestParam String token) {
+        try {
+            TicketTokenDTO ticket = ticketTokenService.verifyToken(token);
+            ApiResponse<TicketTokenDTO> response = new ApiResponse<>("Success", "Valid ticket", ticket);
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (LogicException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping("/{eventId}/open-doors")
+    public ResponseEntity<ApiResponse<?>> openDoors(@PathVariable String eventId) {
+        Map<String, Object> doorsInfo = checkInService.openDoors(eventId);
+        ApiResponse<Map<String, Object>> response = new ApiResponse<>("Success", "Doors open, tickets loaded", doorsInfo);
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @PostMapping("/{eventId}/scan")
+    public ResponseEntity<ApiResponse<?>> scanTicket(@PathVariable String eventId, @RequestParam String token, @RequestParam(defaultValue = "main") String gate) {
+        try {
+            ScanResultDTO result = checkInService.scanTicket(eventId, token, gate);
+            HttpStatus status = result.status() == CheckInStatus.ADMITTED ? HttpStatus.OK : HttpStatus.CONFLICT;
+            ApiResponse<ScanResultDTO> response = new ApiResponse<>(status == HttpStatus.OK ? "Success" : "Error", result.status().name(), result);
+            return new ResponseEntity<>(response, status);
+        } catch (EventException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        } catch (LogicException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.BAD_REQUEST);
+        }
+    }
+
+    @PostMapping("/{eventId}/close-doors")
+    public ResponseEntity<ApiResponse<?>> closeDoors(@PathVariable String eventId) {
+        try {
+            Map<String, Object> doorsInfo = checkInService.closeDoors(eventId);
+            ApiResponse<Map<String, Object>> response = new ApiResponse<>("Success", "Doors closed, check-ins saved", doorsInfo);
+            return new ResponseEntity<>(response, HttpStatus.OK);
+        } catch (EventException e) {
+            ApiResponse<String> response = new ApiResponse<>("Error", e.getMessage(), null);
+            return new ResponseEntity<>(response, HttpStatus.NOT_FOUND);
+        }
+    }
+}
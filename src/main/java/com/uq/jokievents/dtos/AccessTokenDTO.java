@@ -0,0 +1,7 @@
+package com.uq.jokievents.dtos;
+
+// An OAuth token as the gateway handed it out, authorization is the ready to use header value ("Bearer ...")
+public record AccessTokenDTO(
+        String authorization,
+        long expiresInSeconds
+) {}
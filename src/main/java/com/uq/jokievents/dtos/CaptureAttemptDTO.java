@@ -0,0 +1,10 @@
+package com.uq.jokievents.dtos;
+
+import com.uq.jokievents.model.enums.CaptureStatus;
+
+// acquired means this caller owns the order and must finish it (mark it COMPLETED or FAILED)
+public record CaptureAttemptDTO(
+        boolean acquired,
+        CaptureStatus status,
+        boolean paymentCaptured
+) {}
@@ -11,5 +11,8 @@ public record CreateLocalityDTO(
         double price,
 
         @Min(value = 1, message = "Max capacity must be at least 1")
-        int maxCapacity
+        int maxCapacity,
+
+        // Optional, false means general admission
+        boolean numberedSeating
 ) {}
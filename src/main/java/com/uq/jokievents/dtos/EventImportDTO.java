@@ -0,0 +1,21 @@
+package com.uq.jokievents.dtos;
+
+import com.uq.jokievents.model.enums.ImportStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Progress of a bulk event import. errors keeps the first rejected lines only, the counters cover all of them
+public record EventImportDTO(
+        String id,
+        String fileName,
+        ImportStatus status,
+        long bytesRead,
+        long totalBytes,
+        long processed,
+        long imported,
+        long rejected,
+        List<String> errors,
+        LocalDateTime startedAt,
+        LocalDateTime finishedAt
+) {}
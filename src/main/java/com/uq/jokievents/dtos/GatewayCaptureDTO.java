@@ -0,0 +1,8 @@
+package com.uq.jokievents.dtos;
+
+// Result of capturing an approved order, status is COMPLETED when the money was taken
+public record GatewayCaptureDTO(
+        String orderId,
+        String captureId,
+        String status
+) {}
@@ -0,0 +1,8 @@
+package com.uq.jokievents.dtos;
+
+// What any payment gateway gives back when an order is created, approvalUrl is where the client is sent to pay
+public record GatewayOrderDTO(
+        String orderId,
+        String status,
+        String approvalUrl
+) {}
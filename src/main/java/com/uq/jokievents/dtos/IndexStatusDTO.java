@@ -0,0 +1,13 @@
+package com.uq.jokievents.dtos;
+
+import com.uq.jokievents.model.enums.IndexStatus;
+
+// detail says why an index is MISSING or FAILED, null otherwise
+public record IndexStatusDTO(
+        String collection,
+        String name,
+        String keys,
+        boolean unique,
+        IndexStatus status,
+        String detail
+) {}
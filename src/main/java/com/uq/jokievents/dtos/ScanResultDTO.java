@@ -0,0 +1,9 @@
+package com.uq.jokievents.dtos;
+
+import com.uq.jokievents.model.enums.CheckInStatus;
+
+// Answer for a gate scanner, the ticket is null when the token could not be read
+public record ScanResultDTO(
+        CheckInStatus status,
+        TicketTokenDTO ticket
+) {}
@@ -0,0 +1,16 @@
+package com.uq.jokievents.dtos;
+
+// One query shape (same collection, command and filter keys, values left out) as seen by the Mongo command profiler
+public record SlowQueryDTO(
+        String collection,
+        String command,
+        String shape,
+        long executions,
+        long slowExecutions,
+        double averageMs,
+        double maxMs,
+        Long docsExamined,
+        Long docsReturned,
+        boolean collectionScan,
+        String plan
+) {}
@@ -0,0 +1,11 @@
+package com.uq.jokievents.dtos;
+
+// What a ticket QR carries once its signature has been checked, no validation as it is built by the server.
+// One per ticket document, seatNumber is null for general admission
+public record TicketTokenDTO(
+        String ticketId,
+        String purchaseId,
+        String eventId,
+        String localityName,
+        Integer seatNumber
+) {}
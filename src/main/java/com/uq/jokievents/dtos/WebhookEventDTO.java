@@ -0,0 +1,8 @@
+package com.uq.jokievents.dtos;
+
+// The parts of a PayPal webhook event we act on, built from the verified body
+public record WebhookEventDTO(
+        String id,
+        String eventType,
+        String orderId
+) {}
@@ -0,0 +1,8 @@
+package com.uq.jokievents.exceptions;
+
+// The gateway is slow, down or we are already waiting on too many calls to it, the client should try again later
+public class PaymentGatewayUnavailableException extends PaymentException {
+    public PaymentGatewayUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -7,6 +7,7 @@ import lombok.*;
 import org.bson.types.ObjectId;
 import java.time.LocalDateTime;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -24,7 +25,9 @@ public class Admin implements UserDetails {
     @Id
     private String id;
 
+    @Indexed(unique = true)
     private String email;
+    @Indexed(unique = true)
     private String username;
     private String password;
     private String verificationCode;
@@ -0,0 +1,25 @@
+package com.uq.jokievents.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+@Data@AllArgsConstructor@NoArgsConstructor@Builder
+@Document(collection = "check-ins")
+public class CheckIn {
+
+    @Id private String id;
+    @Indexed private String eventId;
+    private String ticketId; // The key the gates validate against
+    private String purchaseId;
+    private String gate;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+    private LocalDateTime checkedInAt;
+}
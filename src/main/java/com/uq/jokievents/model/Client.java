@@ -11,6 +11,7 @@ import lombok.*;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.Transient;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
@@ -24,11 +25,12 @@ import org.springframework.security.core.userdetails.UserDetails;
 public class Client implements UserDetails {
 
     @Id private String id;
-    private String idCard;
+    // Google sign-ins have no ID card, they store none and the unique index only covers the ones that were filled in
+    @Indexed(unique = true, partialFilter = "{ 'idCard': { $gt: '' } }") private String idCard;
     private String name;
     private String address;
     private String phoneNumber;
-    private String email;
+    @Indexed(unique = true) private String email;
     private String password;
     // This is a "pointer" to the shopping car in the database. Could have used @Transient too I guess. Not exactly
     private String idShoppingCart;
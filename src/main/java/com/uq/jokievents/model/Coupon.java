@@ -5,6 +5,7 @@ import com.uq.jokievents.model.enums.CouponType;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -15,10 +16,12 @@ import java.time.LocalDateTime;
 public class Coupon {
     @Id
     private String id;
+    @Indexed(unique = true)
     private String name;
     private double discountPercent;
     @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS")
     private LocalDateTime expirationDate;
     private double minPurchaseAmount;
+    @Indexed
     private CouponType couponType; //    UNIQUE or INDIVIDUAL
 }
@@ -5,6 +5,8 @@ import com.uq.jokievents.model.enums.EventType;
 import jakarta.validation.constraints.Future;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -16,6 +18,8 @@ import java.util.List;
 @RequiredArgsConstructor
 @AllArgsConstructor
 @Document(collection = "events")
+@CompoundIndex(name = "city_date_type", def = "{'city': 1, 'eventDate': 1, 'eventType': 1}")
+@CompoundIndex(name = "city_address_date", def = "{'city': 1, 'address': 1, 'eventDate': 1}", unique = true) // One event per place and time
 public class Event {
 
     @Id
@@ -24,7 +28,7 @@ public class Event {
     private String address;
     private String city;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
-    private LocalDateTime eventDate;
+    @Indexed private LocalDateTime eventDate;
     private boolean availableForPurchase;
     private List<Locality> localities;
     private int totalAvailablePlaces;
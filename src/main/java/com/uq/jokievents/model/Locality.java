@@ -23,4 +23,11 @@ public class Locality {
     private int maxCapacity;
     @Builder.Default
     private int currentOccupancy = 0;
+    private boolean numberedSeating;
+    // SeatMap bits, one per seat, only for numbered localities. The seats endpoint sends the run length version
+    @JsonIgnore
+    private byte[] seatMap;
+    // Goes up on every seat map write, a node only stores its map if nobody stored another one since it read it
+    @JsonIgnore
+    private long seatMapVersion;
 }
@@ -0,0 +1,28 @@
+package com.uq.jokievents.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One per PayPal order, the order id is the _id so the unique index comes for free
+@Data@AllArgsConstructor@NoArgsConstructor@Builder
+@Document(collection = "payment-captures")
+public class PaymentCapture {
+
+    @Id private String orderId;
+    private CaptureStatus status;
+    // PayPal already took the money, a retry only has to finish our side
+    private boolean paymentCaptured;
+    // What the gateway answered to our capture call, kept even when it was not COMPLETED
+    private String gatewayStatus;
+    private String captureId;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+    private LocalDateTime updatedAt;
+}
@@ -6,6 +6,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
@@ -14,12 +16,14 @@ import java.util.List;
 
 @Data@AllArgsConstructor@NoArgsConstructor@Builder
 @Document(collection = "purchases")
+@CompoundIndex(name = "client_date", def = "{'clientId': 1, 'purchaseDate': -1}")
+@CompoundIndex(name = "items_event", def = "{'purchasedItems.eventId': 1}")
 public class Purchase {
 
     @Id private String id;
     private String clientId;
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
-    private LocalDateTime purchaseDate;
+    @Indexed private LocalDateTime purchaseDate; // Monthly reports ask for a date range with no client
     private List<LocalityOrder> purchasedItems;
     private BigDecimal totalAmount;
     private String paymentMethod;
@@ -1,7 +1,9 @@
 package com.uq.jokievents.model;
 
+import com.uq.jokievents.utils.CartPricing;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.ArrayList;
@@ -14,11 +16,27 @@ import java.util.ArrayList;
 public class ShoppingCart {
 
     @Id private String id;
-    private String clientId;
-    private String paymentGatewayId;
+    // Carts are looked up by their owner, one cart per client. Carts nobody owns yet stay out of the index
+    @Indexed(unique = true, partialFilter = "{ 'clientId': { $exists: true } }") private String clientId;
+    @Indexed private String paymentGatewayId; // Not unique, every cart that is not being paid has ""
     private ArrayList<LocalityOrder> localityOrders;
-    private Double totalPrice;
-    private Double totalPriceWithDiscount;
-    private Double appliedDiscountPercent;
+    // Running total of the locality orders, kept up to date on every add and remove. See CartPricing
+    private long totalPriceCents;
+    private int discountBasisPoints;
     private boolean couponClaimed;
+    // Bumped by every partial update. Not a Spring @Version, carts saved before it existed would be taken as new
+    // documents by save(), so the checks are done by hand in the update criteria where they matter
+    private long version;
+
+    public long getTotalPriceWithDiscountCents() {
+        return CartPricing.applyDiscount(totalPriceCents, discountBasisPoints);
+    }
+
+    public Double getTotalPrice() {
+        return CartPricing.toAmount(totalPriceCents);
+    }
+
+    public Double getTotalPriceWithDiscount() {
+        return CartPricing.toAmount(getTotalPriceWithDiscountCents());
+    }
 }
@@ -0,0 +1,31 @@
+package com.uq.jokievents.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.uq.jokievents.model.enums.TicketStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+// One document per seat sold, LocalityOrder only knows how many were bought
+@Data@AllArgsConstructor@NoArgsConstructor@Builder
+@Document(collection = "tickets")
+@CompoundIndex(name = "event_status", def = "{'eventId': 1, 'status': 1}")
+public class Ticket {
+
+    @Id private String id;
+    @Indexed private String purchaseId;
+    private String clientId;
+    private String eventId;
+    private String localityName;
+    private Integer seatNumber; // null for general admission
+    private TicketStatus status;
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
+    private LocalDateTime issuedAt;
+}
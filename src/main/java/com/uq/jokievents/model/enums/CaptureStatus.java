@@ -0,0 +1,7 @@
+package com.uq.jokievents.model.enums;
+
+public enum CaptureStatus {
+    IN_PROGRESS,
+    COMPLETED,
+    FAILED
+}
@@ -0,0 +1,8 @@
+package com.uq.jokievents.model.enums;
+
+public enum CheckInStatus {
+    ADMITTED,
+    ALREADY_CHECKED_IN,
+    NOT_FOUND,
+    WRONG_EVENT
+}
@@ -0,0 +1,6 @@
+package com.uq.jokievents.model.enums;
+
+public enum ExportFormat {
+    NDJSON,
+    CSV
+}
@@ -0,0 +1,8 @@
+package com.uq.jokievents.model.enums;
+
+public enum IndexStatus {
+    PRESENT,
+    CREATED,
+    MISSING,
+    FAILED
+}
@@ -0,0 +1,7 @@
+package com.uq.jokievents.model.enums;
+
+public enum TicketStatus {
+    VALID,
+    CHECKED_IN,
+    REFUNDED
+}
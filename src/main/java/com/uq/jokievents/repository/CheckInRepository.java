@@ -0,0 +1,12 @@
+package com.uq.jokievents.repository;
+
+import com.uq.jokievents.model.CheckIn;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CheckInRepository extends MongoRepository<CheckIn, String> {
+    List<CheckIn> findByEventId(String eventId);
+}
@@ -10,7 +10,7 @@ import java.util.Optional;
 @Repository
 public interface EventRepository extends MongoRepository<Event, String> {
 
-    boolean existsByEventDate(LocalDateTime eventDate);
-    boolean existsByAddress(String address);
-    boolean existsByCity(String city);
+    // Both hit the unique city_address_date index
+    boolean existsByCityAndAddressAndEventDate(String city, String address, LocalDateTime eventDate);
+    boolean existsByCityAndAddressAndEventDateAndIdNot(String city, String address, LocalDateTime eventDate, String id);
 }
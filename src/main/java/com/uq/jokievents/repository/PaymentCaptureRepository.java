@@ -0,0 +1,9 @@
+package com.uq.jokievents.repository;
+
+import com.uq.jokievents.model.PaymentCapture;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PaymentCaptureRepository extends MongoRepository<PaymentCapture, String> {
+}
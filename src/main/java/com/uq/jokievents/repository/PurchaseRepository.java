@@ -9,4 +9,5 @@ import java.util.List;
 public interface PurchaseRepository extends MongoRepository<Purchase, String> {
     List<Purchase> findByClientId(String clientId);
     List<Purchase> findByPurchaseDateBetween(LocalDateTime of, LocalDateTime localDateTime);
+    List<Purchase> findByPurchasedItemsEventId(String eventId);
 }
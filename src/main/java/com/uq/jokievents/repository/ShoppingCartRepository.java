@@ -9,4 +9,5 @@ import java.util.Optional;
 @Repository
 public interface ShoppingCartRepository extends MongoRepository<ShoppingCart, String> {
     Optional<ShoppingCart> findByPaymentGatewayId(String paymentGatewayId);
+    Optional<ShoppingCart> findByClientId(String clientId);
 }
@@ -0,0 +1,15 @@
+package com.uq.jokievents.repository;
+
+import com.uq.jokievents.model.Ticket;
+import com.uq.jokievents.model.enums.TicketStatus;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TicketRepository extends MongoRepository<Ticket, String> {
+    List<Ticket> findByPurchaseId(String purchaseId);
+    List<Ticket> findByEventIdAndStatus(String eventId, TicketStatus status);
+    long countByEventIdAndStatus(String eventId, TicketStatus status);
+}
@@ -12,6 +12,7 @@ import com.uq.jokievents.repository.PurchaseRepository;
 import com.uq.jokievents.service.interfaces.*;
 import com.uq.jokievents.utils.*;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -42,6 +43,10 @@ public class AdminServiceImpl implements AdminService{
     private final PurchaseRepository purchaseRepository;
     private final ImageService imageService;
     private final JwtService jwtService;
+    private final SeatMapService seatMapService;
+    private final CartViewCache cartViewCache;
+
+    private static final String EVENT_IN_SITU_MESSAGE = "Event at that time in the same address in the same city exists";
 
     @Value("${image.not.found}")
     private String imageNotFound;
@@ -189,7 +194,7 @@ public class AdminServiceImpl implements AdminService{
     @Override
     public ApiResponse<Event> addEvent(HandleEventDTO dto) {
         try {
-            checkEventInSitu(dto);
+            checkEventInSitu(dto, null);
             String eventUrl = imageNotFound;
             String localitiesUrl = imageNotFound;
             boolean bothImagesEmpty = dto.eventImageUrl().isEmpty() && dto.localitiesImageUrl().isEmpty();
@@ -216,7 +221,7 @@ public class AdminServiceImpl implements AdminService{
                     .eventType(dto.eventType())
                     .build();
 
-            eventRepository.save(event);
+            saveEvent(event);
 
             return new ApiResponse<>("Success", "Event created successfully", event);
         } catch (Exception e) {
@@ -276,32 +281,70 @@ public class AdminServiceImpl implements AdminService{
             }
         }
 
-        checkEventInSitu(dto); // two not used conditions but well fuck
-        List<Locality> updatedLocalities = getLocalities(dto);
+        checkEventInSitu(dto, eventId); // two not used conditions but well fuck
+        List<Locality> updatedLocalities = carryOverSales(existingEvent, getLocalities(dto));
+        int soldTickets = updatedLocalities.stream().mapToInt(Locality::getCurrentOccupancy).sum();
 
         // Update the fields from the DTO
         existingEvent.setName(dto.name());
         existingEvent.setCity(dto.city());
         existingEvent.setAddress(dto.address());
         existingEvent.setEventDate(dto.date());
-        existingEvent.setTotalAvailablePlaces(dto.totalAvailablePlaces());
+        existingEvent.setTotalAvailablePlaces(dto.totalAvailablePlaces() - soldTickets);
         existingEvent.setLocalities(updatedLocalities);
         existingEvent.setEventType(dto.eventType());
 
         // Save the updated event
-        eventRepository.save(existingEvent);
+        saveEvent(existingEvent);
+        seatMapService.evictEvent(eventId); // Capacities may have changed, the cached seat maps are not valid anymore
+        cartViewCache.invalidateEvent(eventId);
 
         return new ApiResponse<>("Success", "Event updated", existingEvent);
     }
 
-    private void checkEventInSitu(HandleEventDTO dto) {
+    // Sold tickets stay sold: a locality that keeps its name keeps its occupancy and its taken seats
+    private static List<Locality> carryOverSales(Event existingEvent, List<Locality> updatedLocalities) {
+        if (existingEvent.getLocalities() == null) {
+            return updatedLocalities;
+        }
+        for (Locality updated : updatedLocalities) {
+            Locality existing = existingEvent.getLocalities(updated.getName());
+            if (existing == null || existing.getCurrentOccupancy() == 0) {
+                continue;
+            }
+            if (updated.getMaxCapacity() < existing.getCurrentOccupancy()) {
+                throw new LogicException("Locality " + updated.getName() + " already sold " + existing.getCurrentOccupancy()
+                        + " tickets, its capacity cannot be lower than that");
+            }
+            if (updated.isNumberedSeating() != existing.isNumberedSeating()) {
+                throw new LogicException("Locality " + updated.getName() + " already sold tickets, its seating cannot change");
+            }
+            updated.setCurrentOccupancy(existing.getCurrentOccupancy());
+            if (existing.isNumberedSeating()) {
+                SeatMap seats = SeatMap.fromBytes(existing.getMaxCapacity(), existing.getSeatMap());
+                if (seats.lastTaken() >= updated.getMaxCapacity()) {
+                    throw new LogicException("Seat " + seats.lastTaken() + " of locality " + updated.getName()
+                            + " is sold, its capacity cannot be lower than " + (seats.lastTaken() + 1));
+                }
+                updated.setSeatMap(seats.withCapacity(updated.getMaxCapacity()).toBytes());
+                updated.setSeatMapVersion(existing.getSeatMapVersion() + 1); // Claims started from the old map retry on the new one
+            }
+        }
+        return updatedLocalities;
+    }
+
+    // eventId is the event being updated, so it does not collide with itself. Null when creating
+    private void checkEventInSitu(HandleEventDTO dto, String eventId) {
         LocalDateTime eventDate = dto.date();
         String address = dto.address();
         String city = dto.city();
         String eventImage = dto.eventImageUrl();
         String localitiesImage = dto.localitiesImageUrl();
-        if (eventRepository.existsByEventDate(eventDate) && eventRepository.existsByAddress(address) && eventRepository.existsByCity(city)) {
-            throw new LogicException("Event at that time in the same address in the same city exists");
+        boolean taken = eventId == null
+                ? eventRepository.existsByCityAndAddressAndEventDate(city, address, eventDate)
+                : eventRepository.existsByCityAndAddressAndEventDateAndIdNot(city, address, eventDate, eventId);
+        if (taken) {
+            throw new LogicException(EVENT_IN_SITU_MESSAGE);
         }
         if (!eventImage.isEmpty() && localitiesImage.isEmpty()) {
             throw new LogicException("Please add a localities image for the event");
@@ -311,7 +354,16 @@ public class AdminServiceImpl implements AdminService{
         }
     }
 
-    private static List<Locality> getLocalities(HandleEventDTO dto) {
+    // The unique index still catches two admins saving the same event at once
+    private void saveEvent(Event event) {
+        try {
+            eventRepository.save(event);
+        } catch (DuplicateKeyException e) {
+            throw new LogicException(EVENT_IN_SITU_MESSAGE);
+        }
+    }
+
+    static List<Locality> getLocalities(HandleEventDTO dto) { // Also used by the bulk import
         int totalLocalitiesCapacity = dto.localities().stream().mapToInt(CreateLocalityDTO::maxCapacity).sum();
 
         // Check if total locality capacity matches the event's total available places
@@ -325,6 +377,7 @@ public class AdminServiceImpl implements AdminService{
                         .name(dtoLocality.name())
                         .price(dtoLocality.price())
                         .maxCapacity(dtoLocality.maxCapacity())
+                        .numberedSeating(dtoLocality.numberedSeating())
                         .build())
                 .toList();
     }
@@ -337,6 +390,8 @@ public class AdminServiceImpl implements AdminService{
 
         // Delete the coupon
         eventRepository.deleteById(eventId);
+        seatMapService.evictEvent(eventId);
+        cartViewCache.invalidateEvent(eventId);
         return new ApiResponse<>("Success", "Event deleted", null);
     }
 
@@ -344,6 +399,7 @@ public class AdminServiceImpl implements AdminService{
     public ApiResponse<String> deleteAllEvents() {
         try {
             eventRepository.deleteAll();
+            cartViewCache.invalidateAll();
             return new ApiResponse<>("Success", "All events deleted", null);
         } catch (Exception e) {
             throw new LogicException("Failed to delete all events: " + e.getMessage());
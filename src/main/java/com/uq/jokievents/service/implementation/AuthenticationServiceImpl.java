@@ -15,6 +15,7 @@ import com.uq.jokievents.repository.ShoppingCartRepository;
 import com.uq.jokievents.service.interfaces.AuthenticationService;
 import com.uq.jokievents.utils.*;
 import com.uq.jokievents.service.interfaces.JwtService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -44,6 +45,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
     private final AdminRepository adminRepository;
     private final ShoppingCartRepository shoppingCartRepository;
     private final EmailService emailService;
+    private final MeterRegistry meterRegistry;
 
 //    @Override
 //    public Map<Admin, String> loginAdmin(AuthAdminDTO request) {
@@ -233,7 +235,7 @@ public class AuthenticationServiceImpl implements AuthenticationService {
         // New client creation
         Client client = Client.builder()
                 .id(String.valueOf(new ObjectId()))
-                .idCard("") // No ID card in Google sign-in, or generate a placeholder if required
+                .idCard(null) // No ID card in Google sign-in, an empty one would collide in the unique index
                 .name(name)
                 .address("") // Address could be added later by the client, if needed
                 .phoneNumber("") // No phone initially unless provided
@@ -250,15 +252,15 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                 .clientId(client.getId())
                 .paymentGatewayId("")
                 .localityOrders(new ArrayList<>())
-                .totalPrice(0.0)
-                .totalPriceWithDiscount(0.0)
-                .appliedDiscountPercent(1.0)
+                .totalPriceCents(0)
+                .discountBasisPoints(0)
                 .couponClaimed(false)
                 .build();
 
         // Save client and shopping cart
         shoppingCartRepository.save(clientShoppingCart);
         clientRepository.save(client);
+        meterRegistry.counter("shopping.carts.created", "signup", "google").increment();
 
         // Send a welcome or discount email if desired
         emailService.sendDiscountCouponMail(client.getEmail());
@@ -371,15 +373,15 @@ public class AuthenticationServiceImpl implements AuthenticationService {
                 .clientId(client.getId())
                 .paymentGatewayId("")
                 .localityOrders(new ArrayList<>())
-                .totalPrice(0.0)
-                .totalPriceWithDiscount(0.0)
-                .appliedDiscountPercent(1.0)
+                .totalPriceCents(0)
+                .discountBasisPoints(0)
                 .couponClaimed(false)
                 .build();
 
         // Save client and shopping cart
         shoppingCartRepository.save(clientShoppingCart);
         clientRepository.save(client);
+        meterRegistry.counter("shopping.carts.created", "signup", "password").increment();
 
         // Send verification and discount emails after successful save
         emailService.sendVerificationMail(client.getEmail(), verificationCode);
@@ -0,0 +1,132 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.dtos.CaptureAttemptDTO;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.model.PaymentCapture;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.repository.PaymentCaptureRepository;
+import com.uq.jokievents.service.interfaces.CaptureIdempotencyService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Makes the payment success callback safe to hit more than once for the same PayPal order (refreshes, redirect retries).
+ * The first caller inserts the capture record and owns the order, everybody else gets the existing record back.
+ * Finished orders are also remembered in memory, so a refresh storm is answered without going to Mongo at all.
+ * An owner that died mid way (crash, redeploy) leaves its record IN_PROGRESS, once it has not been touched for
+ * payment.capture.lease-seconds the next caller takes it over like a FAILED one.
+ */
+@Service
+@RequiredArgsConstructor
+public class CaptureIdempotencyServiceImpl implements CaptureIdempotencyService {
+
+    private static final int RECENT_ORDERS = 10_000;
+
+    private final PaymentCaptureRepository paymentCaptureRepository;
+    private final MongoTemplate mongoTemplate;
+
+    // Longer than a capture plus the order completion, so a live owner is never taken over
+    @Value("${payment.capture.lease-seconds:60}")
+    private long leaseSeconds;
+
+    private static final CaptureAttemptDTO ALREADY_COMPLETED = new CaptureAttemptDTO(false, CaptureStatus.COMPLETED, true);
+
+    // LRU of the last finished orders, access order so the ones being refreshed stay in
+    private final Set<String> recentlyCompleted = Collections.newSetFromMap(Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > RECENT_ORDERS;
+                }
+            }));
+
+    @Override
+    public CaptureAttemptDTO begin(String orderId) {
+        if (recentlyCompleted.contains(orderId)) {
+            return ALREADY_COMPLETED;
+        }
+
+        PaymentCapture capture = PaymentCapture.builder()
+                .orderId(orderId)
+                .status(CaptureStatus.IN_PROGRESS)
+                .paymentCaptured(false)
+                .updatedAt(LocalDateTime.now())
+                .build();
+        try {
+            paymentCaptureRepository.insert(capture);
+            return new CaptureAttemptDTO(true, CaptureStatus.IN_PROGRESS, false);
+        } catch (DuplicateKeyException e) {
+            // Someone handled this order before. Only a FAILED attempt or an expired lease can be taken over, and only by one retry
+            LocalDateTime now = LocalDateTime.now();
+            Query takeable = new Query(Criteria.where("orderId").is(orderId).orOperator(
+                    Criteria.where("status").is(CaptureStatus.FAILED),
+                    Criteria.where("status").is(CaptureStatus.IN_PROGRESS).and("updatedAt").lt(now.minusSeconds(leaseSeconds))));
+            Update retry = new Update().set("status", CaptureStatus.IN_PROGRESS).set("updatedAt", now);
+            PaymentCapture retried = mongoTemplate.findAndModify(takeable, retry,
+                    FindAndModifyOptions.options().returnNew(true), PaymentCapture.class);
+            if (retried != null) {
+                return new CaptureAttemptDTO(true, CaptureStatus.IN_PROGRESS, retried.isPaymentCaptured());
+            }
+
+            PaymentCapture existing = paymentCaptureRepository.findById(orderId).orElseThrow(() -> e);
+            if (existing.getStatus() == CaptureStatus.COMPLETED) {
+                recentlyCompleted.add(orderId);
+                return ALREADY_COMPLETED;
+            }
+            // Still being handled by its owner (or it failed right now, the next retry can take it)
+            return new CaptureAttemptDTO(false, CaptureStatus.IN_PROGRESS, existing.isPaymentCaptured());
+        }
+    }
+
+    @Override
+    public Optional<CaptureStatus> getStatus(String orderId) {
+        if (recentlyCompleted.contains(orderId)) {
+            return Optional.of(CaptureStatus.COMPLETED);
+        }
+        return paymentCaptureRepository.findById(orderId).map(PaymentCapture::getStatus);
+    }
+
+    @Override
+    public void markCaptured(String orderId) {
+        update(orderId, new Update().set("paymentCaptured", true));
+    }
+
+    // Saved before the status is checked, so a retry after a declined or half finished capture knows what PayPal did
+    @Override
+    public void recordCapture(String orderId, GatewayCaptureDTO capture) {
+        update(orderId, new Update()
+                .set("gatewayStatus", capture.status())
+                .set("captureId", capture.captureId())
+                .set("paymentCaptured", "COMPLETED".equals(capture.status())));
+    }
+
+    @Override
+    public void markCompleted(String orderId) {
+        update(orderId, new Update().set("status", CaptureStatus.COMPLETED));
+        recentlyCompleted.add(orderId);
+    }
+
+    @Override
+    public void markFailed(String orderId) {
+        update(orderId, new Update().set("status", CaptureStatus.FAILED));
+    }
+
+    private void update(String orderId, Update update) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("orderId").is(orderId)),
+                update.set("updatedAt", LocalDateTime.now()), PaymentCapture.class);
+    }
+}
@@ -0,0 +1,183 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.dtos.ScanResultDTO;
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.exceptions.EventException;
+import com.uq.jokievents.model.CheckIn;
+import com.uq.jokievents.model.Ticket;
+import com.uq.jokievents.model.enums.CheckInStatus;
+import com.uq.jokievents.model.enums.TicketStatus;
+import com.uq.jokievents.repository.CheckInRepository;
+import com.uq.jokievents.service.interfaces.CheckInService;
+import com.uq.jokievents.service.interfaces.TicketTokenService;
+import com.uq.jokievents.utils.TicketValiditySet;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+@Service
+@RequiredArgsConstructor
+public class CheckInServiceImpl implements CheckInService {
+
+    private static final Logger LOGGER = Logger.getLogger(CheckInServiceImpl.class.getName());
+    private static final int CHECK_IN_BATCH_SIZE = 500;
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final CheckInRepository checkInRepository;
+    private final TicketTokenService ticketTokenService;
+    private final MongoTemplate mongoTemplate;
+
+    // One validity set per event with open doors, the gates never touch Mongo while scanning
+    private final Map<String, TicketValiditySet> openEvents = new ConcurrentHashMap<>();
+    // Check-ins waiting to be written, drained in batches by flushCheckIns. The ones that fail to write come back here
+    private final Queue<CheckIn> pendingCheckIns = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public Map<String, Object> openDoors(String eventId) {
+        TicketValiditySet alreadyOpen = openEvents.get(eventId);
+        if (alreadyOpen != null) {
+            // A second admin or a double click, a new set would forget the scans that are not flushed yet
+            return Map.of("validTickets", alreadyOpen.size(), "alreadyCheckedIn", alreadyOpen.redeemed());
+        }
+
+        // Only id and status are read, found through the (eventId, status) index. Refunded tickets are left out
+        Query ticketsOfEvent = new Query(Criteria.where("eventId").is(eventId)
+                .and("status").in(TicketStatus.VALID, TicketStatus.CHECKED_IN));
+        ticketsOfEvent.fields().include("status");
+        List<Ticket> tickets = mongoTemplate.find(ticketsOfEvent, Ticket.class);
+        TicketValiditySet validitySet = new TicketValiditySet(tickets.stream().map(Ticket::getId).toList());
+        for (Ticket ticket : tickets) {
+            if (ticket.getStatus() == TicketStatus.CHECKED_IN) {
+                validitySet.redeem(ticket.getId());
+            }
+        }
+
+        // If the doors were opened before (server restart, second session) the persisted check-ins stay redeemed, even
+        // the ones whose ticket status was not written yet
+        for (CheckIn checkIn : checkInRepository.findByEventId(eventId)) {
+            validitySet.redeem(checkIn.getTicketId());
+        }
+        // and so do the ones of the last session still waiting for Mongo
+        for (CheckIn checkIn : pendingCheckIns) {
+            if (eventId.equals(checkIn.getEventId())) {
+                validitySet.redeem(checkIn.getTicketId());
+            }
+        }
+        TicketValiditySet racing = openEvents.putIfAbsent(eventId, validitySet);
+        TicketValiditySet open = racing == null ? validitySet : racing;
+
+        return Map.of("validTickets", open.size(), "alreadyCheckedIn", open.redeemed());
+    }
+
+    @Override
+    public ScanResultDTO scanTicket(String eventId, String token, String gate) {
+        TicketValiditySet validitySet = openEvents.get(eventId);
+        if (validitySet == null) {
+            throw new EventException("Doors are not open for this event");
+        }
+
+        TicketTokenDTO ticket = ticketTokenService.verifyToken(token);
+        if (!eventId.equals(ticket.eventId())) {
+            return new ScanResultDTO(CheckInStatus.WRONG_EVENT, ticket);
+        }
+
+        return switch (validitySet.redeem(ticket.ticketId())) {
+            case REDEEMED -> {
+                pendingCheckIns.add(CheckIn.builder()
+                        .id(eventId + ":" + ticket.ticketId()) // A ticket is admitted once, so a retried write can not add it twice
+                        .eventId(eventId)
+                        .ticketId(ticket.ticketId())
+                        .purchaseId(ticket.purchaseId())
+                        .gate(gate)
+                        .checkedInAt(LocalDateTime.now())
+                        .build());
+                yield new ScanResultDTO(CheckInStatus.ADMITTED, ticket);
+            }
+            case ALREADY_REDEEMED -> new ScanResultDTO(CheckInStatus.ALREADY_CHECKED_IN, ticket);
+            case UNKNOWN -> new ScanResultDTO(CheckInStatus.NOT_FOUND, ticket);
+        };
+    }
+
+    @Override
+    public Map<String, Object> closeDoors(String eventId) {
+        TicketValiditySet validitySet = openEvents.remove(eventId);
+        if (validitySet == null) {
+            throw new EventException("Doors are not open for this event");
+        }
+        flushCheckIns();
+        return Map.of("validTickets", validitySet.size(), "checkedIn", validitySet.redeemed());
+    }
+
+    @Override
+    @Scheduled(fixedDelay = 1000)
+    public void flushCheckIns() {
+        List<CheckIn> failed = new ArrayList<>();
+        List<CheckIn> batch = new ArrayList<>(CHECK_IN_BATCH_SIZE);
+        CheckIn checkIn;
+        while ((checkIn = pendingCheckIns.poll()) != null) {
+            batch.add(checkIn);
+            if (batch.size() == CHECK_IN_BATCH_SIZE) {
+                failed.addAll(saveCheckIns(batch));
+                batch = new ArrayList<>(CHECK_IN_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            failed.addAll(saveCheckIns(batch));
+        }
+        // Back in the queue only now, otherwise this same flush would keep retrying them while Mongo is down
+        pendingCheckIns.addAll(failed);
+    }
+
+    /**
+     * One unordered insert for the check-ins and one update to flip the status of their tickets.
+     * @return the check-ins that have to be written again. A duplicate key means an earlier try already wrote it
+     */
+    private List<CheckIn> saveCheckIns(List<CheckIn> batch) {
+        List<CheckIn> written = new ArrayList<>(batch);
+        List<CheckIn> failed = new ArrayList<>();
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CheckIn.class).insert(batch).execute();
+        } catch (BulkOperationException e) {
+            Set<Integer> failedIndexes = new HashSet<>();
+            e.getErrors().stream()
+                    .filter(error -> error.getCode() != DUPLICATE_KEY)
+                    .forEach(error -> failedIndexes.add(error.getIndex()));
+            written.clear();
+            for (int i = 0; i < batch.size(); i++) {
+                (failedIndexes.contains(i) ? failed : written).add(batch.get(i));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warning("Could not write " + batch.size() + " check-ins, retrying on the next flush: " + e.getMessage());
+            return batch;
+        }
+        if (!failed.isEmpty()) {
+            LOGGER.warning("Could not write " + failed.size() + " check-ins, retrying on the next flush");
+        }
+        if (written.isEmpty()) {
+            return failed;
+        }
+
+        try {
+            List<String> ticketIds = written.stream().map(CheckIn::getTicketId).toList();
+            Query admittedTickets = new Query(Criteria.where("id").in(ticketIds).and("status").is(TicketStatus.VALID));
+            mongoTemplate.updateMulti(admittedTickets, new Update().set("status", TicketStatus.CHECKED_IN), Ticket.class);
+        } catch (RuntimeException e) {
+            // The check-ins are in, writing them again is a duplicate and brings the ticket update back
+            LOGGER.warning("Could not mark the tickets of " + written.size() + " check-ins, retrying on the next flush: " + e.getMessage());
+            failed.addAll(written);
+        }
+        return failed;
+    }
+}
@@ -11,12 +11,22 @@ import com.uq.jokievents.repository.*;
 import com.uq.jokievents.service.interfaces.ClientService;
 import com.uq.jokievents.service.interfaces.JwtService;
 import com.uq.jokievents.utils.ApiResponse;
+import com.uq.jokievents.utils.CartPricing;
+import com.uq.jokievents.utils.CartViewCache;
 import com.uq.jokievents.utils.EmailService;
 import com.uq.jokievents.utils.Generators;
+import com.mongodb.client.result.UpdateResult;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -37,6 +47,13 @@ public class ClientServiceImpl implements ClientService {
     private final EventRepository eventRepository;
     private final EmailService emailService;
     private final JwtService jwtService;
+    private final MongoTemplate mongoTemplate;
+    @Qualifier("catalogMongoTemplate") private final MongoTemplate catalogMongoTemplate; // Search can be served by a secondary
+    private final CartViewCache cartViewCache;
+
+    // Upper bound for a cached cart view, in case something changes an event without going through the admin service
+    @Value("${cart.view-cache.ttl-minutes:10}")
+    private long cartViewTtlMinutes;
 
 
     @Override
@@ -147,8 +164,8 @@ public class ClientServiceImpl implements ClientService {
         LocalDateTime endDate = dto.endDate();
         EventType eventType = dto.eventType();
 
-        // Fetch all events from the repository
-        List<Event> allEvents = eventRepository.findAll();
+        // Fetch all events, from a secondary when there is one
+        List<Event> allEvents = catalogMongoTemplate.findAll(Event.class);
 
         // Filter events based on the criteria
         List<Event> filteredEvents = allEvents.stream()
@@ -216,56 +233,38 @@ public class ClientServiceImpl implements ClientService {
                 .findFirst()
                 .orElseThrow(() -> new EventException("Locality not found in the event"));
 
-        // Validate payment amount
-        double expectedPayment = dto.selectedTickets() * locality.getPrice();
-        if (dto.totalPaymentAmount() != expectedPayment) {
+        // Validate payment amount, in cents so 3 x 19.99 matches what the front end adds up
+        long expectedPaymentCents = CartPricing.lineTotalCents(locality.getPrice(), dto.selectedTickets());
+        if (CartPricing.toCents(dto.totalPaymentAmount()) != expectedPaymentCents) {
             throw new PaymentException("Incorrect payment amount");
         }
 
-        // Save the event after ordering
-        eventRepository.save(event);
-
-        // Fetch the client
-        Client client = clientRepository.findById(clientId)
-                .orElseThrow(() -> new AccountException("Client not found"));
-
-        // Fetch the shopping cart
-        ShoppingCart shoppingCart = shoppingCartRepository.findById(client.getIdShoppingCart())
-                .orElseThrow(() -> new ShoppingCartException("Shopping cart not found"));
-
         // Create and add the locality order to the shopping cart
         LocalityOrder localityOrder = new LocalityOrder();
+        localityOrder.setId(new ObjectId().toHexString()); // So it can be pulled out of the array on its own
         localityOrder.setEventId(dto.eventId());
         localityOrder.setLocalityName(dto.localityName());
         localityOrder.setNumTicketsSelected(dto.selectedTickets());
-        localityOrder.setTotalPaymentAmount(dto.totalPaymentAmount());
-
-        shoppingCart.getLocalityOrders().add(localityOrder);
-
-        // Update and save the shopping cart total price
-        double newTotalPrice = shoppingCart.getTotalPrice() + expectedPayment;
-        shoppingCart.setTotalPrice(newTotalPrice);
-        shoppingCart.setTotalPriceWithDiscount(newTotalPrice);
-        shoppingCartRepository.save(shoppingCart);
+        localityOrder.setTotalPaymentAmount(CartPricing.toAmount(expectedPaymentCents));
+
+        // Append the order and add to the running total in one atomic update, a claimed coupon applies to the new
+        // total on its own. Two tabs adding at the same time both land, nothing else in the cart is rewritten
+        Update addOrder = new Update()
+                .push("localityOrders", localityOrder)
+                .inc("totalPriceCents", expectedPaymentCents)
+                .inc("version", 1);
+        UpdateResult result = mongoTemplate.updateFirst(cartOfClient(clientId), addOrder, ShoppingCart.class);
+        if (result.getMatchedCount() == 0) {
+            throw new ShoppingCartException("Shopping cart not found");
+        }
+        cartViewCache.invalidateClient(clientId);
     }
 
     @Override
     public void cancelLocalityOrder(String clientId, LocalityOrderAsClientDTO dto) {
-        // Find the client
-        Optional<Client> clientOptional = clientRepository.findById(clientId);
-        if (clientOptional.isEmpty()) {
-            throw new AccountException("Client not found");
-        }
-
-        Client client = clientOptional.get();
-
         // Find the client's shopping cart
-        Optional<ShoppingCart> shoppingCartOptional = shoppingCartRepository.findById(client.getIdShoppingCart());
-        if (shoppingCartOptional.isEmpty()) {
-            throw new ShoppingCartException("Shopping cart not found");
-        }
-
-        ShoppingCart shoppingCart = shoppingCartOptional.get();
+        ShoppingCart shoppingCart = shoppingCartRepository.findByClientId(clientId)
+                .orElseThrow(() -> new ShoppingCartException("Shopping cart not found"));
 
         // Find the LocalityOrder to be canceled
         LocalityOrder orderToCancel = shoppingCart.getLocalityOrders().stream()
@@ -295,69 +294,56 @@ public class ClientServiceImpl implements ClientService {
             throw new EventException("Locality not found in event");
         }
 
-        // Remove the LocalityOrder from the shopping cart
-        shoppingCart.getLocalityOrders().remove(orderToCancel);
-
-        // Recalculate total price
-        double priceToRestar = localityToUpdate.getPrice() * dto.selectedTickets();
-        shoppingCart.setTotalPrice(shoppingCart.getTotalPrice() - priceToRestar);
-
-        // Save the updated shopping cart and event
-        shoppingCartRepository.save(shoppingCart);
-        eventRepository.save(event);
+        // Recalculate total price with what that order actually added, the whole order leaves the cart
+        long priceToRestar = CartPricing.toCents(orderToCancel.getTotalPaymentAmount());
+
+        Query cartQuery;
+        Update removeOrder = new Update().inc("totalPriceCents", -priceToRestar).inc("version", 1);
+        if (orderToCancel.getId() != null) {
+            // Only matches while the order is still there, so cancelling twice from two tabs subtracts once
+            cartQuery = new Query(Criteria.where("id").is(shoppingCart.getId()).and("localityOrders.id").is(orderToCancel.getId()));
+            removeOrder.pull("localityOrders", new Query(Criteria.where("id").is(orderToCancel.getId())));
+        } else {
+            // Orders added before they had ids cannot be pulled alone, rewrite the list if nobody touched the cart since
+            cartQuery = new Query(Criteria.where("id").is(shoppingCart.getId()).and("version").is(shoppingCart.getVersion()));
+            List<LocalityOrder> remaining = new ArrayList<>(shoppingCart.getLocalityOrders());
+            remaining.remove(orderToCancel);
+            removeOrder.set("localityOrders", remaining);
+        }
+        UpdateResult result = mongoTemplate.updateFirst(cartQuery, removeOrder, ShoppingCart.class);
+        if (result.getMatchedCount() == 0) {
+            throw new ShoppingCartException("The shopping cart changed, reload it and try again");
+        }
+        cartViewCache.invalidateClient(clientId);
     }
 
     @Override
     public void emptyShoppingCart(String clientId) {
-        Optional<Client> clientOptional = clientRepository.findById(clientId);
-        if (clientOptional.isEmpty()){
-            throw new AccountException("No account found to delete the shopping cart.");
-        }
-        Optional<ShoppingCart> optionalShoppingCart = shoppingCartRepository.findById(clientOptional.get().getIdShoppingCart());
-        if (optionalShoppingCart.isEmpty()){
+        Update clearedCart = new Update()
+                .set("paymentGatewayId", "")
+                .set("localityOrders", new ArrayList<>())
+                .set("totalPriceCents", 0L)
+                .set("discountBasisPoints", 0)
+                .set("couponClaimed", false)
+                .inc("version", 1);
+        if (mongoTemplate.updateFirst(cartOfClient(clientId), clearedCart, ShoppingCart.class).getMatchedCount() == 0) {
             throw new ShoppingCartException("Shopping cart not found, grave error");
         }
+        cartViewCache.invalidateClient(clientId);
+    }
 
-        ShoppingCart shoppingCart = optionalShoppingCart.get();
-        shoppingCart.setPaymentGatewayId("");
-        shoppingCart.setLocalityOrders(new ArrayList<>());
-        shoppingCart.setTotalPrice(0.0);
-        shoppingCart.setTotalPriceWithDiscount(0.0);
-        shoppingCart.setAppliedDiscountPercent(1.0);
-        shoppingCart.setCouponClaimed(false);
-        shoppingCartRepository.save(shoppingCart);  // Save the updated shopping cart with cleared items
+    // clientId is unique in the carts, so cart operations go straight to the cart without reading the client first
+    private static Query cartOfClient(String clientId) {
+        return new Query(Criteria.where("clientId").is(clientId));
     }
 
     @Override
     public Map<String, Object> loadShoppingCart(String clientId, int page, int size) {
 
-        // Main logic with exceptions instead of ResponseEntity
-        Optional<Client> clientOptional = clientRepository.findById(clientId);
-        if (clientOptional.isEmpty()) {
-            throw new AccountException("Client not found");
-        }
-
-        Client client = clientOptional.get();
-        Optional<ShoppingCart> shoppingCartOptional = shoppingCartRepository.findById(client.getIdShoppingCart());
-        if (shoppingCartOptional.isEmpty()) {
-            throw new ShoppingCartException("Shopping cart not found, grave error");
-        }
-
-        ShoppingCart shoppingCart = shoppingCartOptional.get();
-        List<LoadLocalityOrdersForClient> localityOrdersList = new ArrayList<>();
-
-        for (LocalityOrder localityOrder : shoppingCart.getLocalityOrders()) {
-            Optional<Event> eventOptional = eventRepository.findById(localityOrder.getEventId());
-
-            if (eventOptional.isEmpty()) {
-                continue; // Skip orders for not found events
-            }
-            Event event = eventOptional.get();
-            if (!LocalDateTime.now().plusDays(2).isBefore(event.getEventDate())) {
-                continue; // Skip orders for events occurring soon
-            }
-            localityOrdersList.add(getLoadLocalityOrdersForClient(localityOrder, eventOptional));
-        }
+        // Paging through the cart or coming back to it is served from the cache, see CartViewCache
+        LocalDateTime now = LocalDateTime.now();
+        List<LoadLocalityOrdersForClient> localityOrdersList = cartViewCache.get(clientId, now, () -> storedCartVersion(clientId))
+                .orElseGet(() -> buildCartView(clientId, now));
 
         // Pagination logic
         int totalElements = localityOrdersList.size();
@@ -378,6 +364,53 @@ public class ClientServiceImpl implements ClientService {
         );
     }
 
+    private List<LoadLocalityOrdersForClient> buildCartView(String clientId, LocalDateTime now) {
+        long stamp = cartViewCache.stamp(clientId);
+
+        // Main logic with exceptions instead of ResponseEntity
+        ShoppingCart shoppingCart = shoppingCartRepository.findByClientId(clientId)
+                .orElseThrow(() -> new ShoppingCartException("Shopping cart not found, grave error"));
+
+        // All the events of the cart in one query instead of one per order
+        Set<String> eventIds = new HashSet<>();
+        for (LocalityOrder localityOrder : shoppingCart.getLocalityOrders()) {
+            eventIds.add(localityOrder.getEventId());
+        }
+        Map<String, Event> events = new HashMap<>();
+        for (Event event : eventRepository.findAllById(eventIds)) {
+            events.put(event.getId(), event);
+        }
+
+        List<LoadLocalityOrdersForClient> localityOrdersList = new ArrayList<>();
+        LocalDateTime validUntil = now.plusMinutes(cartViewTtlMinutes);
+        for (LocalityOrder localityOrder : shoppingCart.getLocalityOrders()) {
+            Event event = events.get(localityOrder.getEventId());
+            if (event == null) {
+                continue; // Skip orders for not found events
+            }
+            if (!now.plusDays(2).isBefore(event.getEventDate())) {
+                continue; // Skip orders for events occurring soon
+            }
+            localityOrdersList.add(getLoadLocalityOrdersForClient(localityOrder, Optional.of(event)));
+            // The view is stale as soon as one of its events enters the two day window
+            LocalDateTime hiddenFrom = event.getEventDate().minusDays(2);
+            if (hiddenFrom.isBefore(validUntil)) {
+                validUntil = hiddenFrom;
+            }
+        }
+
+        cartViewCache.put(clientId, stamp, shoppingCart.getVersion(), localityOrdersList, validUntil);
+        return localityOrdersList;
+    }
+
+    // Just the version, read from the primary so a change made through another node is never missed
+    private long storedCartVersion(String clientId) {
+        Query versionOnly = cartOfClient(clientId);
+        versionOnly.fields().include("version");
+        ShoppingCart stored = mongoTemplate.findOne(versionOnly, ShoppingCart.class);
+        return stored == null ? -1 : stored.getVersion();
+    }
+
     private static LoadLocalityOrdersForClient getLoadLocalityOrdersForClient(LocalityOrder localityOrder, Optional<Event> eventOptional) {
         Event event = eventOptional.get();
         return new LoadLocalityOrdersForClient(
@@ -390,12 +423,8 @@ public class ClientServiceImpl implements ClientService {
 
     @Override
     public void applyCoupon(String clientId, String couponName) {
-        // Fetch the client
-        Client client = clientRepository.findById(clientId)
-                .orElseThrow(() -> new AccountException("Client not found"));
-
         // Fetch the shopping cart
-        ShoppingCart clientShoppingCart = shoppingCartRepository.findById(client.getIdShoppingCart())
+        ShoppingCart clientShoppingCart = shoppingCartRepository.findByClientId(clientId)
                 .orElseThrow(() -> new ShoppingCartException("Shopping cart not found"));
 
         if (clientShoppingCart.isCouponClaimed()) {
@@ -411,22 +440,28 @@ public class ClientServiceImpl implements ClientService {
             throw new LogicException("No ordered localities to apply a coupon");
         }
 
-        Double totalPriceOfLocalityOrders = clientShoppingCart.getTotalPrice();
-        if (totalPriceOfLocalityOrders < coupon.getMinPurchaseAmount()) {
+        if (clientShoppingCart.getTotalPriceCents() < CartPricing.toCents(coupon.getMinPurchaseAmount())) {
             throw new PaymentException("Minimum purchase amount to use this coupon is " + coupon.getMinPurchaseAmount());
         }
 
-        // Apply the discount to the total price
-        double discountPercent = coupon.getDiscountPercent();
-        Double totalPriceWithDiscount = totalPriceOfLocalityOrders * (1 - (discountPercent / 100));
-        clientShoppingCart.setTotalPriceWithDiscount(totalPriceWithDiscount);
-        clientShoppingCart.setCouponClaimed(true);
-        clientShoppingCart.setAppliedDiscountPercent(1 - (discountPercent / 100));
-        client.getListOfUsedCoupons().add(couponName);
+        // Only the rate is stored, the discounted total is worked out from the running total when read.
+        // The version check makes sure the minimum purchase was checked against the cart as it still is
+        Query unchangedCart = new Query(Criteria.where("id").is(clientShoppingCart.getId())
+                .and("version").is(clientShoppingCart.getVersion())
+                .and("couponClaimed").is(false));
+        Update claimCoupon = new Update()
+                .set("discountBasisPoints", CartPricing.toBasisPoints(coupon.getDiscountPercent()))
+                .set("couponClaimed", true)
+                .inc("version", 1);
+        if (mongoTemplate.updateFirst(unchangedCart, claimCoupon, ShoppingCart.class).getMatchedCount() == 0) {
+            throw new LogicException("The shopping cart changed while applying the coupon, try again");
+        }
 
-        // Save changes
-        clientRepository.save(client);
-        shoppingCartRepository.save(clientShoppingCart);
+        // $addToSet instead of saving the whole client, only the coupon name goes over the wire
+        Update useCoupon = new Update().addToSet("listOfUsedCoupons", couponName);
+        if (mongoTemplate.updateFirst(new Query(Criteria.where("id").is(clientId)), useCoupon, Client.class).getMatchedCount() == 0) {
+            throw new AccountException("Client not found");
+        }
     }
 
     @Override
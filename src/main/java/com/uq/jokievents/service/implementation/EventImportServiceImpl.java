@@ -0,0 +1,488 @@
+package com.uq.jokievents.service.implementation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.uq.jokievents.dtos.CreateLocalityDTO;
+import com.uq.jokievents.dtos.EventImportDTO;
+import com.uq.jokievents.dtos.HandleEventDTO;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.enums.EventType;
+import com.uq.jokievents.model.enums.ImportStatus;
+import com.uq.jokievents.service.interfaces.EventImportService;
+import com.uq.jokievents.service.interfaces.ImageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk event import for season launches. The upload is spooled to a temp file and read line by line (JSON Lines, or
+ * CSV with a header row), so memory depends on events.import.chunk-size and not on the size of the file. Every chunk
+ * is parsed and validated in parallel, checked against the stored events with a single query, gets its images
+ * uploaded by at most events.import.image-concurrency tasks and is written with one unordered bulk insert. The unique
+ * city_address_date index still catches duplicates inside the file itself, the images of the rows it rejects are
+ * deleted again. Imports run one at a time on their own
+ * thread, the parallel steps go to the task executor.
+ */
+@Service
+public class EventImportServiceImpl implements EventImportService {
+
+    private static final Logger LOGGER = Logger.getLogger(EventImportServiceImpl.class.getName());
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int MAX_KEPT_IMPORTS = 50;
+    private static final int DUPLICATE_KEY = 11000;
+    private static final List<String> CSV_COLUMNS = List.of("name", "city", "address", "date", "totalAvailablePlaces",
+            "localities", "eventType", "eventImageUrl", "localitiesImageUrl");
+
+    private final MongoTemplate mongoTemplate;
+    private final ImageService imageService;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final AsyncTaskExecutor importTaskExecutor;
+    private final MeterRegistry meterRegistry;
+    private final int chunkSize;
+    private final Semaphore imageUploads; // Shared by every running import, Firebase is the one we are protecting
+    private final String imageNotFound;
+    private final ExecutorService importRunner;
+
+    private final Map<String, ImportJob> imports = new ConcurrentHashMap<>();
+
+    public EventImportServiceImpl(MongoTemplate mongoTemplate,
+                                  ImageService imageService,
+                                  Validator validator,
+                                  ObjectMapper objectMapper,
+                                  @Qualifier("eventImportTaskExecutor") AsyncTaskExecutor importTaskExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${events.import.chunk-size:200}") int chunkSize,
+                                  @Value("${events.import.image-concurrency:8}") int imageConcurrency,
+                                  @Value("${image.not.found}") String imageNotFound) {
+        this.mongoTemplate = mongoTemplate;
+        this.imageService = imageService;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.importTaskExecutor = importTaskExecutor;
+        this.meterRegistry = meterRegistry;
+        this.chunkSize = chunkSize;
+        this.imageUploads = new Semaphore(imageConcurrency);
+        this.imageNotFound = imageNotFound;
+        this.importRunner = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public EventImportDTO startImport(MultipartFile file) {
+        if (file == null || file.isEmpty()) {
+            throw new LogicException("The import file is empty");
+        }
+        boolean csv = isCsv(file.getOriginalFilename());
+        Path spool;
+        try {
+            // Large multipart uploads are already on disk, this only moves them somewhere the job can outlive the request
+            spool = Files.createTempFile("event-import-", csv ? ".csv" : ".jsonl");
+            file.transferTo(spool);
+        } catch (IOException e) {
+            throw new LogicException("Could not store the import file: " + e.getMessage());
+        }
+
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), file.getOriginalFilename(), file.getSize());
+        forgetOldImports();
+        imports.put(job.id, job);
+        importRunner.execute(() -> runImport(job, spool, csv));
+        return job.toDto();
+    }
+
+    @Override
+    public Optional<EventImportDTO> getImport(String importId) {
+        return Optional.ofNullable(imports.get(importId)).map(ImportJob::toDto);
+    }
+
+    private void runImport(ImportJob job, Path spool, boolean csv) {
+        job.status = ImportStatus.RUNNING;
+        try (BufferedReader reader = Files.newBufferedReader(spool, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            List<String> header = null;
+            if (csv) {
+                String headerLine = reader.readLine();
+                lineNumber++;
+                header = headerLine == null ? List.of() : parseCsvLine(headerLine.strip());
+                if (!header.containsAll(CSV_COLUMNS.subList(0, 7))) {
+                    throw new LogicException("The CSV header must have the columns " + CSV_COLUMNS);
+                }
+                job.bytesRead.addAndGet(headerLine.length() + 1L);
+            }
+
+            List<ImportRow> chunk = new ArrayList<>(chunkSize);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                job.bytesRead.addAndGet(line.length() + 1L); // Roughly, base64 and most addresses are ASCII anyway
+                if (line.isBlank()) {
+                    continue;
+                }
+                chunk.add(new ImportRow(lineNumber, line));
+                if (chunk.size() == chunkSize) {
+                    importChunk(job, chunk, header);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(job, chunk, header);
+            }
+            job.finish(ImportStatus.COMPLETED);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Event import " + job.id + " stopped at " + job.processed.get() + " records", e);
+            job.addError("import stopped: " + e.getMessage());
+            job.finish(ImportStatus.FAILED);
+        } finally {
+            try {
+                Files.deleteIfExists(spool);
+            } catch (IOException e) {
+                LOGGER.warning("Could not delete the import spool " + spool + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void importChunk(ImportJob job, List<ImportRow> chunk, List<String> header) {
+        inParallel(chunk, row -> parseAndValidate(row, header));
+        List<ImportRow> valid = rejectInvalid(job, chunk);
+
+        rejectExisting(valid);
+        valid = rejectInvalid(job, valid);
+
+        inParallel(valid.stream().filter(row -> !row.dto.eventImageUrl().isBlank()).toList(), this::uploadImages);
+        valid = rejectInvalid(job, valid);
+
+        insert(job, valid);
+        job.processed.addAndGet(chunk.size());
+    }
+
+    private void parseAndValidate(ImportRow row, List<String> header) {
+        try {
+            HandleEventDTO dto = header == null ? fromJson(row.line) : fromCsv(parseCsvLine(row.line), header);
+            Set<ConstraintViolation<HandleEventDTO>> violations = validator.validate(dto);
+            if (!violations.isEmpty()) {
+                row.error = violations.stream()
+                        .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining(", "));
+                return;
+            }
+            // Same rules as a single create-event
+            boolean hasEventImage = !dto.eventImageUrl().isBlank();
+            if (hasEventImage != !dto.localitiesImageUrl().isBlank()) {
+                row.error = "Add both the event and the localities image, or none";
+                return;
+            }
+            row.dto = dto;
+            row.event = Event.builder()
+                    .name(dto.name())
+                    .address(dto.address())
+                    .city(dto.city())
+                    .eventDate(dto.date())
+                    .availableForPurchase(true)
+                    .localities(AdminServiceImpl.getLocalities(dto))
+                    .totalAvailablePlaces(dto.totalAvailablePlaces())
+                    .finalTotalPlaces(dto.totalAvailablePlaces())
+                    .eventImageUrl(imageNotFound)
+                    .localitiesImageUrl(imageNotFound)
+                    .eventType(dto.eventType())
+                    .build();
+        } catch (Exception e) {
+            row.error = e.getMessage();
+        }
+    }
+
+    // One query on the unique index for the whole chunk instead of one per record
+    private void rejectExisting(List<ImportRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<Criteria> places = rows.stream()
+                .map(row -> Criteria.where("city").is(row.event.getCity())
+                        .and("address").is(row.event.getAddress())
+                        .and("eventDate").is(row.event.getEventDate()))
+                .toList();
+        Query query = new Query(new Criteria().orOperator(places));
+        query.fields().include("city", "address", "eventDate");
+        Set<String> taken = mongoTemplate.find(query, Event.class).stream()
+                .map(EventImportServiceImpl::placeKey)
+                .collect(Collectors.toSet());
+        for (ImportRow row : rows) {
+            if (taken.contains(placeKey(row.event))) {
+                row.error = "Event at that time in the same address in the same city exists";
+            }
+        }
+    }
+
+    private void uploadImages(ImportRow row) {
+        try {
+            imageUploads.acquire();
+            try {
+                row.event.setEventImageUrl(imageService.uploadImage(row.dto.eventImageUrl()));
+                row.event.setLocalitiesImageUrl(imageService.uploadImage(row.dto.localitiesImageUrl()));
+            } finally {
+                imageUploads.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            row.error = "Interrupted while uploading the images";
+        } catch (Exception e) {
+            row.error = "Could not upload the images: " + e.getMessage();
+        }
+        if (row.error != null) {
+            deleteImages(row); // The event image may be up already when the localities one failed
+        }
+    }
+
+    // Images of a row that will not be stored, no event points to them
+    private void deleteImages(ImportRow row) {
+        for (String url : List.of(row.event.getEventImageUrl(), row.event.getLocalitiesImageUrl())) {
+            if (url.equals(imageNotFound)) {
+                continue;
+            }
+            try {
+                imageService.deleteImage(imageName(url));
+            } catch (Exception e) {
+                LOGGER.warning("Could not delete the image " + url + " of a rejected event: " + e.getMessage());
+            }
+        }
+    }
+
+    // uploadImage answers with a download URL, deleteImage wants the object name at the end of its path
+    private static String imageName(String url) {
+        String path = URI.create(url).getPath();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    private void insert(ImportJob job, List<ImportRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        BulkOperations inserts = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Event.class);
+        inserts.insert(rows.stream().map(row -> row.event).toList());
+        int inserted;
+        try {
+            inserted = inserts.execute().getInsertedCount();
+        } catch (BulkOperationException e) {
+            inserted = e.getResult().getInsertedCount();
+            for (BulkWriteError error : e.getErrors()) {
+                ImportRow row = rows.get(error.getIndex());
+                job.reject(row.lineNumber, error.getCode() == DUPLICATE_KEY
+                        ? "Event at that time in the same address in the same city exists"
+                        : error.getMessage());
+                deleteImages(row);
+            }
+            meterRegistry.counter("events.import.records", "outcome", "rejected").increment(e.getErrors().size());
+        }
+        job.imported.addAndGet(inserted);
+        meterRegistry.counter("events.import.records", "outcome", "imported").increment(inserted);
+    }
+
+    private List<ImportRow> rejectInvalid(ImportJob job, List<ImportRow> rows) {
+        List<ImportRow> valid = new ArrayList<>(rows.size());
+        for (ImportRow row : rows) {
+            if (row.error == null) {
+                valid.add(row);
+            } else {
+                job.reject(row.lineNumber, row.error);
+                meterRegistry.counter("events.import.records", "outcome", "rejected").increment();
+            }
+        }
+        return valid;
+    }
+
+    private void inParallel(List<ImportRow> rows, Consumer<ImportRow> step) {
+        CompletableFuture.allOf(rows.stream()
+                        .map(row -> CompletableFuture.runAsync(() -> step.accept(row), importTaskExecutor))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+    }
+
+    private HandleEventDTO fromJson(String line) throws IOException {
+        HandleEventDTO dto = objectMapper.readValue(line, HandleEventDTO.class);
+        return new HandleEventDTO(dto.name(), dto.city(), dto.address(), dto.date(), dto.totalAvailablePlaces(),
+                dto.localities(), Objects.requireNonNullElse(dto.eventImageUrl(), ""),
+                Objects.requireNonNullElse(dto.localitiesImageUrl(), ""), dto.eventType());
+    }
+
+    // Localities go in one column as name:price:maxCapacity[:numbered] separated by |, e.g. General:50000:300|VIP:120000:40:true
+    private static HandleEventDTO fromCsv(List<String> values, List<String> header) {
+        if (values.size() != header.size()) {
+            throw new LogicException("Expected " + header.size() + " columns but got " + values.size());
+        }
+        Map<String, String> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i), values.get(i).strip());
+        }
+        List<CreateLocalityDTO> localities = Arrays.stream(columns.get("localities").split("\\|"))
+                .filter(locality -> !locality.isBlank())
+                .map(locality -> {
+                    String[] parts = locality.strip().split(":");
+                    if (parts.length < 3) {
+                        throw new LogicException("Locality '" + locality + "' must be name:price:maxCapacity[:numbered]");
+                    }
+                    return new CreateLocalityDTO(parts[0], Double.parseDouble(parts[1]), Integer.parseInt(parts[2]),
+                            parts.length > 3 && Boolean.parseBoolean(parts[3]));
+                })
+                .toList();
+        return new HandleEventDTO(
+                columns.get("name"),
+                columns.get("city"),
+                columns.get("address"),
+                LocalDateTime.parse(columns.get("date")),
+                Integer.parseInt(columns.get("totalAvailablePlaces")),
+                localities,
+                columns.getOrDefault("eventImageUrl", ""),
+                columns.getOrDefault("localitiesImageUrl", ""),
+                EventType.valueOf(columns.get("eventType").toUpperCase()));
+    }
+
+    // Plain CSV: commas split, double quotes wrap fields with commas (data URLs have one) and "" is a literal quote
+    static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        values.add(value.toString());
+        return values;
+    }
+
+    private static boolean isCsv(String fileName) {
+        String name = fileName == null ? "" : fileName.toLowerCase();
+        if (name.endsWith(".csv")) {
+            return true;
+        }
+        if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+            return false;
+        }
+        throw new LogicException("Upload a .jsonl or .csv file");
+    }
+
+    private static String placeKey(Event event) {
+        return event.getCity() + "|" + event.getAddress() + "|" + event.getEventDate();
+    }
+
+    // The status of finished imports is kept for a while so the admin can still read it, just not forever
+    private void forgetOldImports() {
+        if (imports.size() < MAX_KEPT_IMPORTS) {
+            return;
+        }
+        imports.values().stream()
+                .filter(job -> job.finishedAt != null)
+                .sorted(Comparator.comparing(job -> job.finishedAt))
+                .limit(imports.size() - MAX_KEPT_IMPORTS + 1L)
+                .forEach(job -> imports.remove(job.id));
+    }
+
+    private static class ImportRow {
+        private final int lineNumber;
+        private final String line;
+        private volatile HandleEventDTO dto;
+        private volatile Event event;
+        private volatile String error;
+
+        private ImportRow(int lineNumber, String line) {
+            this.lineNumber = lineNumber;
+            this.line = line;
+        }
+    }
+
+    private static class ImportJob {
+        private final String id;
+        private final String fileName;
+        private final long totalBytes;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final AtomicLong bytesRead = new AtomicLong();
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong imported = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile ImportStatus status = ImportStatus.QUEUED;
+        private volatile LocalDateTime finishedAt;
+
+        private ImportJob(String id, String fileName, long totalBytes) {
+            this.id = id;
+            this.fileName = fileName;
+            this.totalBytes = totalBytes;
+        }
+
+        private void reject(int lineNumber, String error) {
+            rejected.incrementAndGet();
+            addError("line " + lineNumber + ": " + error);
+        }
+
+        private void addError(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        private void finish(ImportStatus finalStatus) {
+            status = finalStatus;
+            finishedAt = LocalDateTime.now();
+        }
+
+        private EventImportDTO toDto() {
+            // finishedAt is written last, reading it first means a finished import is never reported half way
+            LocalDateTime finished = finishedAt;
+            ImportStatus currentStatus = status;
+            List<String> errorsSoFar;
+            synchronized (errors) {
+                errorsSoFar = List.copyOf(errors);
+            }
+            return new EventImportDTO(id, fileName, currentStatus, Math.min(bytesRead.get(), totalBytes), totalBytes,
+                    processed.get(), imported.get(), rejected.get(), errorsSoFar, startedAt, finished);
+        }
+    }
+}
@@ -5,7 +5,10 @@ import com.google.cloud.storage.Bucket;
 import com.google.firebase.cloud.StorageClient;
 import com.uq.jokievents.exceptions.LogicException;
 import com.uq.jokievents.service.interfaces.ImageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -13,11 +16,16 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Base64;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 @Service
+@Profile("!loadtest")
 @RequiredArgsConstructor
 public class ImageServiceImpl implements ImageService {
 
+    private final MeterRegistry meterRegistry;
+
     @Override
     public String uploadImage(String base64Image){
 
@@ -35,7 +43,7 @@ public class ImageServiceImpl implements ImageService {
 
         // Get the bucket and upload the image
         Bucket bucket = StorageClient.getInstance().bucket();
-        Blob blob = bucket.create(fileName, new ByteArrayInputStream(imageBytes), imageData.mimeType);
+        Blob blob = timed("upload", () -> bucket.create(fileName, new ByteArrayInputStream(imageBytes), imageData.mimeType));
 
         // Return the public URL of the uploaded image
         return String.format(
@@ -92,7 +100,25 @@ public class ImageServiceImpl implements ImageService {
     @Override
     public void deleteImage(String imageName) {
         Bucket bucket = StorageClient.getInstance().bucket();
-        Blob blob = bucket.get(imageName);
-        blob.delete();
+        timed("delete", () -> bucket.get(imageName).delete());
+    }
+
+    // Firebase storage calls, tagged by operation and outcome
+    private <T> T timed(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            T result = call.get();
+            outcome = "success";
+            return result;
+        } finally {
+            Timer.builder("firebase.storage.requests")
+                    .description("Calls to the Firebase storage bucket")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 }
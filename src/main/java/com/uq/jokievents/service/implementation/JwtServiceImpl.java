@@ -62,7 +62,6 @@ public class JwtServiceImpl implements JwtService {
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        System.out.println("P. DIDDY");
         final String username = getUsernameFromToken(token);
         return (username.equals(userDetails.getUsername()) && isTokenExpired(token));
     }
@@ -126,7 +125,6 @@ public class JwtServiceImpl implements JwtService {
 
     @Override
     public String refreshToken(String token) {
-        System.out.println("I GOT HERE");
         String tokenWithoutPrefix = token.replace("Bearer ", "").trim();
 
         if (isTokenExpired(tokenWithoutPrefix)) {
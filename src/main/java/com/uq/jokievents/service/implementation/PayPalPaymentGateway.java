@@ -0,0 +1,117 @@
+package com.uq.jokievents.service.implementation;
+
+import com.braintreepayments.http.HttpRequest;
+import com.braintreepayments.http.HttpResponse;
+import com.braintreepayments.http.exceptions.HttpException;
+import com.paypal.core.PayPalHttpClient;
+import com.paypal.orders.*;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import com.uq.jokievents.utils.GatewayTokenManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "payment.gateway", havingValue = "paypal", matchIfMissing = true)
+public class PayPalPaymentGateway implements PaymentGateway {
+
+    private final PayPalHttpClient payPalHttpClient;
+    private final GatewayTokenManager payPalTokenManager;
+
+    @Override
+    public String name() {
+        return "PayPal";
+    }
+
+    @Override
+    public GatewayOrderDTO createOrder(String referenceId, String description, BigDecimal amount) {
+        OrdersCreateRequest request = new OrdersCreateRequest();
+        request.prefer("return=representation");
+        request.requestBody(buildOrderRequest(referenceId, description, amount));
+        try {
+            Order order = execute(request).result();
+            String approvalUrl = null;
+            // Iterate over the links to find the approval URL
+            for (LinkDescription link : order.links()) {
+                if ("approve".equals(link.rel())) {
+                    approvalUrl = link.href();
+                    break;
+                }
+            }
+            return new GatewayOrderDTO(order.id(), order.status(), approvalUrl);
+        } catch (IOException e) {
+            throw new PaymentException("Could not generate the payment link");
+        }
+    }
+
+    @Override
+    public GatewayCaptureDTO captureOrder(String orderId) {
+        OrdersCaptureRequest request = new OrdersCaptureRequest(orderId);
+        request.requestBody(new OrderRequest());  // Typically an empty request body for capture
+        try {
+            HttpResponse<Order> response = execute(request);
+            Order order = response.result();
+            if (!"COMPLETED".equals(order.status())) {
+                return new GatewayCaptureDTO(orderId, null, order.status());
+            }
+            Capture capture = order.purchaseUnits().get(0).payments().captures().get(0);
+            return new GatewayCaptureDTO(orderId, capture.id(), capture.status());
+        } catch (HttpException e) {
+            // A previous call took the money but its answer never reached us (timeout), the retry only finishes our side
+            if (e.statusCode() == 422 && e.getMessage() != null && e.getMessage().contains("ORDER_ALREADY_CAPTURED")) {
+                return new GatewayCaptureDTO(orderId, null, "COMPLETED");
+            }
+            throw new PaymentException("Payment capture failed: " + e.getMessage());
+        } catch (IOException e) {
+            throw new PaymentException("Payment capture failed: " + e.getMessage());
+        }
+    }
+
+    // With the Authorization header already set the SDK does not look for a token itself
+    private <T> HttpResponse<T> execute(HttpRequest<T> request) throws IOException {
+        String authorization = payPalTokenManager.getAuthorization();
+        try {
+            return payPalHttpClient.execute(request.copy().header("Authorization", authorization));
+        } catch (HttpException e) {
+            if (e.statusCode() != 401) {
+                throw e;
+            }
+            // Revoked before its time, one more try with a fresh token
+            payPalTokenManager.invalidate(authorization);
+            return payPalHttpClient.execute(request.copy().header("Authorization", payPalTokenManager.getAuthorization()));
+        }
+    }
+
+    private OrderRequest buildOrderRequest(String referenceId, String description, BigDecimal amount) {
+        // Create a new OrderRequest
+        OrderRequest orderRequest = new OrderRequest();
+        orderRequest.intent("CAPTURE");
+
+        // Set the application context (for URLs)
+        ApplicationContext applicationContext = new ApplicationContext()
+                .cancelUrl("http://localhost:8080/api/payment/cancel")
+                .returnUrl("http://localhost:8080/api/payment/success");
+        orderRequest.applicationContext(applicationContext);
+
+        // Create the purchase unit (order item)
+        PurchaseUnitRequest purchaseUnitRequest = new PurchaseUnitRequest()
+                .referenceId(referenceId)
+                .description(description)
+                .amount(new AmountWithBreakdown()
+                        .currencyCode("USD")
+                        .value(amount.toPlainString()));
+
+        // Add the purchase unit to the order request
+        orderRequest.purchaseUnits(List.of(purchaseUnitRequest));
+
+        return orderRequest;
+    }
+}
@@ -1,23 +1,40 @@
 package com.uq.jokievents.service.implementation;
 
-import com.braintreepayments.http.HttpResponse;
-import com.braintreepayments.http.exceptions.HttpException;
 
-import com.paypal.core.PayPalHttpClient;
-import com.paypal.orders.*;
 import com.uq.jokievents.exceptions.*;
 import com.uq.jokievents.model.*;
 import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.model.enums.TicketStatus;
 import com.uq.jokievents.repository.ClientRepository;
 import com.uq.jokievents.repository.EventRepository;
 import com.uq.jokievents.repository.PurchaseRepository;
 import com.uq.jokievents.repository.ShoppingCartRepository;
-import com.uq.jokievents.service.interfaces.ImageService;
+import com.uq.jokievents.dtos.CaptureAttemptDTO;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.service.interfaces.CaptureIdempotencyService;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
 import com.uq.jokievents.service.interfaces.PaymentService;
+import com.uq.jokievents.service.interfaces.SeatMapService;
+import com.uq.jokievents.service.interfaces.TicketTokenService;
 import org.springframework.stereotype.Service;
+import com.uq.jokievents.utils.CartViewCache;
 import com.uq.jokievents.utils.EmailService;
 import com.uq.jokievents.utils.Generators;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.imageio.ImageIO;
@@ -30,32 +47,47 @@ import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 @Service
 @Transactional
 @RequiredArgsConstructor
 public class PaymentServiceImpl implements PaymentService {
 
+    private static final Logger LOGGER = Logger.getLogger(PaymentServiceImpl.class.getName());
+
     private final ShoppingCartRepository shoppingCartRepository;
     private final PurchaseRepository purchaseRepository;
-    private final ImageService imageService;
+    private final TicketTokenService ticketTokenService;
     private final EmailService emailService;
     private final EventRepository eventRepository;
-    private final PayPalHttpClient payPalHttpClient;
+    private final PaymentGateway paymentGateway;
     private final ClientRepository clientRepository;
+    private final SeatMapService seatMapService;
+    @Qualifier("checkoutMongoTemplate") private final MongoTemplate mongoTemplate; // Inventory and purchase writes wait for a majority
+    private final CaptureIdempotencyService captureIdempotencyService;
+    private final CartViewCache cartViewCache;
+    @Qualifier("checkoutTaskExecutor") private final AsyncTaskExecutor checkoutTaskExecutor; // Bounded, see TaskExecutorConfig
+    private final MeterRegistry meterRegistry;
+    private final ObservationRegistry observationRegistry;
+
+    @Value("${payment.completion.timeout-ms:10000}")
+    private long completionTimeoutMs;
 
     @Override
-    public HttpResponse<Order> createPaymentOrder(String clientId){
+    public GatewayOrderDTO createPaymentOrder(String clientId){
+        return traced("checkout.create-order", () -> createPaymentOrderTraced(clientId));
+    }
 
+    private GatewayOrderDTO createPaymentOrderTraced(String clientId) {
         // Get the order from the database
-
-        Optional<Client> clientOptional = clientRepository.findById(clientId);
-        if (clientOptional.isEmpty()) {
-            throw new AccountException("Client does not exists, weird");
-        }
-        Client payingClient = clientOptional.get();
-
-        Optional<ShoppingCart> shoppingCartOptional = shoppingCartRepository.findById(payingClient.getIdShoppingCart());
+        Optional<ShoppingCart> shoppingCartOptional = traced("checkout.load-cart", () -> shoppingCartRepository.findByClientId(clientId));
         if (shoppingCartOptional.isEmpty()) {
             throw new AccountException("The client does not have a shopping cart, grave error");
         }
@@ -67,41 +99,14 @@ public class PaymentServiceImpl implements PaymentService {
             throw new LogicException("Nothing to pay in the shopping cart");
         }
 
-        Purchase purchase = new Purchase();
+        GatewayOrderDTO order = traced("checkout.gateway-create", () -> paymentGateway.createOrder(shoppingCart.getId(),
+                buildOrderDescription(shoppingCart), BigDecimal.valueOf(shoppingCart.getTotalPriceWithDiscountCents(), 2)));
 
-        OrdersCreateRequest request = new OrdersCreateRequest();
-        request.prefer("return=representation");
-        request.requestBody(buildOrderRequest(purchase.getId(), shoppingCart));
-        try {
-            return payPalHttpClient.execute(request);
-        } catch (IOException e) {
-            throw new AccountException("Could not generate the payment link");
-        }
-    }
-
-    private OrderRequest buildOrderRequest(String referenceId, ShoppingCart shoppingCart) {
-        // Create a new OrderRequest
-        OrderRequest orderRequest = new OrderRequest();
-        orderRequest.intent("CAPTURE");
-
-        // Set the application context (for URLs)
-        ApplicationContext applicationContext = new ApplicationContext()
-                .cancelUrl("http://localhost:8080/api/payment/cancel")
-                .returnUrl("http://localhost:8080/api/payment/success");
-        orderRequest.applicationContext(applicationContext);
-
-        // Create the purchase unit (order item)
-        PurchaseUnitRequest purchaseUnitRequest = new PurchaseUnitRequest()
-                .referenceId(referenceId)
-                .description(buildOrderDescription(shoppingCart))
-                .amount(new AmountWithBreakdown()
-                        .currencyCode("USD")
-                        .value(shoppingCart.getTotalPriceWithDiscount().toString()));  // Use the rounded value
-
-        // Add the purchase unit to the order request
-        orderRequest.purchaseUnits(List.of(purchaseUnitRequest));
-
-        return orderRequest;
+        // The success redirect and the webhooks find the cart by this id
+        Update linkOrder = new Update().set("paymentGatewayId", order.orderId()).inc("version", 1);
+        tracedStep("checkout.link-order", () ->
+                mongoTemplate.updateFirst(new Query(Criteria.where("id").is(shoppingCart.getId())), linkOrder, ShoppingCart.class));
+        return order;
     }
 
     // I could make this message a thousand times better, but I am tired
@@ -117,110 +122,363 @@ public class PaymentServiceImpl implements PaymentService {
     }
 
     @Override
-    public Capture capturePayment(String orderId) throws Exception {
-        OrdersCaptureRequest request = new OrdersCaptureRequest(orderId);
-        request.requestBody(new OrderRequest());  // Typically an empty request body for capture
+    public GatewayCaptureDTO capturePayment(String orderId) {
+        return paymentGateway.captureOrder(orderId);
+    }
 
-        HttpResponse<Order> response = payPalHttpClient.execute(request);
+    /**
+     * Shared by the redirect and the webhooks: captures the order once and completes it once, whoever comes first.
+     * @param capturedByGateway true when PayPal already told us the money was captured (PAYMENT.CAPTURE.COMPLETED)
+     * @return COMPLETED, or IN_PROGRESS if another request or worker is handling this order right now
+     */
+    @Override
+    public CaptureStatus finishPayment(String orderId, boolean capturedByGateway) throws Exception {
+        return Observation.createNotStarted("checkout.finish", observationRegistry)
+                .lowCardinalityKeyValue("captured.by.gateway", String.valueOf(capturedByGateway))
+                .highCardinalityKeyValue("order.id", orderId)
+                .observeChecked(() -> finishPaymentTraced(orderId, capturedByGateway));
+    }
 
-        if ("COMPLETED".equals(response.result().status())) {
-            // Return the capture details
-            return response.result().purchaseUnits().get(0).payments().captures().get(0);
+    private CaptureStatus finishPaymentTraced(String orderId, boolean capturedByGateway) throws Exception {
+        CaptureAttemptDTO attempt = captureIdempotencyService.begin(orderId);
+        if (!attempt.acquired()) {
+            return attempt.status();
         }
 
-        throw new Exception("Payment capture failed.");
+        SeatReservation seats = new SeatReservation();
+        PaidOrder paidOrder;
+        try {
+            ShoppingCart order = traced("checkout.load-order", () -> shoppingCartRepository.findByPaymentGatewayId(orderId))
+                    .orElseThrow(() -> new ShoppingCartException("Could not find the order"));
+            // Seats are taken before the money, a locality that ran out of seats fails the order without charging it
+            tracedStep("checkout.reserve-seats", () -> reserveSeats(order.getLocalityOrders(), seats));
+
+            // Capture the payment, unless PayPal or a previous attempt already did
+            if (!attempt.paymentCaptured() && !capturedByGateway) {
+                GatewayCaptureDTO capture = traced("checkout.gateway-capture", () -> capturePayment(orderId));
+                captureIdempotencyService.recordCapture(orderId, capture);
+                if (!"COMPLETED".equals(capture.status())) {
+                    throw new PaymentException("Payment done, probably cancelled: " + capture.status());
+                }
+            }
+            captureIdempotencyService.markCaptured(orderId);
+
+            paidOrder = traced("checkout.complete-order", () -> completeOrder(order, seats));
+        } catch (Exception e) {
+            // Nothing was committed yet, the seats go back and a retry can take the order over
+            releaseSeats(seats);
+            captureIdempotencyService.markFailed(orderId);
+            throw e;
+        }
+        // Past this point the order is paid and stored, the seats are sold and nothing is undone anymore
+        captureIdempotencyService.markCompleted(orderId);
+        tracedStep("checkout.fill-purchase", () -> fillPurchaseAfterSuccess(paidOrder));
+        return CaptureStatus.COMPLETED;
     }
 
+    // Numbered seats held for the items of one order, general admission items have none
+    private static class SeatReservation {
+        private final Map<LocalityOrder, int[]> seats = new IdentityHashMap<>();
+
+        int[] of(LocalityOrder item) {
+            return seats.getOrDefault(item, new int[0]);
+        }
+    }
+
+    private void reserveSeats(List<LocalityOrder> items, SeatReservation reservation) {
+        for (LocalityOrder item : items) {
+            reservation.seats.put(item, seatMapService.claimSeats(item.getEventId(), item.getLocalityName(), item.getNumTicketsSelected()));
+        }
+    }
+
+    private void releaseSeats(SeatReservation reservation) {
+        reservation.seats.forEach((item, seats) -> seatMapService.releaseSeats(item.getEventId(), item.getLocalityName(), seats));
+        reservation.seats.clear();
+    }
+
+    // The stored purchase and who paid it, what the steps after the commit point need
+    private record PaidOrder(Purchase purchase, Client client, SeatReservation seats) {}
+
     @Override
-    public void fillPurchaseAfterSuccess(ShoppingCart order) {
-            Purchase purchase = new Purchase();
-            purchase.setClientId(order.getClientId());
-            purchase.setPurchaseDate(LocalDateTime.now());
-            purchase.setPaymentMethod("PayPal");
-            purchase.setTotalAmount(BigDecimal.valueOf(order.getTotalPriceWithDiscount()));
-            List<LocalityOrder> purchasedItems = new ArrayList<>(order.getLocalityOrders());
-            purchase.setPurchasedItems(purchasedItems);
-            purchaseRepository.save(purchase);
-
-            order.setPaymentGatewayId("");
-            order.setLocalityOrders(new ArrayList<>());
-            order.setTotalPrice(0.0);
-            order.setTotalPriceWithDiscount(0.0);
-            order.setAppliedDiscountPercent(1.0);
-            order.setCouponClaimed(false);
-            shoppingCartRepository.save(order);  // Save the updated shopping cart with cleared items
-
-            Optional<Client> clientOptional = clientRepository.findById(order.getClientId());
-            if (clientOptional.isEmpty()) {
-                throw new AccountException("No account to send the payment receipt");
-            }
-            Client client = clientOptional.get();
-            sendPurchaseQRCodeEmail(client, purchase);
+    public void completeOrder(ShoppingCart order) {
+        SeatReservation seats = new SeatReservation();
+        PaidOrder paidOrder;
+        try {
+            reserveSeats(order.getLocalityOrders(), seats);
+            paidOrder = completeOrder(order, seats);
+        } catch (RuntimeException e) {
+            releaseSeats(seats);
+            throw e;
+        }
+        fillPurchaseAfterSuccess(paidOrder);
+    }
+
+    /**
+     * Everything that happens after PayPal says COMPLETED. The inventory updates (one per event), the purchase insert,
+     * the cart reset and the client lookup do not depend on each other, so they run at the same time with a deadline.
+     * If any of them fails or the deadline passes, the ones that did succeed are undone and the error is rethrown.
+     * Returning is the commit point. Tickets and the receipt email need the purchase and the client, the caller runs
+     * them after marking the order completed.
+     */
+    private PaidOrder completeOrder(ShoppingCart order, SeatReservation seats) {
+        List<LocalityOrder> purchasedItems = new ArrayList<>(order.getLocalityOrders());
+        Purchase purchase = new Purchase();
+        purchase.setId(new ObjectId().toHexString()); // Known up front so the later stages do not wait for the insert
+        purchase.setClientId(order.getClientId());
+        purchase.setPurchaseDate(LocalDateTime.now());
+        purchase.setPaymentMethod(paymentGateway.name());
+        purchase.setTotalAmount(BigDecimal.valueOf(order.getTotalPriceWithDiscountCents(), 2));
+        purchase.setPurchasedItems(purchasedItems);
+
+        List<CompletableFuture<?>> stages = new ArrayList<>();
+        Compensations compensations = new Compensations();
+
+        Map<String, List<LocalityOrder>> itemsByEvent = new LinkedHashMap<>();
+        for (LocalityOrder item : purchasedItems) {
+            itemsByEvent.computeIfAbsent(item.getEventId(), eventId -> new ArrayList<>()).add(item);
+        }
+        ShoppingCart paidCart = copyOf(order);
+        Observation parent = observationRegistry.getCurrentObservation();
+
+        CompletableFuture<Client> clientStage;
+        try {
+            // A full checkout pool rejects the submission, that fails the order like any other stage would
+            itemsByEvent.forEach((eventId, items) -> {
+                AtomicBoolean closedSale = new AtomicBoolean();
+                stages.add(runStage("checkout.update-event",
+                        () -> closedSale.set(sellTickets(eventId, items)),
+                        () -> returnTickets(eventId, items, closedSale.get()),
+                        compensations));
+            });
+
+            stages.add(runStage("checkout.insert-purchase",
+                    () -> mongoTemplate.insert(purchase),
+                    () -> purchaseRepository.deleteById(purchase.getId()),
+                    compensations));
+
+            stages.add(runStage("checkout.reset-cart",
+                    () -> resetShoppingCart(paidCart),
+                    () -> {
+                        shoppingCartRepository.save(paidCart);
+                        cartViewCache.invalidateClient(paidCart.getClientId());
+                    },
+                    compensations));
+
+            clientStage = CompletableFuture.supplyAsync(() -> stage("checkout.load-client", parent)
+                    .observe(() -> clientRepository.findById(order.getClientId()))
+                    .orElseThrow(() -> new AccountException("No account to send the payment receipt")), checkoutTaskExecutor);
+            stages.add(clientStage);
+
+            CompletableFuture.allOf(stages.toArray(new CompletableFuture[0]))
+                    .get(completionTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Stages that finished are undone now, the ones still running undo themselves when they finish
+            compensations.rollback();
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            throw new LogicException("Could not complete the order, changes were rolled back: " + cause.getMessage());
+        }
+        return new PaidOrder(purchase, clientStage.join(), seats);
     }
 
-     @Override
-    public void updateEventAndLocalities(ShoppingCart order) {
-         // Iterate through each LocalityOrder in the order
-        for (LocalityOrder localityOrder : order.getLocalityOrders()) {
-            // Retrieve the event associated with the localityOrder using its event ID
-            Optional<Event> eventOpt = eventRepository.findById(localityOrder.getEventId());
+    // Runs the step on the checkout executor and, once it succeeded, registers how to undo it
+    private CompletableFuture<Void> runStage(String name, Runnable step, Runnable undo, Compensations compensations) {
+        Observation parent = observationRegistry.getCurrentObservation();
+        return CompletableFuture.runAsync(() -> stage(name, parent).observe(step), checkoutTaskExecutor)
+                .thenRun(() -> compensations.add(undo));
+    }
 
-            // If no event is found for the given ID, skip the current iteration
-            if (eventOpt.isEmpty()) continue;
+    // Stages on the executor do not see the caller's observation, so it is passed as the parent explicitly
+    private Observation stage(String name, Observation parent) {
+        return Observation.createNotStarted(name, observationRegistry).parentObservation(parent);
+    }
 
-            // Get the event object from the Optional
-            Event event = eventOpt.get();
-            // Retrieve the specific locality from the event based on the locality name
-            Locality locality = event.getLocalities(localityOrder.getLocalityName());
+    // Each checkout step gets its own span under the current one, a slow purchase shows which step took the time
+    private <T> T traced(String name, Supplier<T> step) {
+        return Observation.createNotStarted(name, observationRegistry).observe(step);
+    }
 
-            // If no locality is found for the given locality name, skip the current iteration
-            if (locality == null) continue;
+    private void tracedStep(String name, Runnable step) {
+        Observation.createNotStarted(name, observationRegistry).observe(step);
+    }
 
-            // Increase the current occupancy of the locality by the number of selected tickets
-            locality.setCurrentOccupancy(locality.getCurrentOccupancy() + localityOrder.getNumTicketsSelected());
+    // Undo steps of the stages that succeeded. After a rollback, a stage that succeeds late is undone right away
+    private static class Compensations {
+        private final List<Runnable> undoSteps = new ArrayList<>();
+        private boolean rolledBack;
+
+        void add(Runnable undo) {
+            synchronized (this) {
+                if (!rolledBack) {
+                    undoSteps.add(undo);
+                    return;
+                }
+            }
+            undo.run();
+        }
 
-            // Decrease the total available places of the event by the number of selected tickets
-            event.setTotalAvailablePlaces(event.getTotalAvailablePlaces() - localityOrder.getNumTicketsSelected());
+        void rollback() {
+            List<Runnable> toUndo;
+            synchronized (this) {
+                rolledBack = true;
+                toUndo = new ArrayList<>(undoSteps);
+                undoSteps.clear();
+            }
+            toUndo.forEach(Runnable::run);
+        }
+    }
 
-            if (event.getTotalAvailablePlaces() == 0) {
-                event.setAvailableForPurchase(false);
+    /**
+     * Runs after the commit point, the order stays paid whatever happens here. A failure is logged with the purchase
+     * and counted in checkout.fulfillment.failures so the tickets or the receipt can be sent again by hand.
+     */
+    private void fillPurchaseAfterSuccess(PaidOrder paidOrder) {
+        Purchase purchase = paidOrder.purchase();
+        List<Ticket> tickets;
+        try {
+            tickets = traced("checkout.issue-tickets", () -> issueTickets(purchase, paidOrder.seats()));
+        } catch (RuntimeException e) {
+            fulfillmentFailed("tickets", purchase, e);
+            return; // The receipt would carry tickets that were never stored
+        }
+        try {
+            tracedStep("checkout.purchase-email", () -> sendPurchaseQRCodeEmail(paidOrder.client(), purchase, tickets));
+        } catch (RuntimeException e) {
+            fulfillmentFailed("email", purchase, e);
+        }
+    }
+
+    private void fulfillmentFailed(String step, Purchase purchase, RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Purchase " + purchase.getId() + " is paid but its " + step + " step failed", e);
+        meterRegistry.counter("checkout.fulfillment.failures", "step", step).increment();
+    }
+
+    private void resetShoppingCart(ShoppingCart cart) {
+        Update clearedCart = new Update()
+                .set("paymentGatewayId", "")
+                .set("localityOrders", new ArrayList<>())
+                .set("totalPriceCents", 0L)
+                .set("discountBasisPoints", 0)
+                .set("couponClaimed", false)
+                .inc("version", 1);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(cart.getId())), clearedCart, ShoppingCart.class);
+        cartViewCache.invalidateClient(cart.getClientId());
+    }
+
+    private static ShoppingCart copyOf(ShoppingCart cart) {
+        return ShoppingCart.builder()
+                .id(cart.getId())
+                .clientId(cart.getClientId())
+                .paymentGatewayId(cart.getPaymentGatewayId())
+                .localityOrders(new ArrayList<>(cart.getLocalityOrders()))
+                .totalPriceCents(cart.getTotalPriceCents())
+                .discountBasisPoints(cart.getDiscountBasisPoints())
+                .couponClaimed(cart.isCouponClaimed())
+                .version(cart.getVersion())
+                .build();
+    }
+
+    // Mints one ticket per seat and writes them all with a single insertMany, a group order is still one round trip
+    private List<Ticket> issueTickets(Purchase purchase, SeatReservation reservation) {
+        LocalDateTime issuedAt = LocalDateTime.now();
+        List<Ticket> tickets = new ArrayList<>();
+        for (LocalityOrder item : purchase.getPurchasedItems()) {
+            int[] seats = reservation.of(item); // Empty for general admission localities
+            for (int i = 0; i < item.getNumTicketsSelected(); i++) {
+                tickets.add(Ticket.builder()
+                        .id(new ObjectId().toHexString()) // Time ordered and unique without asking the database
+                        .purchaseId(purchase.getId())
+                        .clientId(purchase.getClientId())
+                        .eventId(item.getEventId())
+                        .localityName(item.getLocalityName())
+                        .seatNumber(i < seats.length ? seats[i] : null)
+                        .status(TicketStatus.VALID)
+                        .issuedAt(issuedAt)
+                        .build());
             }
-            // Save the updated event back to the repository
-            eventRepository.save(event);
         }
+        if (!tickets.isEmpty()) {
+            mongoTemplate.insert(tickets, Ticket.class);
+            meterRegistry.counter("tickets.sold").increment(tickets.size());
+        }
+        return tickets;
     }
 
-    @Override
-    public ShoppingCart getShoppingCart(String clientId) {
+    /**
+     * Sells the tickets and stops the sales of the event if they were its last places.
+     * @return whether this checkout is the one that stopped them
+     */
+    private boolean sellTickets(String eventId, List<LocalityOrder> items) {
+        moveTickets(eventId, items, 1);
+        Query soldOut = new Query(Criteria.where("id").is(eventId)
+                .and("totalAvailablePlaces").lte(0)
+                .and("availableForPurchase").is(true));
+        return mongoTemplate.updateFirst(soldOut, new Update().set("availableForPurchase", false), Event.class).getModifiedCount() > 0;
+    }
 
-        Optional<Client> clientOptional = clientRepository.findById(clientId);
-        if (clientOptional.isEmpty()) {
-            throw new AccountException("Not an existing client to pay");
+    // Rollback of sellTickets. Only the checkout that stopped the sales starts them again, an event an admin closed stays closed
+    private void returnTickets(String eventId, List<LocalityOrder> items, boolean closedSale) {
+        moveTickets(eventId, items, -1);
+        if (closedSale) {
+            Query reopened = new Query(Criteria.where("id").is(eventId).and("totalAvailablePlaces").gt(0));
+            mongoTemplate.updateFirst(reopened, new Update().set("availableForPurchase", true), Event.class);
         }
-        Client client = clientOptional.get();
-        String shoppingCartId = client.getIdShoppingCart();
-        Optional<ShoppingCart> shoppingCartOptional = shoppingCartRepository.findById(shoppingCartId);
+    }
+
+    /**
+     * Moves the tickets of one event in a single atomic update, direction 1 sells them and -1 gives them back.
+     * Every locality gets its own array filter so several localities of the same event still cost one write.
+     */
+    private void moveTickets(String eventId, List<LocalityOrder> items, int direction) {
+        Update update = new Update();
+        int totalTickets = 0;
+        for (int i = 0; i < items.size(); i++) {
+            LocalityOrder item = items.get(i);
+            String filter = "l" + i;
+            update.inc("localities.$[" + filter + "].currentOccupancy", direction * item.getNumTicketsSelected())
+                    .filterArray(Criteria.where(filter + ".name").is(item.getLocalityName()));
+            totalTickets += item.getNumTicketsSelected();
+        }
+        update.inc("totalAvailablePlaces", -direction * totalTickets);
+        mongoTemplate.updateFirst(new Query(Criteria.where("id").is(eventId)), update, Event.class);
+    }
+
+    @Override
+    public ShoppingCart getShoppingCart(String clientId) {
+        Optional<ShoppingCart> shoppingCartOptional = shoppingCartRepository.findByClientId(clientId);
         if (shoppingCartOptional.isEmpty()) {
             throw new AccountException("Client does not have a shopping cart, grave error");
         }
         return shoppingCartOptional.get();
     }
 
-    private void sendPurchaseQRCodeEmail(Client client, Purchase purchase) {
+    private void sendPurchaseQRCodeEmail(Client client, Purchase purchase, List<Ticket> tickets) {
         try {
-            // What I basically think this does is create an image with the information of the purchase alone, then I convert that image to Base64 and upload it to Firebase, then I get that firebase link and create a QR Code that contains the information of that link so that when scanned it shows the purchase info image
-            BufferedImage customImage = createCustomPurchaseImage(client, purchase);
-            String base64QRCode = encodeImageToBase64(customImage);
-            // todo make that shit a constant
-            String qrCodeFirebaseUrl = imageService.uploadImage("data:image/png;base64,"+base64QRCode);
-
-            String qrCodeImageBase64 = Generators.generateQRCode(qrCodeFirebaseUrl);
-
-            // Send the email with the embedded image (QR code)
-            String emailBody = "<p>Dear " + client.getName() + ",</p>" +
-                    "<p>Here is your purchase QR code with details:</p>" +
-                    "<img src='cid:qrCodeImage' />"; // This references the embedded image using its Content-ID
-            emailService.sendPurchaseEmail(client.getEmail(), "Your Purchase QR Code", emailBody, qrCodeImageBase64);
+            // The receipt image travels inline in the email, and each QR carries a signed ticket token instead of a Firebase link, so the gate can validate it offline
+            String base64Receipt = Observation.createNotStarted("checkout.render-receipt", observationRegistry)
+                    .observeChecked(() -> encodeImageToBase64(createCustomPurchaseImage(client, purchase)));
+
+            List<String> qrCodes = new ArrayList<>();
+            StringBuilder emailBody = new StringBuilder()
+                    .append("<p>Dear ").append(client.getName()).append(",</p>")
+                    .append("<p>Here is your purchase receipt:</p>")
+                    .append("<img src='cid:receiptImage' />")
+                    .append("<p>Show these QR codes at the entrance, one per person:</p>");
+            for (int i = 0; i < tickets.size(); i++) {
+                Ticket ticket = tickets.get(i);
+                String ticketToken = ticketTokenService.issueToken(new TicketTokenDTO(ticket.getId(), purchase.getId(),
+                        ticket.getEventId(), ticket.getLocalityName(), ticket.getSeatNumber()));
+                qrCodes.add(Observation.createNotStarted("checkout.qr-code", observationRegistry)
+                        .observeChecked(() -> Generators.generateQRCode(ticketToken)));
+                emailBody.append("<p>").append(ticket.getLocalityName());
+                if (ticket.getSeatNumber() != null) {
+                    emailBody.append(", seat ").append(ticket.getSeatNumber());
+                }
+                emailBody.append("</p>")
+                        .append("<img src='cid:qrCodeImage").append(i).append("' />"); // References the embedded image using its Content-ID
+            }
+
+            tracedStep("checkout.smtp-send", () ->
+                    emailService.sendPurchaseEmail(client.getEmail(), "Your Purchase QR Code", emailBody.toString(), base64Receipt, qrCodes));
         } catch (Exception e) {
             throw new LogicException(e.getMessage());
         }
@@ -233,7 +491,7 @@ public class PaymentServiceImpl implements PaymentService {
         return Base64.getEncoder().encodeToString(imageBytes);
     }
 
-    private BufferedImage createCustomPurchaseImage(Client client, Purchase purchase) {
+    BufferedImage createCustomPurchaseImage(Client client, Purchase purchase) {
         int width = 600; // Image width
         int height = 600; // Increased height for more content
         BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
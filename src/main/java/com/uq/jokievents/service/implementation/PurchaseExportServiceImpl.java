@@ -0,0 +1,227 @@
+package com.uq.jokievents.service.implementation;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.model.enums.ExportFormat;
+import com.uq.jokievents.service.interfaces.PurchaseExportService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Raw purchase data for finance, one row per purchased item with its event name. Purchases come from a Mongo cursor
+ * that fetches purchases.export.batch-size documents at a time and rows are written as they are read, so memory stays
+ * flat however many purchases there are. Writes block while the client is slow to read, which also holds the cursor
+ * back. Event names are looked up once per event and kept in a small LRU for the length of the export. Reads go
+ * through the catalog template, so a secondary does the work when there is one.
+ */
+@Service
+public class PurchaseExportServiceImpl implements PurchaseExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final List<String> COLUMNS = List.of("purchaseId", "purchaseDate", "clientId", "paymentMethod",
+            "purchaseTotal", "eventId", "eventName", "localityName", "tickets", "itemTotal", "payingOrderId");
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int batchSize;
+    private final int eventNameCacheSize;
+
+    public PurchaseExportServiceImpl(@Qualifier("catalogMongoTemplate") MongoTemplate mongoTemplate,
+                                     ObjectMapper objectMapper,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${purchases.export.batch-size:1000}") int batchSize,
+                                     @Value("${purchases.export.event-cache-size:10000}") int eventNameCacheSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.batchSize = batchSize;
+        this.eventNameCacheSize = eventNameCacheSize;
+    }
+
+    @Override
+    public long exportPurchases(LocalDateTime from, LocalDateTime to, ExportFormat format, boolean gzip, OutputStream out) throws IOException {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "purchaseDate")); // Walks the purchaseDate index
+        if (from != null || to != null) {
+            Criteria purchaseDate = Criteria.where("purchaseDate");
+            if (from != null) {
+                purchaseDate.gte(from);
+            }
+            if (to != null) {
+                purchaseDate.lt(to);
+            }
+            query.addCriteria(purchaseDate);
+        }
+        query.cursorBatchSize(batchSize);
+
+        OutputStream target = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RowWriter rows = format == ExportFormat.CSV ? new CsvRowWriter(writer) : new JsonRowWriter(writer);
+        EventNames eventNames = new EventNames(eventNameCacheSize);
+
+        long written = 0;
+        try (Stream<Purchase> purchases = mongoTemplate.stream(query, Purchase.class)) {
+            for (Purchase purchase : (Iterable<Purchase>) purchases::iterator) {
+                List<LocalityOrder> items = purchase.getPurchasedItems() == null ? List.of() : purchase.getPurchasedItems();
+                for (LocalityOrder item : items) {
+                    rows.write(purchase, item, eventNames.of(item.getEventId()));
+                    written++;
+                }
+            }
+        } finally {
+            meterRegistry.counter("purchases.export.rows", "format", format.name().toLowerCase()).increment(written);
+        }
+        rows.finish();
+        writer.flush();
+        if (target instanceof GZIPOutputStream gzipStream) {
+            gzipStream.finish(); // Writes the trailer without closing the response
+        }
+        out.flush();
+        return written;
+    }
+
+    private interface RowWriter {
+        void write(Purchase purchase, LocalityOrder item, String eventName) throws IOException;
+
+        default void finish() throws IOException {}
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+
+        private final Writer writer;
+
+        private CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(String.join(",", COLUMNS));
+            writer.write('\n');
+        }
+
+        @Override
+        public void write(Purchase purchase, LocalityOrder item, String eventName) throws IOException {
+            writer.write(csv(purchase.getId()));
+            writer.write(',');
+            writer.write(purchase.getPurchaseDate() == null ? "" : purchase.getPurchaseDate().toString());
+            writer.write(',');
+            writer.write(csv(purchase.getClientId()));
+            writer.write(',');
+            writer.write(csv(purchase.getPaymentMethod()));
+            writer.write(',');
+            writer.write(purchase.getTotalAmount() == null ? "" : purchase.getTotalAmount().toPlainString());
+            writer.write(',');
+            writer.write(csv(item.getEventId()));
+            writer.write(',');
+            writer.write(csv(eventName));
+            writer.write(',');
+            writer.write(csv(item.getLocalityName()));
+            writer.write(',');
+            writer.write(Integer.toString(item.getNumTicketsSelected()));
+            writer.write(',');
+            writer.write(item.getTotalPaymentAmount() == null ? "" : item.getTotalPaymentAmount().toString());
+            writer.write(',');
+            writer.write(csv(item.getPayingOrderId()));
+            writer.write('\n');
+        }
+
+        // Quotes only the fields that need it, event names are the usual ones with commas
+        private static String csv(String value) {
+            if (value == null) {
+                return "";
+            }
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+                return value;
+            }
+            return '"' + value.replace("\"", "\"\"") + '"';
+        }
+    }
+
+    private final class JsonRowWriter implements RowWriter {
+
+        private final JsonGenerator json;
+
+        private JsonRowWriter(Writer writer) throws IOException {
+            this.json = objectMapper.getFactory().createGenerator(writer);
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(Purchase purchase, LocalityOrder item, String eventName) throws IOException {
+            json.writeStartObject();
+            json.writeStringField(COLUMNS.get(0), purchase.getId());
+            json.writeStringField(COLUMNS.get(1), purchase.getPurchaseDate() == null ? null : purchase.getPurchaseDate().toString());
+            json.writeStringField(COLUMNS.get(2), purchase.getClientId());
+            json.writeStringField(COLUMNS.get(3), purchase.getPaymentMethod());
+            json.writeFieldName(COLUMNS.get(4));
+            if (purchase.getTotalAmount() == null) {
+                json.writeNull();
+            } else {
+                json.writeNumber(purchase.getTotalAmount());
+            }
+            json.writeStringField(COLUMNS.get(5), item.getEventId());
+            json.writeStringField(COLUMNS.get(6), eventName);
+            json.writeStringField(COLUMNS.get(7), item.getLocalityName());
+            json.writeNumberField(COLUMNS.get(8), item.getNumTicketsSelected());
+            json.writeFieldName(COLUMNS.get(9));
+            if (item.getTotalPaymentAmount() == null) {
+                json.writeNull();
+            } else {
+                json.writeNumber(item.getTotalPaymentAmount());
+            }
+            json.writeStringField(COLUMNS.get(10), item.getPayingOrderId());
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            json.flush();
+        }
+    }
+
+    // Only the name is read. Deleted events export with an empty name
+    private final class EventNames {
+
+        private final Map<String, String> names;
+
+        private EventNames(int maxEntries) {
+            this.names = new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private String of(String eventId) {
+            if (eventId == null) {
+                return "";
+            }
+            String name = names.get(eventId);
+            if (name == null) {
+                Query byId = new Query(Criteria.where("_id").is(eventId));
+                byId.fields().include("name");
+                Event event = mongoTemplate.findOne(byId, Event.class);
+                name = event == null || event.getName() == null ? "" : event.getName();
+                names.put(eventId, name);
+            }
+            return name;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.exceptions.PaymentGatewayUnavailableException;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import com.uq.jokievents.utils.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.math.BigDecimal;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Wraps the real gateway so a slow or broken PayPal cannot take the checkout down with it:
+ * - bulkhead: at most maxConcurrentCalls calls in flight, a request waits acquireTimeoutMs for a slot and then gives up
+ * - deadline: the caller stops waiting after createTimeoutMs / captureTimeoutMs, the slot stays taken until the
+ *   call really ends so a stuck gateway keeps the bulkhead full instead of piling up threads
+ * - circuit breaker: too many failures in a row and calls are rejected right away for a while
+ * Every call is timed per operation and outcome under payment.gateway.requests.
+ */
+public class ResilientPaymentGateway implements PaymentGateway {
+
+    private final PaymentGateway delegate;
+    private final Semaphore bulkhead;
+    private final ExecutorService callExecutor;
+    private final CircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    private final long acquireTimeoutMs;
+    private final long createTimeoutMs;
+    private final long captureTimeoutMs;
+
+    public ResilientPaymentGateway(PaymentGateway delegate, CircuitBreaker circuitBreaker, MeterRegistry meterRegistry,
+                                   int maxConcurrentCalls, long acquireTimeoutMs, long createTimeoutMs, long captureTimeoutMs) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.meterRegistry = meterRegistry;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.createTimeoutMs = createTimeoutMs;
+        this.captureTimeoutMs = captureTimeoutMs;
+        this.callExecutor = Executors.newFixedThreadPool(maxConcurrentCalls, runnable -> {
+            Thread thread = new Thread(runnable, "payment-gateway-call");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    @Override
+    public GatewayOrderDTO createOrder(String referenceId, String description, BigDecimal amount) {
+        return call("create", createTimeoutMs, () -> delegate.createOrder(referenceId, description, amount));
+    }
+
+    /**
+     * A capture that times out may still have gone through on the gateway side. Nothing is retried here, the order
+     * is marked failed and a later redirect or webhook settles it.
+     */
+    @Override
+    public GatewayCaptureDTO captureOrder(String orderId) {
+        return call("capture", captureTimeoutMs, () -> delegate.captureOrder(orderId));
+    }
+
+    public void shutdown() {
+        callExecutor.shutdownNow();
+    }
+
+    private <T> T call(String operation, long timeoutMs, Supplier<T> gatewayCall) {
+        if (!circuitBreaker.tryAcquire()) {
+            record(operation, "rejected", 0);
+            throw new PaymentGatewayUnavailableException("The payment gateway is not responding, try again in a moment");
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (!bulkhead.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                circuitBreaker.onIgnored();
+                record(operation, "bulkhead_full", System.nanoTime() - start);
+                throw new PaymentGatewayUnavailableException("Too many payments in progress, try again in a moment");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            circuitBreaker.onIgnored();
+            throw new PaymentGatewayUnavailableException("Interrupted while waiting for the payment gateway");
+        }
+
+        Future<T> future;
+        try {
+            future = callExecutor.submit(() -> {
+                try {
+                    return gatewayCall.get();
+                } finally {
+                    bulkhead.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            bulkhead.release();
+            circuitBreaker.onIgnored();
+            throw new PaymentGatewayUnavailableException("The payment gateway client is shutting down");
+        }
+
+        try {
+            T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+            circuitBreaker.onSuccess();
+            record(operation, "success", System.nanoTime() - start);
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            circuitBreaker.onFailure();
+            record(operation, "timeout", System.nanoTime() - start);
+            throw new PaymentGatewayUnavailableException("The payment gateway took too long to answer");
+        } catch (ExecutionException e) {
+            circuitBreaker.onFailure();
+            record(operation, "error", System.nanoTime() - start);
+            if (e.getCause() instanceof PaymentException paymentException) {
+                throw paymentException;
+            }
+            throw new PaymentException("Payment gateway error: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            circuitBreaker.onFailure();
+            throw new PaymentGatewayUnavailableException("Interrupted while waiting for the payment gateway");
+        }
+    }
+
+    private void record(String operation, String outcome, long nanos) {
+        Timer.builder("payment.gateway.requests")
+                .description("Calls to the payment gateway")
+                .tag("gateway", delegate.name())
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,159 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.exceptions.EventException;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+import com.uq.jokievents.repository.EventRepository;
+import com.uq.jokievents.service.interfaces.SeatMapService;
+import com.uq.jokievents.utils.SeatMap;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * The stored bitset is the only truth. Every claim or release changes a copy of the last map this node read and
+ * stores it with a compare-and-set on the locality's seatMapVersion, if another node wrote in between the map is read
+ * again and the change retried. The in-memory maps are just a read cache for availability and a starting point.
+ */
+@Service
+@RequiredArgsConstructor
+public class SeatMapServiceImpl implements SeatMapService {
+
+    private static final int[] NO_SEATS = new int[0];
+    private static final int MAX_ATTEMPTS = 10;
+
+    private final EventRepository eventRepository;
+    @Qualifier("checkoutMongoTemplate") private final MongoTemplate mongoTemplate;
+
+    // eventId:localityName -> last seat map this node read or wrote, with the version it had
+    private final Map<String, VersionedSeatMap> seatMaps = new ConcurrentHashMap<>();
+    // Buyers of the same locality on this node take turns, so only writes from other nodes cause retries
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    private record VersionedSeatMap(SeatMap seatMap, long version) {}
+
+    @Override
+    public Map<String, Object> getSeatAvailability(String eventId, String localityName) {
+        VersionedSeatMap current = getSeatMap(eventId, localityName);
+        if (current == null) {
+            throw new EventException("The locality does not have numbered seats");
+        }
+        SeatMap seatMap = current.seatMap();
+        return Map.of(
+                "capacity", seatMap.getCapacity(),
+                "available", seatMap.available(),
+                "runs", seatMap.runLengths() // [free, taken, free, taken...] starting at seat 0
+        );
+    }
+
+    @Override
+    public int[] claimSeats(String eventId, String localityName, int count) {
+        return changeSeats(eventId, localityName, seatMap -> {
+            int[] seats = seatMap.claimBestAvailable(count);
+            if (seats.length < count) {
+                // All or nothing, the change was made on a copy so there is nothing to give back
+                throw new EventException("Only " + seats.length + " numbered seats left in locality " + localityName);
+            }
+            return seats;
+        });
+    }
+
+    @Override
+    public void releaseSeats(String eventId, String localityName, int[] seats) {
+        if (seats.length == 0) {
+            return;
+        }
+        changeSeats(eventId, localityName, seatMap -> {
+            for (int seat : seats) {
+                seatMap.release(seat);
+            }
+            return seats;
+        });
+    }
+
+    @Override
+    public void evictEvent(String eventId) {
+        seatMaps.keySet().removeIf(key -> key.startsWith(eventId + ":"));
+    }
+
+    private int[] changeSeats(String eventId, String localityName, Function<SeatMap, int[]> change) {
+        String key = eventId + ":" + localityName;
+        ReentrantLock lock = locks.computeIfAbsent(key, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            boolean reloaded = false;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+                VersionedSeatMap current = getSeatMap(eventId, localityName);
+                if (current == null) {
+                    return NO_SEATS; // General admission
+                }
+                SeatMap next = current.seatMap().copy();
+                int[] seats;
+                try {
+                    seats = change.apply(next);
+                } catch (EventException e) {
+                    if (reloaded) {
+                        throw e;
+                    }
+                    // The cached map may not know about seats other nodes gave back, the stored one has the last word
+                    seatMaps.remove(key, current);
+                    reloaded = true;
+                    continue;
+                }
+                if (seats.length == 0) {
+                    return seats; // Nothing changed
+                }
+                if (compareAndSet(eventId, localityName, current.version(), next)) {
+                    seatMaps.put(key, new VersionedSeatMap(next, current.version() + 1));
+                    return seats;
+                }
+                seatMaps.remove(key, current); // Another node wrote first, read what it stored and try again
+                reloaded = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        throw new EventException("The seats of this locality are changing too fast, try again");
+    }
+
+    private VersionedSeatMap getSeatMap(String eventId, String localityName) {
+        String key = eventId + ":" + localityName;
+        VersionedSeatMap cached = seatMaps.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        Event event = eventRepository.findById(eventId)
+                .orElseThrow(() -> new EventException("Event not found"));
+        Locality locality = event.getLocalities(localityName);
+        if (locality == null) {
+            throw new EventException("Locality not found in the event");
+        }
+        if (!locality.isNumberedSeating()) {
+            return null;
+        }
+        VersionedSeatMap loaded = new VersionedSeatMap(
+                SeatMap.fromBytes(locality.getMaxCapacity(), locality.getSeatMap()), locality.getSeatMapVersion());
+        seatMaps.put(key, loaded);
+        return loaded;
+    }
+
+    // Only the bitset of that locality is written, and only if it still has the version the change started from
+    private boolean compareAndSet(String eventId, String localityName, long version, SeatMap seatMap) {
+        Criteria locality = Criteria.where("name").is(localityName);
+        // Events stored before the version existed do not have the field, for them 0 means missing too
+        locality = version == 0 ? locality.and("seatMapVersion").in(0L, null) : locality.and("seatMapVersion").is(version);
+        Query query = new Query(Criteria.where("id").is(eventId).and("localities").elemMatch(locality));
+        Update update = new Update().set("localities.$.seatMap", seatMap.toBytes()).inc("localities.$.seatMapVersion", 1);
+        return mongoTemplate.updateFirst(query, update, Event.class).getMatchedCount() > 0;
+    }
+}
@@ -0,0 +1,85 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-process stand-in for PayPal so the whole checkout can be benchmarked offline. Orders are approved as soon as
+ * they are created, every call waits latency-ms plus up to jitter-ms, and failure-rate of the calls fail
+ * (creation throws, captures come back DECLINED).
+ */
+@Service
+@ConditionalOnProperty(name = "payment.gateway", havingValue = "simulated")
+public class SimulatedPaymentGateway implements PaymentGateway {
+
+    @Value("${payment.simulated.latency-ms:150}")
+    private long latencyMs;
+
+    @Value("${payment.simulated.jitter-ms:100}")
+    private long jitterMs;
+
+    @Value("${payment.simulated.failure-rate:0.0}")
+    private double failureRate;
+
+    @Value("${payment.simulated.return-url:http://localhost:8080/api/payment/success}")
+    private String returnUrl;
+
+    private final Map<String, BigDecimal> openOrders = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return "Simulated";
+    }
+
+    @Override
+    public GatewayOrderDTO createOrder(String referenceId, String description, BigDecimal amount) {
+        simulateLatency();
+        if (fails()) {
+            throw new PaymentException("Could not generate the payment link");
+        }
+        String orderId = "SIM-" + UUID.randomUUID();
+        openOrders.put(orderId, amount);
+        return new GatewayOrderDTO(orderId, "APPROVED", returnUrl + "?token=" + orderId);
+    }
+
+    @Override
+    public GatewayCaptureDTO captureOrder(String orderId) {
+        simulateLatency();
+        if (!openOrders.containsKey(orderId)) {
+            throw new PaymentException("Order " + orderId + " does not exist or was already captured");
+        }
+        if (fails()) {
+            return new GatewayCaptureDTO(orderId, null, "DECLINED");
+        }
+        openOrders.remove(orderId);
+        return new GatewayCaptureDTO(orderId, "SIMCAP-" + UUID.randomUUID(), "COMPLETED");
+    }
+
+    private boolean fails() {
+        return failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate;
+    }
+
+    private void simulateLatency() {
+        long wait = latencyMs + (jitterMs > 0 ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentException("Interrupted while talking to the gateway");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.uq.jokievents.service.implementation;
+
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.service.interfaces.TicketTokenService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Signs and checks the tokens printed in the ticket QR codes.
+ * A token is base64url(version | ticketId | purchaseId | eventId | localityName | seatNumber | mac), where the mac is a
+ * truncated HMAC-SHA256 of everything before it, so the gate can validate a ticket without asking Mongo or Firebase
+ * anything. Version 1 tokens covered every ticket of a locality order and are no longer accepted.
+ */
+@Service
+@RequiredArgsConstructor
+public class TicketTokenServiceImpl implements TicketTokenService {
+
+    private static final byte TOKEN_VERSION = 2;
+    private static final int MAC_LENGTH = 16; // 128 bits of the HMAC are more than enough for a ticket
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int NO_SEAT = -1;
+
+    @Value("${ticket.secret:${jwt.secret}}")
+    private String ticketSecret;
+
+    // Mac instances are not thread safe, but creating one per scan is the slow part, so each thread keeps its own
+    private final ThreadLocal<Mac> macHolder = ThreadLocal.withInitial(this::createMac);
+
+    @Override
+    public String issueToken(TicketTokenDTO ticket) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(96);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeByte(TOKEN_VERSION);
+            out.writeUTF(ticket.ticketId());
+            out.writeUTF(ticket.purchaseId());
+            out.writeUTF(ticket.eventId());
+            out.writeUTF(ticket.localityName());
+            out.writeInt(ticket.seatNumber() == null ? NO_SEAT : ticket.seatNumber());
+            byte[] payload = buffer.toByteArray();
+
+            byte[] token = Arrays.copyOf(payload, payload.length + MAC_LENGTH);
+            System.arraycopy(sign(payload, payload.length), 0, token, payload.length, MAC_LENGTH);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+        } catch (IOException e) {
+            throw new LogicException("Could not build the ticket token", e);
+        }
+    }
+
+    @Override
+    public TicketTokenDTO verifyToken(String token) {
+        if (token == null || token.isBlank()) {
+            throw new LogicException("Empty ticket token");
+        }
+
+        byte[] raw;
+        try {
+            raw = Base64.getUrlDecoder().decode(token.trim());
+        } catch (IllegalArgumentException e) {
+            throw new LogicException("Ticket token is not properly encoded");
+        }
+        if (raw.length <= MAC_LENGTH || raw[0] != TOKEN_VERSION) {
+            throw new LogicException("Unknown ticket token format");
+        }
+
+        int payloadLength = raw.length - MAC_LENGTH;
+        byte[] expectedMac = sign(raw, payloadLength);
+        byte[] givenMac = Arrays.copyOfRange(raw, payloadLength, raw.length);
+        if (!MessageDigest.isEqual(expectedMac, givenMac)) {
+            throw new LogicException("Ticket signature is not valid");
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw, 1, payloadLength - 1));
+            String ticketId = in.readUTF();
+            String purchaseId = in.readUTF();
+            String eventId = in.readUTF();
+            String localityName = in.readUTF();
+            int seatNumber = in.readInt();
+            return new TicketTokenDTO(ticketId, purchaseId, eventId, localityName, seatNumber == NO_SEAT ? null : seatNumber);
+        } catch (IOException e) {
+            throw new LogicException("Ticket token payload is corrupted", e);
+        }
+    }
+
+    private byte[] sign(byte[] data, int length) {
+        Mac mac = macHolder.get();
+        mac.update(data, 0, length);
+        return Arrays.copyOf(mac.doFinal(), MAC_LENGTH);
+    }
+
+    private Mac createMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(ticketSecret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new LogicException("Could not initialize the ticket signer", e);
+        }
+    }
+}
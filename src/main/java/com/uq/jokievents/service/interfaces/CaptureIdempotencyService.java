@@ -0,0 +1,17 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.dtos.CaptureAttemptDTO;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.model.enums.CaptureStatus;
+
+import java.util.Optional;
+
+public interface CaptureIdempotencyService {
+
+    CaptureAttemptDTO begin(String orderId);
+    Optional<CaptureStatus> getStatus(String orderId);
+    void markCaptured(String orderId);
+    void recordCapture(String orderId, GatewayCaptureDTO capture);
+    void markCompleted(String orderId);
+    void markFailed(String orderId);
+}
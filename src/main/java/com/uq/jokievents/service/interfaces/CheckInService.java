@@ -0,0 +1,13 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.dtos.ScanResultDTO;
+
+import java.util.Map;
+
+public interface CheckInService {
+
+    Map<String, Object> openDoors(String eventId);
+    ScanResultDTO scanTicket(String eventId, String token, String gate);
+    Map<String, Object> closeDoors(String eventId);
+    void flushCheckIns();
+}
@@ -0,0 +1,12 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.dtos.EventImportDTO;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Optional;
+
+public interface EventImportService {
+
+    EventImportDTO startImport(MultipartFile file);
+    Optional<EventImportDTO> getImport(String importId);
+}
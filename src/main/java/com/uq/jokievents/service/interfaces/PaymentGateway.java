@@ -0,0 +1,17 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+
+import java.math.BigDecimal;
+
+/**
+ * The payment provider as seen by the checkout. Which one is used depends on payment.gateway (paypal by default,
+ * simulated for load tests with no network).
+ */
+public interface PaymentGateway {
+
+    String name();
+    GatewayOrderDTO createOrder(String referenceId, String description, BigDecimal amount);
+    GatewayCaptureDTO captureOrder(String orderId);
+}
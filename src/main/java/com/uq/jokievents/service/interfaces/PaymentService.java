@@ -1,15 +1,15 @@
 package com.uq.jokievents.service.interfaces;
 
-import com.braintreepayments.http.HttpResponse;
-import com.paypal.orders.Capture;
-import com.paypal.orders.Order;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
 import com.uq.jokievents.model.ShoppingCart;
+import com.uq.jokievents.model.enums.CaptureStatus;
 
 public interface PaymentService {
 
-    HttpResponse<Order> createPaymentOrder(String clientId) throws Exception;
-    Capture capturePayment(String orderId) throws Exception;
-    void fillPurchaseAfterSuccess(ShoppingCart order);
-    void updateEventAndLocalities(ShoppingCart order);
+    GatewayOrderDTO createPaymentOrder(String clientId);
+    GatewayCaptureDTO capturePayment(String orderId);
+    CaptureStatus finishPayment(String orderId, boolean capturedByGateway) throws Exception;
+    void completeOrder(ShoppingCart order);
     ShoppingCart getShoppingCart(String clientId);
 }
@@ -0,0 +1,12 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.model.enums.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+
+public interface PurchaseExportService {
+
+    long exportPurchases(LocalDateTime from, LocalDateTime to, ExportFormat format, boolean gzip, OutputStream out) throws IOException;
+}
@@ -0,0 +1,12 @@
+package com.uq.jokievents.service.interfaces;
+
+import java.util.Map;
+
+public interface SeatMapService {
+
+    Map<String, Object> getSeatAvailability(String eventId, String localityName);
+    // Claims all the seats or none, throws EventException when the locality does not have that many left
+    int[] claimSeats(String eventId, String localityName, int count);
+    void releaseSeats(String eventId, String localityName, int[] seats);
+    void evictEvent(String eventId);
+}
@@ -0,0 +1,9 @@
+package com.uq.jokievents.service.interfaces;
+
+import com.uq.jokievents.dtos.TicketTokenDTO;
+
+public interface TicketTokenService {
+
+    String issueToken(TicketTokenDTO ticket);
+    TicketTokenDTO verifyToken(String token);
+}
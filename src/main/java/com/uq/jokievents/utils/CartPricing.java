@@ -0,0 +1,41 @@
+package com.uq.jokievents.utils;
+
+/**
+ * Money math for the shopping cart. Amounts are whole cents in a long and discounts are basis points
+ * (1000 = 10%), so adding and removing items is exact and nothing is allocated. Doubles only show up at the edges,
+ * when reading a price from a Locality or a DTO and when handing a total back to the API.
+ */
+public final class CartPricing {
+
+    private static final int BASIS_POINTS = 10_000;
+
+    private CartPricing() {
+    }
+
+    // Prices are entered with at most two decimals, rounding absorbs the binary noise (0.29 * 100 = 28.999...)
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double toAmount(long cents) {
+        return cents / 100.0;
+    }
+
+    public static long lineTotalCents(double unitPrice, int tickets) {
+        return Math.multiplyExact(toCents(unitPrice), (long) tickets);
+    }
+
+    public static int toBasisPoints(double discountPercent) {
+        long basisPoints = Math.round(discountPercent * 100);
+        if (basisPoints < 0 || basisPoints > BASIS_POINTS) {
+            throw new IllegalArgumentException("Discount must be between 0 and 100 percent: " + discountPercent);
+        }
+        return (int) basisPoints;
+    }
+
+    // The discount is rounded half up to the cent, so the client never pays the fraction of a cent
+    public static long applyDiscount(long totalCents, int discountBasisPoints) {
+        long discount = (Math.multiplyExact(totalCents, (long) discountBasisPoints) + BASIS_POINTS / 2) / BASIS_POINTS;
+        return totalCents - discount;
+    }
+}
@@ -0,0 +1,104 @@
+package com.uq.jokievents.utils;
+
+import com.uq.jokievents.dtos.LoadLocalityOrdersForClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.LongSupplier;
+
+/**
+ * The cart page as it was last built for each client, already joined with its events, so paging through the cart or
+ * reloading it does not touch Mongo. An entry is dropped when:
+ * - the client changes the cart (invalidateClient)
+ * - an event in it is edited or deleted (invalidateEvent)
+ * - the first of its events gets within two days, since from then on that order is hidden (validUntil)
+ * Loads read a stamp before going to the database and only store the result if nothing was invalidated meanwhile,
+ * so a slow load can never put back a cart that was changed while it ran.
+ * The invalidations only reach this node. A hit is served only if the stored cart still has the version the view was
+ * built from, so a change made through another node is seen on the next load. An event edited through another node
+ * shows up once the entry expires (cart.view-cache.ttl-minutes).
+ */
+@Component
+public class CartViewCache {
+
+    private record Entry(long stamp, long cartVersion, List<LoadLocalityOrdersForClient> view, LocalDateTime validUntil) {}
+
+    private final int maxEntries;
+    private final Map<String, Entry> entries;
+    private long nextStamp = 1; // Guarded by entries
+
+    public CartViewCache(@Value("${cart.view-cache.max-entries:50000}") int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CartViewCache.this.maxEntries;
+            }
+        };
+    }
+
+    // storedVersion reads the version of the stored cart, it is only called on a hit and outside the lock
+    public Optional<List<LoadLocalityOrdersForClient>> get(String clientId, LocalDateTime now, LongSupplier storedVersion) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(clientId);
+        }
+        if (entry == null || entry.view() == null || !now.isBefore(entry.validUntil())) {
+            return Optional.empty();
+        }
+        if (storedVersion.getAsLong() != entry.cartVersion()) {
+            return Optional.empty(); // Changed through another node, the load that follows replaces the entry
+        }
+        return Optional.of(entry.view());
+    }
+
+    // Taken before reading the cart, handed back to put
+    public long stamp(String clientId) {
+        synchronized (entries) {
+            Entry entry = entries.get(clientId);
+            if (entry == null) {
+                entry = new Entry(nextStamp++, 0, null, LocalDateTime.MIN);
+                entries.put(clientId, entry);
+            }
+            return entry.stamp();
+        }
+    }
+
+    public void put(String clientId, long stamp, long cartVersion, List<LoadLocalityOrdersForClient> view, LocalDateTime validUntil) {
+        synchronized (entries) {
+            Entry entry = entries.get(clientId);
+            if (entry != null && entry.stamp() == stamp) {
+                entries.put(clientId, new Entry(stamp, cartVersion, List.copyOf(view), validUntil));
+            }
+        }
+    }
+
+    public void invalidateClient(String clientId) {
+        synchronized (entries) {
+            entries.put(clientId, new Entry(nextStamp++, 0, null, LocalDateTime.MIN));
+        }
+    }
+
+    // Admin edits are rare, walking the entries is cheaper than keeping an event to clients index up to date
+    public void invalidateEvent(String eventId) {
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+                List<LoadLocalityOrdersForClient> view = cached.getValue().view();
+                // Entries without a view may be loads still running with the old event, they are bumped too
+                if (view == null || view.stream().anyMatch(order -> eventId.equals(order.eventId()))) {
+                    cached.setValue(new Entry(nextStamp++, 0, null, LocalDateTime.MIN));
+                }
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+                cached.setValue(new Entry(nextStamp++, 0, null, LocalDateTime.MIN));
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.uq.jokievents.utils;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Count based circuit breaker. It looks at the outcome of the last windowSize calls and opens when at least
+ * failureRateThreshold of them failed, then rejects everything for openMillis. After that a single trial call is let
+ * through (half open): if it works the breaker closes again, if it fails it stays open for another openMillis.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final double failureRateThreshold;
+    private final long openMillis;
+    private final LongSupplier clock;
+
+    // Ring of the last outcomes, true means failed
+    private final boolean[] outcomes;
+    private int recorded;
+    private int next;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean trialRunning;
+
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openMillis) {
+        this(windowSize, failureRateThreshold, openMillis, System::currentTimeMillis);
+    }
+
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long openMillis, LongSupplier clock) {
+        this.windowSize = windowSize;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMillis = openMillis;
+        this.clock = clock;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * @return true if the call may go to the gateway, it must then be followed by onSuccess or onFailure
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openMillis) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialRunning) {
+                return false;
+            }
+            trialRunning = true;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+            state = State.CLOSED;
+            resetWindow();
+            return;
+        }
+        record(false);
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+            open();
+            return;
+        }
+        record(true);
+        if (recorded == windowSize && failures >= failureRateThreshold * windowSize) {
+            open();
+        }
+    }
+
+    // The call never reached the gateway (e.g. no bulkhead slot), so it says nothing about its health
+    public synchronized void onIgnored() {
+        if (state == State.HALF_OPEN) {
+            trialRunning = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (recorded == windowSize && outcomes[next]) {
+            failures--;
+        }
+        outcomes[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+        recorded = Math.min(recorded + 1, windowSize);
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = clock.getAsLong();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        Arrays.fill(outcomes, false);
+    }
+}
@@ -4,6 +4,8 @@ import com.uq.jokievents.exceptions.LogicException;
 import com.uq.jokievents.model.Coupon;
 import com.uq.jokievents.model.enums.CouponType;
 import com.uq.jokievents.repository.CouponRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.mail.internet.MimeMessage;
 import jakarta.mail.util.ByteArrayDataSource;
 import lombok.RequiredArgsConstructor;
@@ -16,6 +18,7 @@ import org.springframework.stereotype.Service;
 import java.util.Base64;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.TimeUnit;
 
 @Service
 @RequiredArgsConstructor(onConstructor_ = {@Autowired})
@@ -23,6 +26,7 @@ public class EmailService {
 
     private final JavaMailSender mailSender;
     private final CouponRepository couponRepository;
+    private final MeterRegistry meterRegistry;
 
     /**
      * @param to clients mail
@@ -33,7 +37,7 @@ public class EmailService {
         message.setTo(to);
         message.setSubject("Verification Email");
         message.setText("Please use the following code to activate your account: " + verCode);
-        mailSender.send(message);
+        timedSend("verification", () -> mailSender.send(message));
     }
 
     public void sendDiscountCouponMail(String to) {
@@ -46,7 +50,7 @@ public class EmailService {
         message.setTo(to);
         message.setSubject("Discount Coupon for your new Account");
         message.setText("Use this coupon: " + randomCoupon.getName() + " to get a " + randomCoupon.getDiscountPercent() + "% discount.\nAvailable for purchases that cost more than $" + randomCoupon.getMinPurchaseAmount() + " until " + randomCoupon.getExpirationDate() + "\n Be smart and buy!");
-        mailSender.send(message);
+        timedSend("coupon", () -> mailSender.send(message));
     }
 
     /**
@@ -59,20 +63,19 @@ public class EmailService {
         message.setTo(to);
         message.setSubject("Password Recuperation");
         message.setText("Please use the following code to create a new password: " + verCode);
-        mailSender.send(message);
+        timedSend("recovery", () -> mailSender.send(message));
     }
 
     /**
-     * Sends an email with a QR that contains the recent Purchase information
+     * Sends an email with the purchase receipt and one QR per purchased locality
      * @param to String
      * @param subject String
-     * @param body String
+     * @param body String, references the images as cid:receiptImage and cid:qrCodeImage0, cid:qrCodeImage1...
+     * @param base64Receipt receipt image as a png in Base64
+     * @param base64QRCodes ticket QR images as pngs in Base64, same order as the purchased items
      */
-    public void sendPurchaseEmail(String to, String subject, String body, String base64QRCode) {
+    public void sendPurchaseEmail(String to, String subject, String body, String base64Receipt, List<String> base64QRCodes) {
         try {
-            // Decode the base64 QR code image
-            byte[] imageBytes = Base64.getDecoder().decode(base64QRCode); // Extract the base64 data from the URI
-
             // Create MimeMessage
             MimeMessage message = mailSender.createMimeMessage();
 
@@ -83,16 +86,35 @@ public class EmailService {
             helper.setSubject(subject);
             helper.setText(body, true); // 'true' indicates that the body is HTML
 
-            // Convert the byte array image into a DataSource for the inline attachment
-            ByteArrayDataSource dataSource = new ByteArrayDataSource(imageBytes, "image/png");
-
-            // Add the image as an inline attachment with a Content-ID
-            helper.addInline("qrCodeImage", dataSource);
+            // Add the images as inline attachments, each one with its own Content-ID
+            helper.addInline("receiptImage", new ByteArrayDataSource(Base64.getDecoder().decode(base64Receipt), "image/png"));
+            for (int i = 0; i < base64QRCodes.size(); i++) {
+                byte[] imageBytes = Base64.getDecoder().decode(base64QRCodes.get(i));
+                helper.addInline("qrCodeImage" + i, new ByteArrayDataSource(imageBytes, "image/png"));
+            }
 
             // Send the email
-            mailSender.send(message);
+            timedSend("purchase", () -> mailSender.send(message));
         } catch (Exception e) {
             throw new LogicException("Error sending email with embedded image " + e.getMessage(), e);
         }
     }
+
+    // The SMTP round trip, tagged by kind of mail and whether the server took it
+    private void timedSend(String type, Runnable send) {
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            send.run();
+            outcome = "success";
+        } finally {
+            Timer.builder("email.send")
+                    .description("Time spent handing mails to the SMTP server")
+                    .tag("type", type)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
 }
@@ -0,0 +1,137 @@
+package com.uq.jokievents.utils;
+
+import com.uq.jokievents.dtos.AccessTokenDTO;
+import com.uq.jokievents.exceptions.PaymentGatewayUnavailableException;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the payment gateway OAuth token so checkout requests never fetch one themselves.
+ * - The token is reused until expirySafetyMs before it expires.
+ * - refreshAheadMs before that a background thread fetches the next one, so in practice the hot path only reads a field.
+ * - If a request still finds no valid token (first call, or the background refresh kept failing) it joins the fetch
+ *   already running instead of starting its own, there is never more than one fetch in flight.
+ */
+public class GatewayTokenManager {
+
+    private static final Logger LOGGER = Logger.getLogger(GatewayTokenManager.class.getName());
+    private static final long RETRY_DELAY_MS = 10_000;
+
+    private final Callable<AccessTokenDTO> fetcher;
+    private final long refreshAheadMs;
+    private final long expirySafetyMs;
+    private final long fetchTimeoutMs;
+    private final LongSupplier clock;
+    private final ScheduledExecutorService refresher;
+
+    private volatile CachedToken current;
+    private ScheduledFuture<?> nextRefresh;
+    private final AtomicReference<CompletableFuture<CachedToken>> inFlight = new AtomicReference<>();
+
+    private record CachedToken(String authorization, long expiresAt) {}
+
+    public GatewayTokenManager(Callable<AccessTokenDTO> fetcher, long refreshAheadMs, long expirySafetyMs, long fetchTimeoutMs) {
+        this(fetcher, refreshAheadMs, expirySafetyMs, fetchTimeoutMs, System::currentTimeMillis);
+    }
+
+    public GatewayTokenManager(Callable<AccessTokenDTO> fetcher, long refreshAheadMs, long expirySafetyMs, long fetchTimeoutMs,
+                               LongSupplier clock) {
+        this.fetcher = fetcher;
+        this.refreshAheadMs = refreshAheadMs;
+        this.expirySafetyMs = expirySafetyMs;
+        this.fetchTimeoutMs = fetchTimeoutMs;
+        this.clock = clock;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "gateway-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Fetches the first token in the background so not even the first checkout waits for it
+    public void start() {
+        refresher.execute(this::backgroundRefresh);
+    }
+
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    public String getAuthorization() {
+        CachedToken token = current;
+        if (token != null && clock.getAsLong() < token.expiresAt() - expirySafetyMs) {
+            return token.authorization();
+        }
+        try {
+            return refresh().get(fetchTimeoutMs, TimeUnit.MILLISECONDS).authorization();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaymentGatewayUnavailableException("Interrupted while authenticating with the payment gateway");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new PaymentGatewayUnavailableException("Could not authenticate with the payment gateway");
+        }
+    }
+
+    /**
+     * The gateway rejected this token (401), forget it unless someone already replaced it.
+     */
+    public void invalidate(String authorization) {
+        CachedToken token = current;
+        if (token != null && token.authorization().equals(authorization)) {
+            current = null;
+        }
+    }
+
+    // Single flight: whoever installs the future does the fetch, everyone else waits on it
+    private CompletableFuture<CachedToken> refresh() {
+        CompletableFuture<CachedToken> mine = new CompletableFuture<>();
+        CompletableFuture<CachedToken> running = inFlight.compareAndExchange(null, mine);
+        if (running != null) {
+            return running;
+        }
+        try {
+            AccessTokenDTO fetched = fetcher.call();
+            CachedToken token = new CachedToken(fetched.authorization(), clock.getAsLong() + fetched.expiresInSeconds() * 1000);
+            current = token;
+            scheduleNextRefresh(token);
+            mine.complete(token);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlight.set(null);
+        }
+        return mine;
+    }
+
+    private void backgroundRefresh() {
+        try {
+            refresh().join();
+        } catch (CompletionException e) {
+            LOGGER.log(Level.WARNING, "Could not refresh the payment gateway token, retrying", e.getCause());
+            schedule(RETRY_DELAY_MS);
+        }
+    }
+
+    private void scheduleNextRefresh(CachedToken token) {
+        long lifetime = token.expiresAt() - clock.getAsLong();
+        // Short lived tokens (or a big refreshAheadMs) refresh at half their life instead
+        long delay = Math.max(lifetime - refreshAheadMs, lifetime / 2);
+        schedule(delay);
+    }
+
+    // Only one refresh is ever pending, a token fetched on the request path replaces the old schedule
+    private synchronized void schedule(long delayMs) {
+        if (nextRefresh != null) {
+            nextRefresh.cancel(false);
+        }
+        try {
+            nextRefresh = refresher.schedule(this::backgroundRefresh, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down
+        }
+    }
+}
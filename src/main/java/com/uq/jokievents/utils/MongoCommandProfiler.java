@@ -0,0 +1,294 @@
+package com.uq.jokievents.utils;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.uq.jokievents.dtos.SlowQueryDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Listens to every command the Mongo driver sends and keeps latency per query shape. The first time a shape is
+ * slower than the threshold (and again every explainIntervalMs) the query is explained with executionStats on a
+ * background thread, so the report can show documents examined versus returned and whether it scanned the whole
+ * collection. Only reads are explained, writes are timed but never re-run.
+ */
+public class MongoCommandProfiler implements CommandListener {
+
+    private static final Logger LOGGER = Logger.getLogger(MongoCommandProfiler.class.getName());
+
+    private static final Set<String> PROFILED = Set.of("find", "aggregate", "count", "distinct", "update", "delete", "findAndModify");
+    private static final Set<String> EXPLAINABLE = Set.of("find", "aggregate", "count", "distinct");
+    private static final Set<String> SESSION_FIELDS = Set.of("lsid", "txnNumber", "autocommit", "startTransaction", "readConcern");
+
+    private final BiFunction<String, BsonDocument, Document> explainer;
+    private final long thresholdNanos;
+    private final long explainIntervalMs;
+    private final int maxShapes;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor explainExecutor;
+
+    private final Map<Integer, BsonDocument> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, ShapeStats> shapes = new ConcurrentHashMap<>();
+
+    /**
+     * @param explainer runs {explain: command, verbosity: executionStats} against the given database
+     */
+    public MongoCommandProfiler(BiFunction<String, BsonDocument, Document> explainer, long thresholdMs,
+                                long explainIntervalMs, int maxShapes, MeterRegistry meterRegistry) {
+        this.explainer = explainer;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMs);
+        this.explainIntervalMs = explainIntervalMs;
+        this.maxShapes = maxShapes;
+        this.meterRegistry = meterRegistry;
+        // One thread and a short queue, under load it is fine to skip explains rather than pile them up
+        this.explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(64), runnable -> {
+            Thread thread = new Thread(runnable, "mongo-explain");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (PROFILED.contains(event.getCommandName())) {
+            // The driver reuses the buffer behind the command once the callback returns
+            inFlight.put(event.getRequestId(), event.getCommand().clone());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        BsonDocument command = inFlight.remove(event.getRequestId());
+        if (command == null) {
+            return;
+        }
+        String commandName = event.getCommandName();
+        String collection = command.get(commandName).isString() ? command.getString(commandName).getValue() : "?";
+        String shape = commandName + " " + collection + " " + shapeOf(filterOf(commandName, command));
+
+        ShapeStats stats = shapes.get(shape);
+        if (stats == null) {
+            if (shapes.size() >= maxShapes) {
+                return;
+            }
+            stats = shapes.computeIfAbsent(shape, key -> new ShapeStats(collection, commandName, shape));
+        }
+
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        boolean slow = nanos >= thresholdNanos;
+        stats.record(nanos, slow, returnedBy(event.getResponse()));
+        if (slow && EXPLAINABLE.contains(commandName) && stats.claimExplain(System.currentTimeMillis(), explainIntervalMs)) {
+            String database = event.getDatabaseName();
+            ShapeStats explained = stats;
+            explainExecutor.execute(() -> explain(database, command, explained));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        inFlight.remove(event.getRequestId());
+    }
+
+    /**
+     * @return the shapes that were slow at least once, slowest first
+     */
+    public List<SlowQueryDTO> slowQueries(int limit) {
+        return shapes.values().stream()
+                .map(ShapeStats::snapshot)
+                .filter(query -> query.slowExecutions() > 0)
+                .sorted(Comparator.comparingDouble(SlowQueryDTO::maxMs).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    public void reset() {
+        shapes.clear();
+    }
+
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    private void explain(String database, BsonDocument command, ShapeStats stats) {
+        try {
+            BsonDocument explainable = new BsonDocument();
+            command.forEach((key, value) -> {
+                if (!key.startsWith("$") && !SESSION_FIELDS.contains(key)) {
+                    explainable.put(key, value);
+                }
+            });
+            Document explanation = explainer.apply(database, explainable);
+            Document executionStats = find(explanation, "executionStats");
+            Document winningPlan = find(explanation, "winningPlan");
+            Long examined = executionStats == null ? null : ((Number) executionStats.get("totalDocsExamined")).longValue();
+            Long returned = executionStats == null ? null : ((Number) executionStats.get("nReturned")).longValue();
+            boolean collectionScan = winningPlan != null && winningPlan.toJson().contains("\"COLLSCAN\"");
+            String plan = winningPlan == null ? "unknown" : planOf(winningPlan);
+            if (collectionScan) {
+                meterRegistry.counter("mongodb.collection.scans", "collection", stats.collection).increment();
+                LOGGER.warning("Collection scan on " + stats.shape + ": examined " + examined + " documents to return " + returned + " (" + plan + ")");
+            }
+            stats.explained(examined, returned, collectionScan, plan);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "Could not explain " + stats.shape, e);
+        }
+    }
+
+    private static BsonValue filterOf(String commandName, BsonDocument command) {
+        return switch (commandName) {
+            case "find" -> command.get("filter", new BsonDocument());
+            case "count", "distinct", "findAndModify" -> command.get("query", new BsonDocument());
+            case "aggregate" -> command.get("pipeline", new BsonArray());
+            case "update" -> firstStatement(command, "updates", "q");
+            case "delete" -> firstStatement(command, "deletes", "q");
+            default -> new BsonDocument();
+        };
+    }
+
+    private static BsonValue firstStatement(BsonDocument command, String statements, String field) {
+        BsonArray array = command.getArray(statements, new BsonArray());
+        return array.isEmpty() ? new BsonDocument() : array.get(0).asDocument().get(field, new BsonDocument());
+    }
+
+    // Keeps the keys and operators and replaces every value with ?, so the same query with other values lands together
+    static String shapeOf(BsonValue value) {
+        if (value.isDocument()) {
+            StringJoiner fields = new StringJoiner(", ", "{", "}");
+            value.asDocument().forEach((key, child) -> fields.add(key + ": " + shapeOf(child)));
+            return fields.toString();
+        }
+        if (value.isArray()) {
+            BsonArray array = value.asArray();
+            // $in and friends only care that there is a list, pipelines keep every stage
+            if (array.stream().noneMatch(BsonValue::isDocument)) {
+                return "[?]";
+            }
+            StringJoiner items = new StringJoiner(", ", "[", "]");
+            array.forEach(item -> items.add(shapeOf(item)));
+            return items.toString();
+        }
+        return "?";
+    }
+
+    private static Long returnedBy(BsonDocument response) {
+        BsonDocument cursor = response.getDocument("cursor", null);
+        if (cursor != null && cursor.containsKey("firstBatch")) {
+            return (long) cursor.getArray("firstBatch").size();
+        }
+        if (response.containsKey("n") && response.get("n").isNumber()) {
+            return response.getNumber("n").longValue();
+        }
+        if (response.containsKey("values") && response.get("values").isArray()) {
+            return (long) response.getArray("values").size();
+        }
+        return null;
+    }
+
+    // Explain output nests differently for find, aggregate and the SBE engine, so look for the key anywhere
+    private static Document find(Object node, String key) {
+        if (node instanceof Document document) {
+            if (document.get(key) instanceof Document found) {
+                return found;
+            }
+            for (Object child : document.values()) {
+                Document found = find(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object child : list) {
+                Document found = find(child, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    // FETCH > IXSCAN(clientId_1)
+    private static String planOf(Document winningPlan) {
+        Document stage = winningPlan.get("queryPlan") instanceof Document queryPlan ? queryPlan : winningPlan;
+        StringJoiner stages = new StringJoiner(" > ");
+        while (stage != null) {
+            String name = stage.getString("stage");
+            String index = stage.getString("indexName");
+            stages.add(index == null ? String.valueOf(name) : name + "(" + index + ")");
+            if (stage.get("inputStage") instanceof Document input) {
+                stage = input;
+            } else if (stage.get("inputStages") instanceof List<?> inputs && !inputs.isEmpty() && inputs.get(0) instanceof Document first) {
+                stage = first;
+            } else {
+                stage = null;
+            }
+        }
+        return stages.toString();
+    }
+
+    private static class ShapeStats {
+        private final String collection;
+        private final String command;
+        private final String shape;
+        private long executions;
+        private long slowExecutions;
+        private long totalNanos;
+        private long maxNanos;
+        private Long docsExamined;
+        private Long docsReturned;
+        private boolean collectionScan;
+        private String plan;
+        private long lastExplainMs = Long.MIN_VALUE;
+
+        ShapeStats(String collection, String command, String shape) {
+            this.collection = collection;
+            this.command = command;
+            this.shape = shape;
+        }
+
+        synchronized void record(long nanos, boolean slow, Long returned) {
+            executions++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            if (slow) {
+                slowExecutions++;
+            }
+            // Until it is explained, what the last call returned is the best we have
+            if (docsExamined == null && returned != null) {
+                docsReturned = returned;
+            }
+        }
+
+        synchronized boolean claimExplain(long nowMs, long intervalMs) {
+            if (lastExplainMs != Long.MIN_VALUE && nowMs - lastExplainMs < intervalMs) {
+                return false;
+            }
+            lastExplainMs = nowMs;
+            return true;
+        }
+
+        synchronized void explained(Long examined, Long returned, boolean collectionScan, String plan) {
+            this.docsExamined = examined;
+            this.docsReturned = returned;
+            this.collectionScan = collectionScan;
+            this.plan = plan;
+        }
+
+        synchronized SlowQueryDTO snapshot() {
+            return new SlowQueryDTO(collection, command, shape, executions, slowExecutions,
+                    executions == 0 ? 0 : totalNanos / 1e6 / executions, maxNanos / 1e6,
+                    docsExamined, docsReturned, collectionScan, plan);
+        }
+    }
+}
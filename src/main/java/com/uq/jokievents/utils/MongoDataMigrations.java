@@ -0,0 +1,127 @@
+package com.uq.jokievents.utils;
+
+import org.bson.Document;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Rewrites documents stored with an older shape of the models. Runs once the beans are ready and before the web
+ * server takes requests, so nobody reads a half migrated document, and before MongoIndexBootstrapper builds the
+ * indexes that depend on the new shape. Every step only matches documents that still have the old shape, running it
+ * again does nothing.
+ */
+@Component
+public class MongoDataMigrations implements SmartInitializingSingleton {
+
+    private static final Logger LOGGER = Logger.getLogger(MongoDataMigrations.class.getName());
+    private static final String CARTS = "shopping-carts";
+    private static final String CLIENTS = "clients";
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+
+    public MongoDataMigrations(MongoTemplate mongoTemplate, @Value("${mongo.migrations.enabled:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            LOGGER.warning("Could not migrate the Mongo documents: " + e.getMessage());
+        }
+    }
+
+    public void migrate() {
+        migrateCartTotals();
+        removeEmptyIdCards();
+        backfillCartOwners();
+    }
+
+    /**
+     * Carts used to keep Double totalPrice and totalPriceWithDiscount plus appliedDiscountPercent, the factor left to
+     * pay (0.9 for a 10% coupon). Without this they load as 0 cents and removing an item pushes the total below zero.
+     */
+    private void migrateCartTotals() {
+        Query legacy = new Query(Criteria.where("totalPriceCents").exists(false));
+        legacy.fields().include("totalPrice", "totalPriceWithDiscount", "appliedDiscountPercent");
+        long migrated = 0;
+        try (Stream<Document> carts = mongoTemplate.stream(legacy, Document.class, CARTS)) {
+            for (Document cart : (Iterable<Document>) carts::iterator) {
+                Update update = new Update()
+                        .set("totalPriceCents", CartPricing.toCents(amount(cart, "totalPrice")))
+                        .set("discountBasisPoints", legacyDiscountBasisPoints(cart))
+                        .unset("totalPrice")
+                        .unset("totalPriceWithDiscount")
+                        .unset("appliedDiscountPercent");
+                Query sameCart = new Query(Criteria.where("_id").is(cart.get("_id")).and("totalPriceCents").exists(false));
+                migrated += mongoTemplate.updateFirst(sameCart, update, CARTS).getModifiedCount();
+            }
+        }
+        if (migrated > 0) {
+            LOGGER.info("Moved " + migrated + " shopping carts to totals in cents");
+        }
+    }
+
+    // Google sign-ins used to store "" as their ID card, they have none. Only non empty ones are in the unique index
+    private void removeEmptyIdCards() {
+        long migrated = mongoTemplate.updateMulti(new Query(Criteria.where("idCard").is("")), new Update().unset("idCard"), CLIENTS)
+                .getModifiedCount();
+        if (migrated > 0) {
+            LOGGER.info("Removed the empty ID card of " + migrated + " clients");
+        }
+    }
+
+    // Carts created before clientId existed were only reachable through Client.idShoppingCart
+    private void backfillCartOwners() {
+        Query ownerless = new Query(Criteria.where("clientId").exists(false));
+        ownerless.fields().include("_id");
+        long migrated = 0;
+        try (Stream<Document> carts = mongoTemplate.stream(ownerless, Document.class, CARTS)) {
+            for (Document cart : (Iterable<Document>) carts::iterator) {
+                Query owner = new Query(Criteria.where("idShoppingCart").is(cart.get("_id").toString()));
+                owner.fields().include("_id");
+                Document client = mongoTemplate.findOne(owner, Document.class, CLIENTS);
+                if (client == null) {
+                    continue; // Nobody points to it, it stays out of the partial index
+                }
+                Query sameCart = new Query(Criteria.where("_id").is(cart.get("_id")).and("clientId").exists(false));
+                migrated += mongoTemplate.updateFirst(sameCart, new Update().set("clientId", client.get("_id").toString()), CARTS)
+                        .getModifiedCount();
+            }
+        }
+        if (migrated > 0) {
+            LOGGER.info("Linked " + migrated + " shopping carts to their clients");
+        }
+    }
+
+    private static int legacyDiscountBasisPoints(Document cart) {
+        double toPay;
+        if (cart.get("appliedDiscountPercent") instanceof Number factor) {
+            toPay = factor.doubleValue();
+        } else if (amount(cart, "totalPrice") > 0 && cart.get("totalPriceWithDiscount") instanceof Number discounted) {
+            toPay = discounted.doubleValue() / amount(cart, "totalPrice");
+        } else {
+            return 0;
+        }
+        long basisPoints = Math.round((1 - toPay) * 10_000);
+        return (int) Math.max(0, Math.min(10_000, basisPoints));
+    }
+
+    private static double amount(Document document, String field) {
+        return document.get(field) instanceof Number number ? number.doubleValue() : 0;
+    }
+}
@@ -0,0 +1,155 @@
+package com.uq.jokievents.utils;
+
+import com.uq.jokievents.dtos.IndexStatusDTO;
+import com.uq.jokievents.model.enums.IndexStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.*;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver.IndexDefinitionHolder;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.logging.Logger;
+
+/**
+ * The indexes are declared on the models with @Indexed and @CompoundIndex. Spring Data no longer builds them on its
+ * own, so once the app is up this compares them with what each collection has and, in create mode, builds the
+ * missing ones on the task executor. In verify mode, or when a build fails (duplicates under a unique index), the
+ * index is only reported: in the log, in the mongodb.indexes.missing gauge and on /api/admin/indexes.
+ */
+@Component
+public class MongoIndexBootstrapper {
+
+    private static final Logger LOGGER = Logger.getLogger(MongoIndexBootstrapper.class.getName());
+
+    private final MongoTemplate mongoTemplate;
+    private final AsyncTaskExecutor applicationTaskExecutor;
+    private final String mode;
+
+    private volatile List<IndexStatusDTO> lastReport = List.of();
+
+    /**
+     * @param mode create builds what is missing, verify only reports it, off skips the check
+     */
+    public MongoIndexBootstrapper(MongoTemplate mongoTemplate,
+                                  @Qualifier("applicationTaskExecutor") AsyncTaskExecutor applicationTaskExecutor,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${mongo.indexes.mode:create}") String mode) {
+        this.mongoTemplate = mongoTemplate;
+        this.applicationTaskExecutor = applicationTaskExecutor;
+        this.mode = mode;
+        Gauge.builder("mongodb.indexes.missing", this, bootstrapper -> bootstrapper.getLastReport().stream()
+                        .filter(index -> index.status() == IndexStatus.MISSING || index.status() == IndexStatus.FAILED)
+                        .count())
+                .description("Declared Mongo indexes that the database does not have")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if ("off".equals(mode)) {
+            return;
+        }
+        // Index builds can take a while on big collections, requests are served meanwhile
+        applicationTaskExecutor.execute(() -> {
+            try {
+                bootstrap("create".equals(mode));
+            } catch (Exception e) {
+                LOGGER.warning("Could not check the Mongo indexes: " + e.getMessage());
+            }
+        });
+    }
+
+    public List<IndexStatusDTO> bootstrap(boolean create) {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext = mongoTemplate.getConverter().getMappingContext();
+        IndexResolver indexResolver = new MongoPersistentEntityIndexResolver(mappingContext);
+
+        List<IndexStatusDTO> report = new ArrayList<>();
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                continue;
+            }
+            for (IndexDefinition index : indexResolver.resolveIndexFor(entity.getTypeInformation())) {
+                report.add(check((IndexDefinitionHolder) index, create));
+            }
+        }
+
+        lastReport = List.copyOf(report);
+        report.stream()
+                .filter(index -> index.status() == IndexStatus.MISSING || index.status() == IndexStatus.FAILED)
+                .forEach(index -> LOGGER.warning("Index " + index.name() + " " + index.keys() + " on " + index.collection()
+                        + " is " + index.status() + ": " + index.detail()));
+        return lastReport;
+    }
+
+    public List<IndexStatusDTO> getLastReport() {
+        return lastReport;
+    }
+
+    private IndexStatusDTO check(IndexDefinitionHolder declared, boolean create) {
+        String collection = declared.getCollection();
+        String keys = keysOf(declared.getIndexKeys());
+        boolean unique = declared.getIndexOptions().getBoolean("unique", false);
+        String name = declared.getIndexOptions().getString("name");
+        IndexOperations indexOps = mongoTemplate.indexOps(collection);
+
+        Optional<IndexInfo> existing = indexOps.getIndexInfo().stream()
+                .filter(info -> keysOf(info).equals(keys))
+                .findFirst();
+        if (existing.isPresent()) {
+            if (unique && !existing.get().isUnique()) {
+                // Same keys with other options can not be built next to it, someone has to drop it first
+                return new IndexStatusDTO(collection, name, keys, true, IndexStatus.MISSING,
+                        existing.get().getName() + " has the same keys but is not unique");
+            }
+            Document partialFilter = declared.getIndexOptions().get("partialFilterExpression", Document.class);
+            String existingFilter = existing.get().getPartialFilterExpression();
+            if (!Objects.equals(partialFilter, existingFilter == null ? null : Document.parse(existingFilter))) {
+                return new IndexStatusDTO(collection, name, keys, unique, IndexStatus.MISSING,
+                        existing.get().getName() + " has the same keys but another partial filter: " + existingFilter);
+            }
+            return new IndexStatusDTO(collection, name, keys, unique, IndexStatus.PRESENT, null);
+        }
+        if (!create) {
+            return new IndexStatusDTO(collection, name, keys, unique, IndexStatus.MISSING, "not built, mongo.indexes.mode is verify");
+        }
+        try {
+            indexOps.ensureIndex(declared.getIndexDefinition());
+            return new IndexStatusDTO(collection, name, keys, unique, IndexStatus.CREATED, null);
+        } catch (RuntimeException e) {
+            return new IndexStatusDTO(collection, name, keys, unique, IndexStatus.FAILED, e.getMessage());
+        }
+    }
+
+    // clientId:1, purchaseDate:-1 in key order, the same index is recognised whatever it was named
+    private static String keysOf(Document keys) {
+        StringJoiner joiner = new StringJoiner(", ");
+        keys.forEach((key, direction) -> joiner.add(key + ":" + (direction instanceof Number number ? String.valueOf(number.intValue()) : direction)));
+        return joiner.toString();
+    }
+
+    private static String keysOf(IndexInfo info) {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (IndexField field : info.getIndexFields()) {
+            String direction = field.getDirection() == null ? (field.isText() ? "text" : "2dsphere")
+                    : field.getDirection() == Sort.Direction.ASC ? "1" : "-1";
+            joiner.add(field.getKey() + ":" + direction);
+        }
+        return joiner.toString();
+    }
+}
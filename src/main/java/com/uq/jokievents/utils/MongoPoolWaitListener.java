@@ -0,0 +1,42 @@
+package com.uq.jokievents.utils;
+
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionPoolListener;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long each operation waited for a pooled connection, as mongodb.driver.pool.wait. Spring Boot already publishes
+ * the pool size and wait queue, but a queue of 0 with 40ms waits (connections being opened) looks healthy there.
+ * Failed checkouts are recorded too, tagged with the reason (timeout means mongo.pool.max-wait-ms was hit).
+ */
+public class MongoPoolWaitListener implements ConnectionPoolListener {
+
+    private final MeterRegistry meterRegistry;
+
+    public MongoPoolWaitListener(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        timer(event.getConnectionId().getServerId().getAddress().toString(), "acquired")
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        timer(event.getServerId().getAddress().toString(), event.getReason().name().toLowerCase())
+                .record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String serverAddress, String outcome) {
+        return Timer.builder("mongodb.driver.pool.wait")
+                .tag("server.address", serverAddress)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,141 @@
+package com.uq.jokievents.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.uq.jokievents.dtos.WebhookEventDTO;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Queue between the webhook endpoint and the payment completion. The endpoint only verifies and enqueues, so PayPal
+ * gets its 200 right away, and a fixed pool of workers drains the queue in batches. Events of the same order
+ * inside a batch are collapsed, the completion is idempotent anyway but this saves the extra lookups.
+ * PayPal already got its 200, so a failed completion is queued again with exponential backoff up to maxAttempts.
+ * The queue only lives in memory, if the app stops or gives up the /success redirect finishes the order instead.
+ */
+public class PaymentWebhookProcessor {
+
+    private static final Logger LOGGER = Logger.getLogger(PaymentWebhookProcessor.class.getName());
+
+    private final BlockingQueue<Delivery> queue;
+    private final Consumer<WebhookEventDTO> handler;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long retryBackoffMs;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retries;
+    private volatile boolean running = true;
+
+    // attempt starts at 0, the first retry waits retryBackoffMs and every next one twice as long
+    private record Delivery(WebhookEventDTO event, int attempt) {}
+
+    public PaymentWebhookProcessor(Consumer<WebhookEventDTO> handler, int workerCount, int batchSize, int queueCapacity) {
+        this(handler, workerCount, batchSize, queueCapacity, 5, 1000);
+    }
+
+    public PaymentWebhookProcessor(Consumer<WebhookEventDTO> handler, int workerCount, int batchSize, int queueCapacity,
+                                   int maxAttempts, long retryBackoffMs) {
+        this.handler = handler;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMs = retryBackoffMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "payment-webhook-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retries = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-webhook-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.submit(this::work);
+        }
+    }
+
+    /**
+     * @return false when the queue is full, the endpoint answers 503 and PayPal sends the event again later
+     */
+    public boolean submit(WebhookEventDTO event) {
+        return queue.offer(new Delivery(event, 0));
+    }
+
+    public static WebhookEventDTO parse(JsonNode body) {
+        String eventType = body.path("event_type").asText();
+        JsonNode resource = body.path("resource");
+        // Order events carry the order as the resource, capture events point to it in the related ids
+        String orderId = eventType.startsWith("CHECKOUT.ORDER")
+                ? resource.path("id").asText()
+                : resource.path("supplementary_data").path("related_ids").path("order_id").asText();
+        return new WebhookEventDTO(body.path("id").asText(), eventType, orderId);
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    public void shutdown() {
+        running = false;
+        workers.shutdownNow();
+        retries.shutdownNow();
+    }
+
+    private void work() {
+        List<Delivery> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Delivery first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+
+                Map<String, Delivery> byOrder = new LinkedHashMap<>();
+                for (Delivery delivery : batch) {
+                    byOrder.merge(delivery.event().orderId(), delivery, PaymentWebhookProcessor::mostAdvanced);
+                }
+                for (Delivery delivery : byOrder.values()) {
+                    try {
+                        handler.accept(delivery.event());
+                    } catch (Exception e) {
+                        retryLater(delivery, e);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void retryLater(Delivery delivery, Exception failure) {
+        WebhookEventDTO event = delivery.event();
+        int attempt = delivery.attempt() + 1;
+        if (attempt >= maxAttempts || !running) {
+            LOGGER.log(Level.WARNING, "Webhook " + event.id() + " for order " + event.orderId() + " failed " + attempt
+                    + " times, giving up. The success redirect will finish the order", failure);
+            return;
+        }
+        long delayMs = retryBackoffMs << Math.min(attempt - 1, 16);
+        LOGGER.warning("Webhook " + event.id() + " for order " + event.orderId() + " failed, retrying in " + delayMs
+                + " ms: " + failure.getMessage());
+        retries.schedule(() -> {
+            if (!queue.offer(new Delivery(event, attempt))) {
+                LOGGER.warning("Webhook queue is full, dropped the retry of " + event.id() + " for order " + event.orderId());
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    // A capture completed event already means the money is ours, it beats an approval of the same order
+    private static Delivery mostAdvanced(Delivery current, Delivery other) {
+        return other.event().eventType().startsWith("PAYMENT.CAPTURE") ? other : current;
+    }
+}
@@ -0,0 +1,210 @@
+package com.uq.jokievents.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Numbered seats of one locality, one bit per seat (1 = taken), seat numbers go from 0 to capacity - 1.
+ * Seats are claimed with compare-and-set on the 64 seat words, so two buyers never get the same seat and
+ * nobody waits on a lock. Free and taken runs are found a word at a time, which keeps 50k+ seat stadiums cheap.
+ */
+public class SeatMap {
+
+    private final int capacity;
+    private final AtomicLongArray words;
+
+    public SeatMap(int capacity) {
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((capacity + 63) / 64);
+        // The bits after the last seat are marked as taken so the word scans never hand them out
+        int tailBits = capacity & 63;
+        if (tailBits != 0) {
+            words.set(words.length() - 1, -1L << tailBits);
+        }
+    }
+
+    public static SeatMap fromBytes(int capacity, byte[] bytes) {
+        SeatMap seatMap = new SeatMap(capacity);
+        if (bytes == null) {
+            return seatMap;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < seatMap.words.length() && buffer.remaining() >= Long.BYTES; i++) {
+            seatMap.words.set(i, seatMap.words.get(i) | buffer.getLong());
+        }
+        return seatMap;
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < words.length(); i++) {
+            buffer.putLong(words.get(i));
+        }
+        return buffer.array();
+    }
+
+    public SeatMap copy() {
+        return fromBytes(capacity, toBytes());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int available() {
+        int taken = 0;
+        for (int i = 0; i < words.length(); i++) {
+            taken += Long.bitCount(words.get(i));
+        }
+        return words.length() * 64 - taken;
+    }
+
+    // Highest sold seat number, -1 when nothing is sold
+    public int lastTaken() {
+        for (int i = words.length() - 1; i >= 0; i--) {
+            long word = words.get(i);
+            if (i == words.length() - 1 && (capacity & 63) != 0) {
+                word &= ~(-1L << (capacity & 63)); // The padding bits are not seats
+            }
+            if (word != 0) {
+                return i * 64 + 63 - Long.numberOfLeadingZeros(word);
+            }
+        }
+        return -1;
+    }
+
+    // Same sold seats in a locality of another size, the caller checks no sold seat falls off the end
+    public SeatMap withCapacity(int newCapacity) {
+        SeatMap resized = new SeatMap(newCapacity);
+        int limit = Math.min(capacity, newCapacity);
+        for (int seat = nextTaken(0); seat < limit; seat = nextTaken(seat + 1)) {
+            resized.claim(seat);
+        }
+        return resized;
+    }
+
+    public boolean isTaken(int seat) {
+        return (words.get(seat >>> 6) & (1L << (seat & 63))) != 0;
+    }
+
+    public boolean claim(int seat) {
+        int word = seat >>> 6;
+        long mask = 1L << (seat & 63);
+        while (true) {
+            long current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+
+    public void release(int seat) {
+        int word = seat >>> 6;
+        long mask = 1L << (seat & 63);
+        while (true) {
+            long current = words.get(word);
+            if (words.compareAndSet(word, current, current & ~mask)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Best available: the lowest numbered block of count seats together, or the lowest free seats one by one
+     * if the locality is too fragmented for that. May return fewer seats than asked when it is sold out.
+     */
+    public int[] claimBestAvailable(int count) {
+        int[] block = claimContiguous(count);
+        if (block != null) {
+            return block;
+        }
+
+        List<Integer> claimed = new ArrayList<>(count);
+        int seat = nextFree(0);
+        while (seat < capacity && claimed.size() < count) {
+            if (claim(seat)) {
+                claimed.add(seat);
+            }
+            seat = nextFree(seat + 1);
+        }
+        return claimed.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private int[] claimContiguous(int count) {
+        int start = nextFree(0);
+        while (start < capacity) {
+            int end = Math.min(nextTaken(start), capacity);
+            if (end - start >= count) {
+                // Take the seats one by one, if another buyer wins one of them give back ours and keep looking after it
+                int seat = start;
+                while (seat < start + count && claim(seat)) {
+                    seat++;
+                }
+                if (seat == start + count) {
+                    int[] block = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        block[i] = start + i;
+                    }
+                    return block;
+                }
+                for (int i = start; i < seat; i++) {
+                    release(i);
+                }
+                start = nextFree(seat + 1);
+            } else {
+                start = nextFree(end);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Availability as run lengths, starting with a free run (which may be 0): [free, taken, free, taken...].
+     * A half sold 50k seat locality is usually a few hundred numbers instead of 50k booleans.
+     */
+    public int[] runLengths() {
+        List<Integer> runs = new ArrayList<>();
+        int position = 0;
+        boolean free = true;
+        while (position < capacity) {
+            int next = Math.min(free ? nextTaken(position) : nextFree(position), capacity);
+            runs.add(next - position);
+            position = next;
+            free = !free;
+        }
+        return runs.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // First free seat at or after from, capacity if there is none
+    private int nextFree(int from) {
+        return nextBit(from, true);
+    }
+
+    // First taken seat at or after from, capacity if there is none
+    private int nextTaken(int from) {
+        return nextBit(from, false);
+    }
+
+    private int nextBit(int from, boolean lookingForFree) {
+        if (from >= capacity) {
+            return capacity;
+        }
+        int wordIndex = from >>> 6;
+        long word = lookingForFree ? ~words.get(wordIndex) : words.get(wordIndex);
+        word &= -1L << (from & 63);
+        while (word == 0) {
+            wordIndex++;
+            if (wordIndex >= words.length()) {
+                return capacity;
+            }
+            word = lookingForFree ? ~words.get(wordIndex) : words.get(wordIndex);
+        }
+        return Math.min(wordIndex * 64 + Long.numberOfTrailingZeros(word), capacity);
+    }
+}
@@ -0,0 +1,63 @@
+package com.uq.jokievents.utils;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The set of valid tickets of one event while its doors are open.
+ * Ticket keys are numbered once when the set is built, after that the map is only read and each ticket is a single bit
+ * in a redeemed bitset, so marking a ticket as used is one compare-and-set, no locks between gates.
+ */
+public class TicketValiditySet {
+
+    public enum Redemption { REDEEMED, ALREADY_REDEEMED, UNKNOWN }
+
+    private final Map<String, Integer> ticketIndexes;
+    private final AtomicLongArray redeemedBits;
+    private final LongAdder redeemedCount = new LongAdder();
+
+    public TicketValiditySet(Collection<String> ticketKeys) {
+        Map<String, Integer> indexes = new HashMap<>((int) (ticketKeys.size() / 0.75f) + 1);
+        for (String key : ticketKeys) {
+            indexes.putIfAbsent(key, indexes.size());
+        }
+        this.ticketIndexes = indexes;
+        this.redeemedBits = new AtomicLongArray((indexes.size() + 63) / 64);
+    }
+
+    public Redemption redeem(String ticketKey) {
+        Integer index = ticketIndexes.get(ticketKey);
+        if (index == null) {
+            return Redemption.UNKNOWN;
+        }
+
+        int word = index >>> 6;
+        long mask = 1L << (index & 63);
+        while (true) {
+            long current = redeemedBits.get(word);
+            if ((current & mask) != 0) {
+                return Redemption.ALREADY_REDEEMED;
+            }
+            if (redeemedBits.compareAndSet(word, current, current | mask)) {
+                redeemedCount.increment();
+                return Redemption.REDEEMED;
+            }
+            // Another gate flipped a different bit of the same word, try again
+        }
+    }
+
+    public boolean contains(String ticketKey) {
+        return ticketIndexes.containsKey(ticketKey);
+    }
+
+    public int size() {
+        return ticketIndexes.size();
+    }
+
+    public long redeemed() {
+        return redeemedCount.sum();
+    }
+}
@@ -0,0 +1,54 @@
+package com.uq.jokievents.utils;
+
+import com.uq.jokievents.exceptions.PaymentException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Base64;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Checks PayPal webhook signatures locally, without calling the verify-webhook-signature API.
+ * PayPal signs transmissionId|transmissionTime|webhookId|crc32(body) with the key of the certificate at PAYPAL-CERT-URL.
+ * Where that key comes from is up to the resolver, so it can be cached in production and replaced in tests.
+ */
+public class WebhookSignatureVerifier {
+
+    private static final String SUPPORTED_ALGORITHM = "SHA256withRSA";
+
+    private final String webhookId;
+    private final Function<String, PublicKey> certificateResolver;
+
+    public WebhookSignatureVerifier(String webhookId, Function<String, PublicKey> certificateResolver) {
+        this.webhookId = webhookId;
+        this.certificateResolver = certificateResolver;
+    }
+
+    public void verify(String transmissionId, String transmissionTime, String certUrl, String authAlgo,
+                       String transmissionSig, String body) {
+        if (transmissionId == null || transmissionTime == null || certUrl == null || transmissionSig == null) {
+            throw new PaymentException("Webhook is missing its signature headers");
+        }
+        if (authAlgo != null && !SUPPORTED_ALGORITHM.equalsIgnoreCase(authAlgo)) {
+            throw new PaymentException("Unsupported webhook signature algorithm " + authAlgo);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        String signedContent = transmissionId + "|" + transmissionTime + "|" + webhookId + "|" + crc.getValue();
+
+        try {
+            Signature signature = Signature.getInstance(SUPPORTED_ALGORITHM);
+            signature.initVerify(certificateResolver.apply(certUrl));
+            signature.update(signedContent.getBytes(StandardCharsets.UTF_8));
+            if (!signature.verify(Base64.getDecoder().decode(transmissionSig))) {
+                throw new PaymentException("Webhook signature does not match");
+            }
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            throw new PaymentException("Webhook signature could not be checked: " + e.getMessage());
+        }
+    }
+}
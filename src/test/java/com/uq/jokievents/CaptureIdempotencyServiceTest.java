@@ -0,0 +1,75 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.CaptureAttemptDTO;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.model.PaymentCapture;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.repository.PaymentCaptureRepository;
+import com.uq.jokievents.service.implementation.CaptureIdempotencyServiceImpl;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CaptureIdempotencyServiceTest {
+
+    private PaymentCaptureRepository paymentCaptureRepository;
+    private MongoTemplate mongoTemplate;
+    private CaptureIdempotencyServiceImpl captureIdempotencyService;
+
+    @BeforeEach
+    public void setup() {
+        paymentCaptureRepository = mock(PaymentCaptureRepository.class);
+        mongoTemplate = mock(MongoTemplate.class);
+        captureIdempotencyService = new CaptureIdempotencyServiceImpl(paymentCaptureRepository, mongoTemplate);
+        ReflectionTestUtils.setField(captureIdempotencyService, "leaseSeconds", 60L);
+    }
+
+    // The first owner died after PayPal took the money, the retry takes the order over and does not capture again
+    @Test
+    public void testExpiredLeaseIsTakenOver() {
+        when(paymentCaptureRepository.insert(any(PaymentCapture.class))).thenThrow(new DuplicateKeyException("E11000"));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(PaymentCapture.class)))
+                .thenReturn(PaymentCapture.builder().orderId("ORDER-1").status(CaptureStatus.IN_PROGRESS).paymentCaptured(true).build());
+
+        CaptureAttemptDTO attempt = captureIdempotencyService.begin("ORDER-1");
+
+        assertTrue(attempt.acquired());
+        assertTrue(attempt.paymentCaptured());
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).findAndModify(query.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(PaymentCapture.class));
+        List<?> takeable = query.getValue().getQueryObject().get("$or", List.class);
+        assertEquals(new Document("status", CaptureStatus.FAILED), takeable.get(0));
+        Document expired = (Document) takeable.get(1);
+        assertEquals(CaptureStatus.IN_PROGRESS, expired.get("status"));
+        LocalDateTime cutoff = (LocalDateTime) expired.get("updatedAt", Document.class).get("$lt");
+        assertTrue(Duration.between(cutoff, LocalDateTime.now()).toSeconds() >= 59);
+    }
+
+    @Test
+    public void testDeclinedCaptureIsRecorded() {
+        captureIdempotencyService.recordCapture("ORDER-1", new GatewayCaptureDTO("ORDER-1", null, "DECLINED"));
+
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(PaymentCapture.class));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertEquals("DECLINED", set.get("gatewayStatus"));
+        assertEquals(false, set.get("paymentCaptured"));
+    }
+}
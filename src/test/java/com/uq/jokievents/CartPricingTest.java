@@ -0,0 +1,106 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.ShoppingCart;
+import com.uq.jokievents.utils.CartPricing;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Randomized checks of the cart math against BigDecimal. The seed is fixed so a failure can be replayed.
+ */
+public class CartPricingTest {
+
+    private static final long SEED = 20241018L;
+    private static final int RUNS = 2_000;
+
+    private static double randomPrice(Random random) {
+        // Up to 2 000 000.00 with exactly two decimals, the way prices are typed in
+        return BigDecimal.valueOf(random.nextInt(200_000_000), 2).doubleValue();
+    }
+
+    @Test
+    public void testCentsRoundTripForTwoDecimalAmounts() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < RUNS * 10; i++) {
+            long cents = random.nextInt(200_000_000);
+            double amount = BigDecimal.valueOf(cents, 2).doubleValue();
+            assertEquals(cents, CartPricing.toCents(amount), "amount " + amount);
+            assertEquals(amount, CartPricing.toAmount(cents));
+        }
+    }
+
+    @Test
+    public void testLineTotalMatchesBigDecimal() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < RUNS * 10; i++) {
+            double price = randomPrice(random);
+            int tickets = 1 + random.nextInt(50);
+            long expected = BigDecimal.valueOf(price).multiply(BigDecimal.valueOf(tickets)).movePointRight(2).longValueExact();
+            assertEquals(expected, CartPricing.lineTotalCents(price, tickets), price + " x " + tickets);
+        }
+    }
+
+    @Test
+    public void testDiscountMatchesBigDecimalAndNeverOvershoots() {
+        Random random = new Random(SEED);
+        for (int i = 0; i < RUNS * 10; i++) {
+            long total = random.nextInt(Integer.MAX_VALUE);
+            int basisPoints = random.nextInt(10_001);
+            BigDecimal discount = BigDecimal.valueOf(total).multiply(BigDecimal.valueOf(basisPoints))
+                    .divide(BigDecimal.valueOf(10_000), 0, RoundingMode.HALF_UP);
+
+            long discounted = CartPricing.applyDiscount(total, basisPoints);
+            assertEquals(total - discount.longValueExact(), discounted);
+            assertTrue(discounted >= 0 && discounted <= total);
+        }
+        assertEquals(0, CartPricing.applyDiscount(12_345, 10_000));
+        assertEquals(12_345, CartPricing.applyDiscount(12_345, 0));
+    }
+
+    @Test
+    public void testRunningTotalAlwaysEqualsTheSumOfTheLines() {
+        Random random = new Random(SEED);
+        for (int run = 0; run < RUNS; run++) {
+            ShoppingCart cart = ShoppingCart.builder().localityOrders(new ArrayList<>()).build();
+            List<LocalityOrder> lines = cart.getLocalityOrders();
+            int basisPoints = random.nextBoolean() ? 0 : CartPricing.toBasisPoints(random.nextInt(10_001) / 100.0);
+            cart.setDiscountBasisPoints(basisPoints);
+
+            // Same moves the service makes: add a line with its exact total, or remove one and subtract what it added
+            for (int step = 0; step < 40; step++) {
+                if (lines.isEmpty() || random.nextInt(3) > 0) {
+                    long lineCents = CartPricing.lineTotalCents(randomPrice(random), 1 + random.nextInt(10));
+                    LocalityOrder line = new LocalityOrder();
+                    line.setTotalPaymentAmount(CartPricing.toAmount(lineCents));
+                    lines.add(line);
+                    cart.setTotalPriceCents(cart.getTotalPriceCents() + lineCents);
+                } else {
+                    LocalityOrder removed = lines.remove(random.nextInt(lines.size()));
+                    cart.setTotalPriceCents(cart.getTotalPriceCents() - CartPricing.toCents(removed.getTotalPaymentAmount()));
+                }
+
+                BigDecimal oracle = BigDecimal.ZERO;
+                for (LocalityOrder line : lines) {
+                    oracle = oracle.add(BigDecimal.valueOf(line.getTotalPaymentAmount()));
+                }
+                assertEquals(oracle.movePointRight(2).longValueExact(), cart.getTotalPriceCents());
+                assertEquals(CartPricing.applyDiscount(cart.getTotalPriceCents(), basisPoints), cart.getTotalPriceWithDiscountCents());
+            }
+        }
+    }
+
+    @Test
+    public void testDiscountOutOfRangeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> CartPricing.toBasisPoints(100.01));
+        assertThrows(IllegalArgumentException.class, () -> CartPricing.toBasisPoints(-1));
+        assertEquals(1250, CartPricing.toBasisPoints(12.5));
+    }
+}
@@ -0,0 +1,116 @@
+package com.uq.jokievents;
+
+import com.mongodb.client.result.UpdateResult;
+import com.uq.jokievents.dtos.LoadLocalityOrdersForClient;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.ShoppingCart;
+import com.uq.jokievents.repository.*;
+import com.uq.jokievents.service.implementation.ClientServiceImpl;
+import com.uq.jokievents.service.interfaces.JwtService;
+import com.uq.jokievents.utils.CartViewCache;
+import com.uq.jokievents.utils.EmailService;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CartViewCacheTest {
+
+    private static LoadLocalityOrdersForClient order(String eventId) {
+        return new LoadLocalityOrdersForClient(null, 2, "VIP", 100.0, eventId, "Concert", "Street 1", "Armenia",
+                LocalDateTime.now().plusDays(30), "", null);
+    }
+
+    @Test
+    public void testLoadThatRacedWithAChangeIsNotCached() {
+        CartViewCache cache = new CartViewCache(100);
+        LocalDateTime now = LocalDateTime.now();
+
+        long stamp = cache.stamp("client");
+        cache.invalidateClient("client"); // The cart changed while the load was reading it
+        cache.put("client", stamp, 0, List.of(order("event")), now.plusDays(1));
+
+        assertTrue(cache.get("client", now, () -> 0).isEmpty());
+    }
+
+    @Test
+    public void testEntriesExpireAndFollowTheirEvents() {
+        CartViewCache cache = new CartViewCache(100);
+        LocalDateTime now = LocalDateTime.now();
+
+        cache.put("a", cache.stamp("a"), 0, List.of(order("event-1")), now.plusHours(1));
+        cache.put("b", cache.stamp("b"), 0, List.of(order("event-2")), now.plusHours(1));
+        assertTrue(cache.get("a", now, () -> 0).isPresent());
+        assertTrue(cache.get("a", now.plusHours(1), () -> 0).isEmpty());
+
+        cache.invalidateEvent("event-1");
+        assertTrue(cache.get("a", now, () -> 0).isEmpty());
+        assertTrue(cache.get("b", now, () -> 0).isPresent());
+    }
+
+    // Another node changed the cart, this node never saw an invalidation but the stored version tells
+    @Test
+    public void testHitIsDroppedWhenTheStoredCartMoved() {
+        CartViewCache cache = new CartViewCache(100);
+        LocalDateTime now = LocalDateTime.now();
+
+        cache.put("client", cache.stamp("client"), 4, List.of(order("event")), now.plusHours(1));
+
+        assertTrue(cache.get("client", now, () -> 4).isPresent());
+        assertTrue(cache.get("client", now, () -> 5).isEmpty());
+    }
+
+    @Test
+    public void testRepeatedCartLoadsOnlyCheckTheCartVersion() {
+        ShoppingCartRepository shoppingCartRepository = mock(ShoppingCartRepository.class);
+        EventRepository eventRepository = mock(EventRepository.class);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(ShoppingCart.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        ClientServiceImpl clientService = new ClientServiceImpl(mock(ClientRepository.class), mock(CouponRepository.class),
+                shoppingCartRepository, mock(PurchaseRepository.class), eventRepository, mock(EmailService.class),
+                mock(JwtService.class), mongoTemplate, mongoTemplate, new CartViewCache(100));
+        ReflectionTestUtils.setField(clientService, "cartViewTtlMinutes", 10L);
+
+        LocalityOrder localityOrder = new LocalityOrder("line", "event", null, 2, "VIP", 100.0);
+        ShoppingCart cart = ShoppingCart.builder().id("cart").clientId("client")
+                .localityOrders(new ArrayList<>(List.of(localityOrder))).build();
+        Event event = new Event();
+        event.setId("event");
+        event.setEventDate(LocalDateTime.now().plusDays(30));
+        when(shoppingCartRepository.findByClientId("client")).thenReturn(Optional.of(cart));
+        when(eventRepository.findAllById(any())).thenReturn(List.of(event));
+        when(mongoTemplate.findOne(any(Query.class), eq(ShoppingCart.class))).thenReturn(ShoppingCart.builder().version(0).build());
+
+        Map<String, Object> first = clientService.loadShoppingCart("client", 0, 10);
+        Map<String, Object> second = clientService.loadShoppingCart("client", 0, 10);
+
+        assertEquals(1, first.get("totalElements"));
+        assertEquals(first, second);
+        verify(shoppingCartRepository, times(1)).findByClientId("client");
+        verify(eventRepository, times(1)).findAllById(any());
+        verify(mongoTemplate, times(1)).findOne(any(Query.class), eq(ShoppingCart.class));
+
+        clientService.emptyShoppingCart("client");
+        clientService.loadShoppingCart("client", 0, 10);
+        verify(shoppingCartRepository, times(2)).findByClientId("client");
+
+        // Emptied through another node: nothing was invalidated here, the version read still sends the load to Mongo
+        when(mongoTemplate.findOne(any(Query.class), eq(ShoppingCart.class))).thenReturn(ShoppingCart.builder().version(7).build());
+        clientService.loadShoppingCart("client", 0, 10);
+        verify(shoppingCartRepository, times(3)).findByClientId("client");
+    }
+}
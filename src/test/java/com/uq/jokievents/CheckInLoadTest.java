@@ -0,0 +1,113 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.ScanResultDTO;
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.model.CheckIn;
+import com.uq.jokievents.model.Ticket;
+import com.uq.jokievents.model.enums.CheckInStatus;
+import com.uq.jokievents.model.enums.TicketStatus;
+import com.uq.jokievents.repository.CheckInRepository;
+import com.uq.jokievents.service.implementation.CheckInServiceImpl;
+import com.uq.jokievents.service.implementation.TicketTokenServiceImpl;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+// Simulates every gate of a stadium scanning at the same time, each ticket is shown twice (at two random gates)
+public class CheckInLoadTest {
+
+    private static final String EVENT_ID = "66f3b71c95dcb9591580d078";
+    private static final int PURCHASES = 20_000;
+    private static final int GATES = 32;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testManyGatesAdmitEachTicketOnce() throws Exception {
+        TicketTokenServiceImpl ticketTokenService = new TicketTokenServiceImpl();
+        ReflectionTestUtils.setField(ticketTokenService, "ticketSecret", "a-test-secret-that-is-long-enough-for-hmac");
+
+        List<Ticket> tickets = new ArrayList<>();
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < PURCHASES; i++) {
+            String purchaseId = new ObjectId().toHexString();
+            tickets.add(ticket(purchaseId, "General", null));
+            tickets.add(ticket(purchaseId, "General", null));
+            if (i % 3 == 0) {
+                tickets.add(ticket(purchaseId, "VIP", i / 3));
+            }
+        }
+        for (Ticket ticket : tickets) {
+            tokens.add(ticketTokenService.issueToken(new TicketTokenDTO(ticket.getId(), ticket.getPurchaseId(), EVENT_ID,
+                    ticket.getLocalityName(), ticket.getSeatNumber())));
+        }
+
+        CheckInRepository checkInRepository = mock(CheckInRepository.class);
+        when(checkInRepository.findByEventId(EVENT_ID)).thenReturn(List.of());
+        AtomicInteger persisted = new AtomicInteger();
+        BulkOperations checkInWrites = mock(BulkOperations.class, RETURNS_SELF);
+        when(checkInWrites.insert(anyList())).thenAnswer(invocation -> {
+            persisted.addAndGet(((List<CheckIn>) invocation.getArgument(0)).size());
+            return checkInWrites;
+        });
+
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Ticket.class))).thenReturn(tickets);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CheckIn.class)).thenReturn(checkInWrites);
+
+        CheckInServiceImpl checkInService = new CheckInServiceImpl(checkInRepository, ticketTokenService, mongoTemplate);
+        checkInService.openDoors(EVENT_ID);
+
+        // Every token appears twice in the scan stream, shuffled so the duplicates land on different gates
+        List<String> scans = new ArrayList<>(tokens);
+        scans.addAll(tokens);
+        Collections.shuffle(scans, new Random(42));
+
+        Map<CheckInStatus, AtomicInteger> results = new ConcurrentHashMap<>();
+        ExecutorService gates = Executors.newFixedThreadPool(GATES);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> gateRuns = new ArrayList<>();
+        int perGate = scans.size() / GATES + 1;
+        for (int gate = 0; gate < GATES; gate++) {
+            List<String> gateScans = scans.subList(Math.min(gate * perGate, scans.size()), Math.min((gate + 1) * perGate, scans.size()));
+            String gateName = "gate-" + gate;
+            gateRuns.add(gates.submit(() -> {
+                start.await();
+                for (String token : gateScans) {
+                    ScanResultDTO result = checkInService.scanTicket(EVENT_ID, token, gateName);
+                    results.computeIfAbsent(result.status(), status -> new AtomicInteger()).incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> gateRun : gateRuns) {
+            gateRun.get(60, TimeUnit.SECONDS);
+        }
+        gates.shutdown();
+        checkInService.closeDoors(EVENT_ID);
+
+        assertEquals(tokens.size(), results.get(CheckInStatus.ADMITTED).get());
+        assertEquals(tokens.size(), results.get(CheckInStatus.ALREADY_CHECKED_IN).get());
+        assertEquals(tokens.size(), persisted.get());
+        verify(checkInWrites, atLeast(tokens.size() / 500)).insert(anyList());
+    }
+
+    private static Ticket ticket(String purchaseId, String localityName, Integer seatNumber) {
+        return Ticket.builder().id(new ObjectId().toHexString()).purchaseId(purchaseId).eventId(EVENT_ID)
+                .localityName(localityName).seatNumber(seatNumber).status(TicketStatus.VALID).build();
+    }
+}
@@ -0,0 +1,141 @@
+package com.uq.jokievents;
+
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.model.CheckIn;
+import com.uq.jokievents.model.Ticket;
+import com.uq.jokievents.model.enums.CheckInStatus;
+import com.uq.jokievents.model.enums.TicketStatus;
+import com.uq.jokievents.repository.CheckInRepository;
+import com.uq.jokievents.service.implementation.CheckInServiceImpl;
+import com.uq.jokievents.service.implementation.TicketTokenServiceImpl;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CheckInServiceTest {
+
+    private static final String EVENT_ID = "66f3b71c95dcb9591580d078";
+    private static final String PURCHASE_ID = "6706a5101654657267419fef";
+
+    private TicketTokenServiceImpl ticketTokenService;
+    private BulkOperations checkInWrites;
+    private MongoTemplate mongoTemplate;
+    private CheckInServiceImpl checkInService;
+    private final List<Ticket> tickets = new ArrayList<>();
+    private final List<String> tokens = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        ticketTokenService = new TicketTokenServiceImpl();
+        ReflectionTestUtils.setField(ticketTokenService, "ticketSecret", "a-test-secret-that-is-long-enough-for-hmac");
+
+        for (int i = 0; i < 3; i++) {
+            Ticket ticket = Ticket.builder().id(new ObjectId().toHexString()).purchaseId(PURCHASE_ID).eventId(EVENT_ID)
+                    .localityName("Platea").seatNumber(i).status(TicketStatus.VALID).build();
+            tickets.add(ticket);
+            tokens.add(ticketTokenService.issueToken(new TicketTokenDTO(ticket.getId(), PURCHASE_ID, EVENT_ID, "Platea", i)));
+        }
+
+        CheckInRepository checkInRepository = mock(CheckInRepository.class);
+        when(checkInRepository.findByEventId(EVENT_ID)).thenReturn(List.of());
+
+        checkInWrites = mock(BulkOperations.class, RETURNS_SELF);
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.find(any(Query.class), eq(Ticket.class))).thenReturn(tickets);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, CheckIn.class)).thenReturn(checkInWrites);
+
+        checkInService = new CheckInServiceImpl(checkInRepository, ticketTokenService, mongoTemplate);
+        checkInService.openDoors(EVENT_ID);
+    }
+
+    // Three seats of one order, each QR gets one person in and only once
+    @Test
+    public void testEveryTicketOfAnOrderIsAdmittedOnce() {
+        assertEquals(CheckInStatus.ADMITTED, checkInService.scanTicket(EVENT_ID, tokens.get(0), "gate-1").status());
+        assertEquals(CheckInStatus.ALREADY_CHECKED_IN, checkInService.scanTicket(EVENT_ID, tokens.get(0), "gate-2").status());
+        assertEquals(CheckInStatus.ADMITTED, checkInService.scanTicket(EVENT_ID, tokens.get(1), "gate-2").status());
+        assertEquals(CheckInStatus.ADMITTED, checkInService.scanTicket(EVENT_ID, tokens.get(2), "gate-1").status());
+    }
+
+    // Mongo was down for the first flush, the check-ins wait in the queue for the next one
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedWritesAreRetried() {
+        tokens.forEach(token -> checkInService.scanTicket(EVENT_ID, token, "gate-1"));
+        when(checkInWrites.execute())
+                .thenThrow(new DataAccessResourceFailureException("Timed out"))
+                .thenReturn(null);
+
+        checkInService.flushCheckIns();
+        checkInService.flushCheckIns();
+
+        ArgumentCaptor<List<CheckIn>> written = ArgumentCaptor.forClass(List.class);
+        verify(checkInWrites, times(2)).insert(written.capture());
+        assertEquals(3, written.getAllValues().get(1).size());
+        verify(mongoTemplate, times(1)).updateMulti(any(Query.class), any(Update.class), eq(Ticket.class));
+    }
+
+    // The first check-in was written by an earlier try, the second one failed and is the only one written again
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDuplicateCheckInsCountAsWritten() {
+        tokens.forEach(token -> checkInService.scanTicket(EVENT_ID, token, "gate-1"));
+        List<BulkWriteError> errors = List.of(
+                new BulkWriteError(11000, "E11000 duplicate key", new BsonDocument(), 0),
+                new BulkWriteError(91, "Shutdown in progress", new BsonDocument(), 1));
+        MongoBulkWriteException failure = new MongoBulkWriteException(BulkWriteResult.acknowledged(1, 0, 0, 0, List.of(), List.of()),
+                errors, null, new ServerAddress(), Set.of());
+        when(checkInWrites.execute()).thenThrow(new BulkOperationException("Bulk write failed", failure)).thenReturn(null);
+
+        checkInService.flushCheckIns();
+        ArgumentCaptor<Query> ticketUpdates = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).updateMulti(ticketUpdates.capture(), any(Update.class), eq(Ticket.class));
+        assertEquals(List.of(tickets.get(0).getId(), tickets.get(2).getId()),
+                ticketUpdates.getValue().getQueryObject().get("id", Document.class).get("$in"));
+
+        checkInService.flushCheckIns();
+        ArgumentCaptor<List<CheckIn>> written = ArgumentCaptor.forClass(List.class);
+        verify(checkInWrites, times(2)).insert(written.capture());
+        List<CheckIn> retried = written.getAllValues().get(1);
+        assertEquals(1, retried.size());
+        assertEquals(written.getAllValues().get(0).get(1).getId(), retried.get(0).getId());
+        verify(mongoTemplate, times(2)).updateMulti(any(Query.class), any(Update.class), eq(Ticket.class));
+    }
+
+    // A second admin opening the doors must not forget who already got in
+    @Test
+    public void testReopeningKeepsTheScans() {
+        checkInService.scanTicket(EVENT_ID, tokens.get(0), "gate-1");
+
+        Map<String, Object> reopened = checkInService.openDoors(EVENT_ID);
+
+        assertEquals(1L, reopened.get("alreadyCheckedIn"));
+        assertEquals(CheckInStatus.ALREADY_CHECKED_IN, checkInService.scanTicket(EVENT_ID, tokens.get(0), "gate-2").status());
+        verify(checkInWrites, never()).insert(anyList());
+    }
+}
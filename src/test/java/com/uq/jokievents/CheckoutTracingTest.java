@@ -0,0 +1,274 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.CaptureAttemptDTO;
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.exceptions.EventException;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.model.Client;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.model.ShoppingCart;
+import com.uq.jokievents.model.Ticket;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.model.enums.TicketStatus;
+import com.uq.jokievents.repository.*;
+import com.uq.jokievents.service.implementation.PaymentServiceImpl;
+import com.uq.jokievents.service.implementation.TicketTokenServiceImpl;
+import com.uq.jokievents.service.interfaces.CaptureIdempotencyService;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import com.uq.jokievents.service.interfaces.SeatMapService;
+import com.uq.jokievents.utils.CartViewCache;
+import com.uq.jokievents.utils.EmailService;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class CheckoutTracingTest {
+
+    private static final String ORDER_ID = "ORDER-1";
+    private static final String CLIENT_ID = "6706a5101654657267419fef";
+
+    // Generous on purpose, with mocked storage they catch a stage that started doing something expensive
+    private static final Map<String, Long> BUDGETS_MS = Map.of(
+            "checkout.gateway-capture", 200L,
+            "checkout.update-event", 200L,
+            "checkout.insert-purchase", 200L,
+            "checkout.reset-cart", 200L,
+            "checkout.issue-tickets", 200L,
+            "checkout.render-receipt", 3000L,
+            "checkout.qr-code", 1000L,
+            "checkout.smtp-send", 200L);
+
+    @Test
+    public void testEveryCheckoutStageIsANestedSpanWithinBudget() throws Exception {
+        InMemoryTracing tracing = new InMemoryTracing();
+        PaymentServiceImpl paymentService = paymentService(tracing);
+        // The first run pays for class loading and JIT, only the second one is measured
+        paymentService.finishPayment(ORDER_ID, false);
+        tracing.reset();
+
+        assertEquals(CaptureStatus.COMPLETED, paymentService.finishPayment(ORDER_ID, false));
+
+        SpanData finish = tracing.span("checkout.finish");
+        assertEquals(List.of("checkout.complete-order", "checkout.fill-purchase", "checkout.gateway-capture", "checkout.load-order",
+                "checkout.reserve-seats"), tracing.childrenOf(finish));
+
+        // The stages that run on the executor still hang under the order completion
+        SpanData complete = tracing.span("checkout.complete-order");
+        assertEquals(List.of("checkout.insert-purchase", "checkout.load-client",
+                "checkout.reset-cart", "checkout.update-event", "checkout.update-event"), tracing.childrenOf(complete));
+        assertEquals(List.of("checkout.issue-tickets", "checkout.purchase-email"), tracing.childrenOf(tracing.span("checkout.fill-purchase")));
+        assertEquals(List.of("checkout.qr-code", "checkout.qr-code", "checkout.qr-code", "checkout.render-receipt", "checkout.smtp-send"),
+                tracing.childrenOf(tracing.span("checkout.purchase-email")));
+
+        for (SpanData span : tracing.spans()) {
+            assertEquals(finish.getTraceId(), span.getTraceId(), span.getName() + " is in another trace");
+            Long budget = BUDGETS_MS.get(span.getName());
+            if (budget != null) {
+                assertTrue(InMemoryTracing.millis(span) <= budget, span.getName() + " took " + InMemoryTracing.millis(span) + " ms");
+            }
+        }
+    }
+
+    // A sold out numbered locality fails the order before PayPal is asked to capture, and the seats already held go back
+    @Test
+    public void testMissingSeatsFailTheOrderBeforeCapture() {
+        InMemoryTracing tracing = new InMemoryTracing();
+        PaymentServiceImpl paymentService = paymentService(tracing);
+        SeatMapService seatMapService = (SeatMapService) ReflectionTestUtils.getField(paymentService, "seatMapService");
+        PaymentGateway paymentGateway = (PaymentGateway) ReflectionTestUtils.getField(paymentService, "paymentGateway");
+        CaptureIdempotencyService captureIdempotencyService =
+                (CaptureIdempotencyService) ReflectionTestUtils.getField(paymentService, "captureIdempotencyService");
+        when(seatMapService.claimSeats("66f3b71c95dcb9591580d078", "General", 2)).thenReturn(new int[]{4, 5});
+        when(seatMapService.claimSeats("66f3b71c95dcb9591580d079", "VIP", 1)).thenThrow(new EventException("Only 0 numbered seats left in locality VIP"));
+
+        assertThrows(EventException.class, () -> paymentService.finishPayment(ORDER_ID, false));
+
+        verify(paymentGateway, never()).captureOrder(anyString());
+        verify(seatMapService).releaseSeats("66f3b71c95dcb9591580d078", "General", new int[]{4, 5});
+        verify(captureIdempotencyService).markFailed(ORDER_ID);
+    }
+
+    // Two numbered seats and one general admission ticket, each its own document with its own QR, stored in one insert
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testOneTicketIsIssuedPerSeat() throws Exception {
+        PaymentServiceImpl paymentService = paymentService(new InMemoryTracing());
+        SeatMapService seatMapService = (SeatMapService) ReflectionTestUtils.getField(paymentService, "seatMapService");
+        MongoTemplate mongoTemplate = (MongoTemplate) ReflectionTestUtils.getField(paymentService, "mongoTemplate");
+        EmailService emailService = (EmailService) ReflectionTestUtils.getField(paymentService, "emailService");
+        when(seatMapService.claimSeats("66f3b71c95dcb9591580d078", "General", 2)).thenReturn(new int[]{4, 5});
+
+        assertEquals(CaptureStatus.COMPLETED, paymentService.finishPayment(ORDER_ID, false));
+
+        ArgumentCaptor<Collection<Ticket>> inserted = ArgumentCaptor.forClass(Collection.class);
+        verify(mongoTemplate, times(1)).insert(inserted.capture(), eq(Ticket.class));
+        List<Ticket> tickets = new ArrayList<>(inserted.getValue());
+        assertEquals(3, tickets.size());
+        assertEquals(3, tickets.stream().map(Ticket::getId).distinct().count());
+        assertEquals(Arrays.asList(4, 5, null), tickets.stream().map(Ticket::getSeatNumber).toList());
+        assertEquals(List.of("General", "General", "VIP"), tickets.stream().map(Ticket::getLocalityName).toList());
+        assertTrue(tickets.stream().allMatch(ticket -> ticket.getStatus() == TicketStatus.VALID));
+
+        ArgumentCaptor<List<String>> qrCodes = ArgumentCaptor.forClass(List.class);
+        verify(emailService).sendPurchaseEmail(anyString(), anyString(), anyString(), anyString(), qrCodes.capture());
+        assertEquals(3, qrCodes.getValue().size());
+    }
+
+    // The receipt could not be sent after the order was stored. It stays sold and completed, nothing goes back
+    @Test
+    public void testFailedReceiptDoesNotUndoThePaidOrder() throws Exception {
+        PaymentServiceImpl paymentService = paymentService(new InMemoryTracing());
+        SeatMapService seatMapService = (SeatMapService) ReflectionTestUtils.getField(paymentService, "seatMapService");
+        EmailService emailService = (EmailService) ReflectionTestUtils.getField(paymentService, "emailService");
+        CaptureIdempotencyService captureIdempotencyService =
+                (CaptureIdempotencyService) ReflectionTestUtils.getField(paymentService, "captureIdempotencyService");
+        when(seatMapService.claimSeats("66f3b71c95dcb9591580d078", "General", 2)).thenReturn(new int[]{4, 5});
+        doThrow(new IllegalStateException("SMTP is down")).when(emailService)
+                .sendPurchaseEmail(anyString(), anyString(), anyString(), anyString(), anyList());
+
+        assertEquals(CaptureStatus.COMPLETED, paymentService.finishPayment(ORDER_ID, false));
+
+        verify(seatMapService, never()).releaseSeats(anyString(), anyString(), any(int[].class));
+        verify(captureIdempotencyService).markCompleted(ORDER_ID);
+        verify(captureIdempotencyService, never()).markFailed(ORDER_ID);
+        PurchaseRepository purchaseRepository = (PurchaseRepository) ReflectionTestUtils.getField(paymentService, "purchaseRepository");
+        verify(purchaseRepository, never()).deleteById(anyString());
+    }
+
+    // What PayPal answered is saved before the attempt is marked failed, the retry knows whether the money was taken
+    @Test
+    public void testGatewayAnswerIsRecordedBeforeTheAttemptFails() {
+        PaymentServiceImpl paymentService = paymentService(new InMemoryTracing());
+        PaymentGateway paymentGateway = (PaymentGateway) ReflectionTestUtils.getField(paymentService, "paymentGateway");
+        CaptureIdempotencyService captureIdempotencyService =
+                (CaptureIdempotencyService) ReflectionTestUtils.getField(paymentService, "captureIdempotencyService");
+        GatewayCaptureDTO declined = new GatewayCaptureDTO(ORDER_ID, null, "DECLINED");
+        when(paymentGateway.captureOrder(ORDER_ID)).thenReturn(declined);
+
+        assertThrows(PaymentException.class, () -> paymentService.finishPayment(ORDER_ID, false));
+
+        InOrder inOrder = inOrder(captureIdempotencyService);
+        inOrder.verify(captureIdempotencyService).recordCapture(ORDER_ID, declined);
+        inOrder.verify(captureIdempotencyService).markFailed(ORDER_ID);
+        verify(captureIdempotencyService, never()).markCaptured(ORDER_ID);
+    }
+
+    // The purchase could not be stored. The first event was sold out by this checkout and sells again, the second one
+    // was already closed (sold out by someone else or by an admin) and stays closed
+    @Test
+    public void testRollbackOnlyReopensEventsThisCheckoutClosed() {
+        PaymentServiceImpl paymentService = paymentService(new InMemoryTracing());
+        MongoTemplate mongoTemplate = (MongoTemplate) ReflectionTestUtils.getField(paymentService, "mongoTemplate");
+        when(mongoTemplate.insert(any(Purchase.class))).thenThrow(new DataAccessResourceFailureException("Timed out"));
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), any(Class.class))).thenAnswer(invocation -> {
+            Document query = invocation.getArgument(0, Query.class).getQueryObject();
+            boolean closedHere = query.containsKey("availableForPurchase") && "66f3b71c95dcb9591580d078".equals(query.get("id"));
+            return UpdateResult.acknowledged(1, closedHere ? 1L : 0L, null);
+        });
+
+        assertThrows(LogicException.class, () -> paymentService.finishPayment(ORDER_ID, false));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(queries.capture(), updates.capture(), eq(Event.class));
+        List<Object> reopened = new ArrayList<>();
+        for (int i = 0; i < updates.getAllValues().size(); i++) {
+            if (new Document("availableForPurchase", true).equals(updates.getAllValues().get(i).getUpdateObject().get("$set"))) {
+                reopened.add(queries.getAllValues().get(i).getQueryObject().get("id"));
+            }
+        }
+        assertEquals(List.of("66f3b71c95dcb9591580d078"), reopened);
+    }
+
+    // The checkout pool is full when the purchase insert is submitted. Both events were already sold and give the
+    // tickets back, nothing is stored and the order can be retried
+    @Test
+    public void testRejectedStageFailsTheOrderBeforeTheCommitPoint() {
+        PaymentServiceImpl paymentService = paymentService(new InMemoryTracing());
+        AtomicInteger accepted = new AtomicInteger();
+        ReflectionTestUtils.setField(paymentService, "checkoutTaskExecutor", new TaskExecutorAdapter(task -> {
+            if (accepted.getAndIncrement() >= 2) {
+                throw new RejectedExecutionException("Checkout pool is full");
+            }
+            task.run();
+        }));
+        MongoTemplate mongoTemplate = (MongoTemplate) ReflectionTestUtils.getField(paymentService, "mongoTemplate");
+        CaptureIdempotencyService captureIdempotencyService =
+                (CaptureIdempotencyService) ReflectionTestUtils.getField(paymentService, "captureIdempotencyService");
+
+        assertThrows(LogicException.class, () -> paymentService.finishPayment(ORDER_ID, false));
+
+        verify(mongoTemplate, never()).insert(any(Purchase.class));
+        verify(captureIdempotencyService).markFailed(ORDER_ID);
+        verify(captureIdempotencyService, never()).markCompleted(ORDER_ID);
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, atLeastOnce()).updateFirst(any(Query.class), updates.capture(), eq(Event.class));
+        long returned = updates.getAllValues().stream()
+                .map(update -> update.getUpdateObject().get("$inc", Document.class))
+                .filter(inc -> inc != null && inc.getInteger("totalAvailablePlaces") > 0)
+                .count();
+        assertEquals(2, returned);
+    }
+
+    private PaymentServiceImpl paymentService(InMemoryTracing tracing) {
+        ArrayList<LocalityOrder> items = new ArrayList<>(List.of(
+                new LocalityOrder("a", "66f3b71c95dcb9591580d078", null, 2, "General", 90.0),
+                new LocalityOrder("b", "66f3b71c95dcb9591580d079", null, 1, "VIP", 300.0)));
+        ShoppingCart cart = ShoppingCart.builder().id("cart").clientId(CLIENT_ID).paymentGatewayId(ORDER_ID)
+                .localityOrders(items).totalPriceCents(48_000).build();
+
+        ShoppingCartRepository shoppingCartRepository = mock(ShoppingCartRepository.class);
+        when(shoppingCartRepository.findByPaymentGatewayId(ORDER_ID)).thenReturn(Optional.of(cart));
+        ClientRepository clientRepository = mock(ClientRepository.class);
+        when(clientRepository.findById(CLIENT_ID)).thenReturn(Optional.of(Client.builder().id(CLIENT_ID).name("Laura").email("laura@example.com").build()));
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findById(anyString())).thenReturn(Optional.of(Event.builder().name("Rock Night").address("Stadium")
+                .eventDate(LocalDateTime.of(2025, 3, 1, 20, 0)).build()));
+        PaymentGateway paymentGateway = mock(PaymentGateway.class);
+        when(paymentGateway.name()).thenReturn("Simulated");
+        when(paymentGateway.captureOrder(ORDER_ID)).thenReturn(new GatewayCaptureDTO(ORDER_ID, "CAP-1", "COMPLETED"));
+        CaptureIdempotencyService captureIdempotencyService = mock(CaptureIdempotencyService.class);
+        when(captureIdempotencyService.begin(ORDER_ID)).thenReturn(new CaptureAttemptDTO(true, CaptureStatus.IN_PROGRESS, false));
+        SeatMapService seatMapService = mock(SeatMapService.class);
+        when(seatMapService.claimSeats(anyString(), anyString(), anyInt())).thenReturn(new int[0]);
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), any(Class.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        TicketTokenServiceImpl ticketTokenService = new TicketTokenServiceImpl();
+        ReflectionTestUtils.setField(ticketTokenService, "ticketSecret", "a-test-secret-that-is-long-enough-for-hmac");
+
+        PaymentServiceImpl paymentService = new PaymentServiceImpl(shoppingCartRepository, mock(PurchaseRepository.class),
+                ticketTokenService, mock(EmailService.class), eventRepository, paymentGateway, clientRepository,
+                seatMapService, mongoTemplate, captureIdempotencyService, new CartViewCache(100),
+                new SimpleAsyncTaskExecutor(), new SimpleMeterRegistry(), tracing.observationRegistry());
+        ReflectionTestUtils.setField(paymentService, "completionTimeoutMs", 10_000L);
+        return paymentService;
+    }
+}
@@ -0,0 +1,196 @@
+package com.uq.jokievents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.uq.jokievents.dtos.EventImportDTO;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.enums.ImportStatus;
+import com.uq.jokievents.service.implementation.EventImportServiceImpl;
+import com.uq.jokievents.service.interfaces.ImageService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class EventImportServiceTest {
+
+    private static final String CSV_HEADER = "name,city,address,date,totalAvailablePlaces,localities,eventType,eventImageUrl,localitiesImageUrl";
+
+    private final ExecutorService workers = Executors.newFixedThreadPool(4);
+    private MongoTemplate mongoTemplate;
+    private ImageService imageService;
+    private BulkOperations bulkOperations;
+    private final List<List<Event>> insertedChunks = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        imageService = mock(ImageService.class);
+        bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Event.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenAnswer(invocation -> {
+            insertedChunks.add(invocation.getArgument(0));
+            return bulkOperations;
+        });
+        when(bulkOperations.execute()).thenAnswer(invocation -> acknowledged(insertedChunks.get(insertedChunks.size() - 1).size()));
+        when(mongoTemplate.find(any(Query.class), eq(Event.class))).thenReturn(List.of());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    public void testCsvImportRejectsBadAndExistingEvents() throws Exception {
+        when(imageService.uploadImage(anyString())).thenReturn("https://storage/event.png");
+        when(mongoTemplate.find(any(Query.class), eq(Event.class))).thenReturn(List.of(
+                Event.builder().city("Pereira").address("Calle 30").eventDate(LocalDateTime.of(2030, 6, 1, 21, 0)).build()));
+        String csv = String.join("\n",
+                CSV_HEADER,
+                "Rock al Parque,Armenia,Calle 10,2030-05-10T20:00,120,General:50000:100|VIP:150000:20:true,concert,,",
+                "Feria,Armenia,Calle 11,2030-05-11T20:00,100,General:50000:90,CONCERT,,",
+                "Salsa,Pereira,Calle 30,2030-06-01T21:00,50,General:40000:50,CONCERT,,",
+                "",
+                "Foro,Manizales,\"Cra 5, Local 2\",2030-07-01T09:00,10,Sala:0.5:10,CONFERENCE,\"data:image/png;base64,AAA\",\"data:image/png;base64,BBB\"");
+
+        EventImportDTO result = runImport(service(200, 4), "season.csv", csv);
+
+        assertEquals(ImportStatus.COMPLETED, result.status());
+        assertEquals(4, result.processed());
+        assertEquals(2, result.imported());
+        assertEquals(2, result.rejected());
+        assertTrue(result.errors().get(0).startsWith("line 3: The sum of localities"), result.errors().toString());
+        assertTrue(result.errors().get(1).startsWith("line 4: Event at that time"), result.errors().toString());
+        assertEquals(result.totalBytes(), result.bytesRead());
+
+        List<Event> inserted = insertedChunks.get(0);
+        assertEquals(List.of("Rock al Parque", "Foro"), inserted.stream().map(Event::getName).toList());
+        assertEquals("not-found.png", inserted.get(0).getEventImageUrl());
+        assertTrue(inserted.get(0).getLocalities().get(1).isNumberedSeating());
+        assertEquals("Cra 5, Local 2", inserted.get(1).getAddress());
+        assertEquals("https://storage/event.png", inserted.get(1).getLocalitiesImageUrl());
+        verify(imageService).uploadImage("data:image/png;base64,AAA");
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(Event.class)); // One lookup for the whole chunk
+    }
+
+    @Test
+    public void testJsonLinesAreWrittenInChunksAndDuplicatesInsideTheFileRejected() {
+        doReturn(acknowledged(2))
+                .doThrow(new BulkOperationException("E11000", new MongoBulkWriteException(acknowledged(1),
+                        List.of(new BulkWriteError(11000, "E11000 duplicate key city_address_date", new BsonDocument(), 1)),
+                        null, new ServerAddress(), Set.of())))
+                .doReturn(acknowledged(1))
+                .when(bulkOperations).execute();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 5; i++) {
+            String address = i == 3 ? "Calle 2" : "Calle " + i; // Same place and time as the record before it
+            lines.append("{\"name\":\"Evento ").append(i).append("\",\"city\":\"Armenia\",\"address\":\"").append(address)
+                    .append("\",\"date\":\"2030-05-10T20:00:00\",\"totalAvailablePlaces\":10,")
+                    .append("\"localities\":[{\"name\":\"General\",\"price\":1000,\"maxCapacity\":10}],\"eventType\":\"SPORTS\"}\n");
+        }
+
+        EventImportDTO result = runImport(service(2, 4), "season.jsonl", lines.toString());
+
+        assertEquals(ImportStatus.COMPLETED, result.status());
+        assertEquals(3, insertedChunks.size());
+        assertEquals(5, result.processed());
+        assertEquals(4, result.imported());
+        assertEquals(List.of("line 4: Event at that time in the same address in the same city exists"), result.errors());
+    }
+
+    // The second row is the same event as the first one, the insert rejects it and its images are not left in the bucket
+    @Test
+    public void testImagesOfRejectedRowsAreDeleted() throws Exception {
+        when(imageService.uploadImage(anyString())).thenAnswer(invocation -> {
+            String image = invocation.getArgument(0, String.class);
+            return "https://firebasestorage.googleapis.com/v0/b/bucket/o/" + image.substring(image.indexOf(',') + 1) + ".png?alt=media";
+        });
+        doThrow(new BulkOperationException("E11000", new MongoBulkWriteException(acknowledged(1),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key city_address_date", new BsonDocument(), 1)),
+                null, new ServerAddress(), Set.of())))
+                .when(bulkOperations).execute();
+        String csv = String.join("\n",
+                CSV_HEADER,
+                "Foro,Manizales,Cra 5,2030-07-01T09:00,10,Sala:1000:10,CONFERENCE,\"data:image/png;base64,AAA\",\"data:image/png;base64,BBB\"",
+                "Foro,Manizales,Cra 5,2030-07-01T09:00,10,Sala:1000:10,CONFERENCE,\"data:image/png;base64,CCC\",\"data:image/png;base64,DDD\"");
+
+        EventImportDTO result = runImport(service(50, 2), "season.csv", csv);
+
+        assertEquals(1, result.imported());
+        verify(imageService).deleteImage("CCC.png");
+        verify(imageService).deleteImage("DDD.png");
+        verify(imageService, times(2)).deleteImage(anyString());
+    }
+
+    @Test
+    public void testImageUploadsAreBounded() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        when(imageService.uploadImage(anyString())).thenAnswer(invocation -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return "https://storage/image.png";
+        });
+        StringBuilder csv = new StringBuilder(CSV_HEADER).append('\n');
+        for (int i = 0; i < 12; i++) {
+            csv.append("Evento,Armenia,Calle ").append(i)
+                    .append(",2030-05-10T20:00,10,General:1000:10,SPORTS,data:image/png;base64 AAA,data:image/png;base64 BBB\n");
+        }
+
+        EventImportDTO result = runImport(service(50, 2), "season.csv", csv.toString());
+
+        assertEquals(12, result.imported());
+        assertEquals(2, maxRunning.get());
+    }
+
+    private EventImportServiceImpl service(int chunkSize, int imageConcurrency) {
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.registerModule(new JavaTimeModule());
+        return new EventImportServiceImpl(mongoTemplate, imageService, Validation.buildDefaultValidatorFactory().getValidator(),
+                objectMapper, new TaskExecutorAdapter(workers), new SimpleMeterRegistry(), chunkSize, imageConcurrency, "not-found.png");
+    }
+
+    private static EventImportDTO runImport(EventImportServiceImpl service, String fileName, String content) {
+        EventImportDTO started = service.startImport(new MockMultipartFile("file", fileName, "text/plain",
+                content.getBytes(StandardCharsets.UTF_8)));
+        long deadline = System.currentTimeMillis() + 10_000;
+        EventImportDTO current = started;
+        while (current.finishedAt() == null && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+            current = service.getImport(started.id()).orElseThrow();
+        }
+        assertNotNull(current.finishedAt(), "The import did not finish");
+        return current;
+    }
+
+    private static BulkWriteResult acknowledged(int inserted) {
+        return BulkWriteResult.acknowledged(inserted, 0, 0, 0, List.of(), List.of());
+    }
+}
@@ -0,0 +1,122 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.CreateLocalityDTO;
+import com.uq.jokievents.dtos.HandleEventDTO;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+import com.uq.jokievents.model.enums.EventType;
+import com.uq.jokievents.repository.EventRepository;
+import com.uq.jokievents.service.implementation.AdminServiceImpl;
+import com.uq.jokievents.utils.CartViewCache;
+import com.uq.jokievents.service.interfaces.SeatMapService;
+import com.uq.jokievents.utils.SeatMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class EventInSituTest {
+
+    private static final LocalDateTime DATE = LocalDateTime.of(2030, 5, 10, 20, 0);
+
+    private EventRepository eventRepository;
+    private AdminServiceImpl adminService;
+
+    @BeforeEach
+    public void setup() {
+        eventRepository = mock(EventRepository.class);
+        adminService = new AdminServiceImpl(null, eventRepository, null, null, null, null,
+                mock(SeatMapService.class), mock(CartViewCache.class));
+        ReflectionTestUtils.setField(adminService, "imageNotFound", "not-found.png");
+    }
+
+    @Test
+    public void testAddEventChecksPlaceAndTimeInOneQuery() {
+        when(eventRepository.existsByCityAndAddressAndEventDate("Armenia", "Calle 10", DATE)).thenReturn(true);
+
+        LogicException e = assertThrows(LogicException.class, () -> adminService.addEvent(dto("Calle 10")));
+
+        assertTrue(e.getMessage().contains("same address"));
+        verify(eventRepository, never()).save(any());
+    }
+
+    @Test
+    public void testSameCityAndDateElsewhereIsAllowed() {
+        when(eventRepository.existsByCityAndAddressAndEventDate("Armenia", "Calle 20", DATE)).thenReturn(false);
+
+        assertEquals("Success", adminService.addEvent(dto("Calle 20")).getStatus());
+        verify(eventRepository).save(any(Event.class));
+    }
+
+    @Test
+    public void testConcurrentInsertIsReportedAsDuplicate() {
+        when(eventRepository.save(any(Event.class))).thenThrow(new DuplicateKeyException("E11000 city_address_date"));
+
+        LogicException e = assertThrows(LogicException.class, () -> adminService.addEvent(dto("Calle 10")));
+        assertTrue(e.getMessage().contains("same address"));
+    }
+
+    @Test
+    public void testUpdateDoesNotCollideWithItself() {
+        Event existing = Event.builder().id("event-1").city("Armenia").address("Calle 10").eventDate(DATE).build();
+        when(eventRepository.findById("event-1")).thenReturn(Optional.of(existing));
+
+        assertEquals("Success", adminService.updateEvent("event-1", dto("Calle 10")).getStatus());
+        verify(eventRepository).existsByCityAndAddressAndEventDateAndIdNot("Armenia", "Calle 10", DATE, "event-1");
+        verify(eventRepository, never()).existsByCityAndAddressAndEventDate(any(), any(), any());
+    }
+
+    @Test
+    public void testUpdateKeepsSoldTicketsAndSeats() {
+        SeatMap sold = new SeatMap(20);
+        sold.claim(3);
+        sold.claim(4);
+        Event existing = Event.builder().id("event-1").city("Armenia").address("Calle 10").eventDate(DATE).localities(List.of(
+                Locality.builder().name("General").maxCapacity(100).currentOccupancy(30).build(),
+                Locality.builder().name("VIP").maxCapacity(20).currentOccupancy(2).numberedSeating(true)
+                        .seatMap(sold.toBytes()).seatMapVersion(7).build())).build();
+        when(eventRepository.findById("event-1")).thenReturn(Optional.of(existing));
+
+        Event updated = adminService.updateEvent("event-1", new HandleEventDTO("Concierto", "Armenia", "Calle 10", DATE, 140,
+                List.of(new CreateLocalityDTO("General", 50000, 120, false), new CreateLocalityDTO("VIP", 150000, 10, true),
+                        new CreateLocalityDTO("Palco", 300000, 10, true)), "", "", EventType.CONCERT)).getData();
+
+        assertEquals(108, updated.getTotalAvailablePlaces());
+        assertEquals(30, updated.getLocalities("General").getCurrentOccupancy());
+        Locality vip = updated.getLocalities("VIP");
+        assertEquals(2, vip.getCurrentOccupancy());
+        assertEquals(8, vip.getSeatMapVersion());
+        assertArrayEquals(new int[]{3, 2, 5}, SeatMap.fromBytes(10, vip.getSeatMap()).runLengths());
+        assertEquals(0, updated.getLocalities("Palco").getCurrentOccupancy());
+    }
+
+    @Test
+    public void testUpdateCannotDropSoldSeats() {
+        SeatMap sold = new SeatMap(20);
+        sold.claim(15);
+        Event existing = Event.builder().id("event-1").city("Armenia").address("Calle 10").eventDate(DATE).localities(List.of(
+                Locality.builder().name("VIP").maxCapacity(20).currentOccupancy(1).numberedSeating(true).seatMap(sold.toBytes()).build()))
+                .build();
+        when(eventRepository.findById("event-1")).thenReturn(Optional.of(existing));
+
+        LogicException e = assertThrows(LogicException.class, () -> adminService.updateEvent("event-1", new HandleEventDTO("Concierto",
+                "Armenia", "Calle 10", DATE, 10, List.of(new CreateLocalityDTO("VIP", 150000, 10, true)), "", "", EventType.CONCERT)));
+
+        assertTrue(e.getMessage().contains("Seat 15"), e.getMessage());
+        verify(eventRepository, never()).save(any());
+    }
+
+    private static HandleEventDTO dto(String address) {
+        return new HandleEventDTO("Concierto", "Armenia", address, DATE, 100,
+                List.of(new CreateLocalityDTO("General", 50000, 100, false)), "", "", EventType.CONCERT);
+    }
+}
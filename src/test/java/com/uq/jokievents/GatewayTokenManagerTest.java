@@ -0,0 +1,81 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.AccessTokenDTO;
+import com.uq.jokievents.utils.GatewayTokenManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GatewayTokenManagerTest {
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        GatewayTokenManager manager = new GatewayTokenManager(() -> {
+            Thread.sleep(200);
+            return new AccessTokenDTO("Bearer token-" + fetches.incrementAndGet(), 32400);
+        }, 300_000, 30_000, 5000);
+
+        ExecutorService callers = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(callers.submit(manager::getAuthorization));
+            }
+            for (Future<String> result : results) {
+                assertEquals("Bearer token-1", result.get());
+            }
+            assertEquals(1, fetches.get());
+        } finally {
+            callers.shutdownNow();
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testTokenIsRefreshedBeforeItExpires() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch refreshed = new CountDownLatch(2);
+        // 1 second tokens, refreshed at half their life, so the second fetch happens in the background
+        GatewayTokenManager manager = new GatewayTokenManager(() -> {
+            refreshed.countDown();
+            return new AccessTokenDTO("Bearer token-" + fetches.incrementAndGet(), 1);
+        }, 900, 0, 5000);
+        try {
+            manager.start();
+            assertTrue(refreshed.await(3, TimeUnit.SECONDS));
+            int before = fetches.get();
+            assertTrue(manager.getAuthorization().startsWith("Bearer token-"));
+            assertEquals(before, fetches.get(), "A valid token should not be fetched again on the request path");
+        } finally {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void testExpiredOrRevokedTokenIsReplaced() {
+        AtomicInteger fetches = new AtomicInteger();
+        AtomicLong now = new AtomicLong();
+        GatewayTokenManager manager = new GatewayTokenManager(() -> new AccessTokenDTO("Bearer token-" + fetches.incrementAndGet(), 100),
+                10_000, 5_000, 5000, now::get);
+        try {
+            assertEquals("Bearer token-1", manager.getAuthorization());
+            now.addAndGet(94_000);
+            assertEquals("Bearer token-1", manager.getAuthorization());
+            now.addAndGet(2_000); // Inside the safety margin
+            assertEquals("Bearer token-2", manager.getAuthorization());
+
+            manager.invalidate("Bearer token-2");
+            assertEquals("Bearer token-3", manager.getAuthorization());
+            manager.invalidate("Bearer token-2"); // Stale 401, the new token stays
+            assertEquals("Bearer token-3", manager.getAuthorization());
+        } finally {
+            manager.shutdown();
+        }
+    }
+}
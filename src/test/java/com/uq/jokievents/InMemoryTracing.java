@@ -0,0 +1,69 @@
+package com.uq.jokievents;
+
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.tracing.handler.DefaultTracingObservationHandler;
+import io.micrometer.tracing.otel.bridge.OtelCurrentTraceContext;
+import io.micrometer.tracing.otel.bridge.OtelTracer;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The same Observation to OpenTelemetry bridge the app runs with, except finished spans are kept in memory so a
+ * test can look at the tree and at how long each stage took.
+ */
+public class InMemoryTracing {
+
+    private final InMemorySpanExporter exporter = InMemorySpanExporter.create();
+    private final ObservationRegistry observationRegistry = ObservationRegistry.create();
+
+    public InMemoryTracing() {
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+        OtelTracer tracer = new OtelTracer(tracerProvider.get("jokievents-test"), new OtelCurrentTraceContext(), event -> { });
+        observationRegistry.observationConfig().observationHandler(new DefaultTracingObservationHandler(tracer));
+    }
+
+    public ObservationRegistry observationRegistry() {
+        return observationRegistry;
+    }
+
+    public void reset() {
+        exporter.reset();
+    }
+
+    public List<SpanData> spans() {
+        return exporter.getFinishedSpanItems();
+    }
+
+    public List<SpanData> spans(String name) {
+        return spans().stream().filter(span -> span.getName().equals(name)).toList();
+    }
+
+    public SpanData span(String name) {
+        List<SpanData> named = spans(name);
+        if (named.size() != 1) {
+            fail("Expected one " + name + " span, found " + named.size());
+        }
+        return named.get(0);
+    }
+
+    public List<String> childrenOf(SpanData parent) {
+        return spans().stream()
+                .filter(span -> span.getParentSpanId().equals(parent.getSpanId()))
+                .map(SpanData::getName)
+                .sorted()
+                .toList();
+    }
+
+    public static long millis(SpanData span) {
+        return TimeUnit.NANOSECONDS.toMillis(span.getEndEpochNanos() - span.getStartEpochNanos());
+    }
+}
@@ -0,0 +1,52 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.config.MetricsConfig;
+import com.uq.jokievents.repository.CouponRepository;
+import com.uq.jokievents.utils.EmailService;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+
+public class MetricsTest {
+
+    @Test
+    public void testMailsAreTimedByTypeAndOutcome() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        JavaMailSender mailSender = mock(JavaMailSender.class);
+        EmailService emailService = new EmailService(mailSender, mock(CouponRepository.class), registry);
+
+        emailService.sendVerificationMail("someone@example.com", "123456");
+        doThrow(new MailSendException("SMTP is down")).when(mailSender).send(any(SimpleMailMessage.class));
+        assertThrows(MailSendException.class, () -> emailService.sendRecuperationEmail("someone@example.com", "654321"));
+
+        assertEquals(1, registry.get("email.send").tags("type", "verification", "outcome", "success").timer().count());
+        assertEquals(1, registry.get("email.send").tags("type", "recovery", "outcome", "failure").timer().count());
+    }
+
+    @Test
+    public void testRequestAndRepositoryTimersGetHistograms() {
+        MeterFilter filter = new MetricsConfig().latencyHistograms();
+
+        assertTrue(histogramOf(filter, "http.server.requests"));
+        assertTrue(histogramOf(filter, "spring.data.repository.invocations"));
+        assertTrue(histogramOf(filter, "mongodb.driver.commands"));
+        assertFalse(histogramOf(filter, "something.else"));
+    }
+
+    private static boolean histogramOf(MeterFilter filter, String name) {
+        Meter.Id id = new Meter.Id(name, Tags.empty(), null, null, Meter.Type.TIMER);
+        DistributionStatisticConfig config = filter.configure(id, DistributionStatisticConfig.NONE);
+        return Boolean.TRUE.equals(config.isPercentileHistogram());
+    }
+}
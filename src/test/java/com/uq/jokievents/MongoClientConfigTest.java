@@ -0,0 +1,97 @@
+package com.uq.jokievents;
+
+import com.mongodb.MongoClientSettings;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.uq.jokievents.config.MongoClientConfig;
+import com.uq.jokievents.utils.MongoPoolWaitListener;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MongoClientConfigTest {
+
+    private final MongoClientConfig config = new MongoClientConfig();
+    private MongoDatabaseFactory databaseFactory;
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    public void setup() {
+        ReflectionTestUtils.setField(config, "maxPoolSize", 50);
+        ReflectionTestUtils.setField(config, "minPoolSize", 5);
+        ReflectionTestUtils.setField(config, "maxWaitMs", 2000L);
+        ReflectionTestUtils.setField(config, "maxConnecting", 4);
+        ReflectionTestUtils.setField(config, "maxIdleMs", 300000L);
+        ReflectionTestUtils.setField(config, "catalogReadPreference", "secondaryPreferred");
+        ReflectionTestUtils.setField(config, "checkoutWriteConcern", "majority");
+        databaseFactory = mock(MongoDatabaseFactory.class);
+        when(databaseFactory.getExceptionTranslator()).thenReturn(new MongoExceptionTranslator());
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, new MongoMappingContext());
+    }
+
+    @Test
+    public void testTemplatesPerPurpose() {
+        MongoTemplate primary = config.mongoTemplate(databaseFactory, converter);
+        MongoTemplate catalog = config.catalogMongoTemplate(databaseFactory, converter);
+        MongoTemplate checkout = config.checkoutMongoTemplate(databaseFactory, converter);
+
+        assertFalse(primary.hasReadPreference());
+        assertNull(ReflectionTestUtils.getField(primary, "writeConcern"));
+        assertEquals(ReadPreference.secondaryPreferred(), catalog.getReadPreference());
+        assertFalse(checkout.hasReadPreference());
+        assertEquals(WriteConcern.MAJORITY, ReflectionTestUtils.getField(checkout, "writeConcern"));
+    }
+
+    @Test
+    public void testUnknownWriteConcernFailsAtStartup() {
+        ReflectionTestUtils.setField(config, "checkoutWriteConcern", "everyone");
+        assertThrows(IllegalArgumentException.class, () -> config.checkoutMongoTemplate(databaseFactory, converter));
+    }
+
+    @Test
+    public void testPoolSettingsAndWaitTimer() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MongoClientSettings.Builder builder = MongoClientSettings.builder();
+        config.mongoPoolCustomizer(meterRegistry).customize(builder);
+        ConnectionPoolSettings pool = builder.build().getConnectionPoolSettings();
+
+        assertEquals(50, pool.getMaxSize());
+        assertEquals(5, pool.getMinSize());
+        assertEquals(2000, pool.getMaxWaitTime(TimeUnit.MILLISECONDS));
+        assertEquals(4, pool.getMaxConnecting());
+        assertTrue(pool.getConnectionPoolListeners().stream().anyMatch(MongoPoolWaitListener.class::isInstance));
+
+        ServerId serverId = new ServerId(new ClusterId(), new ServerAddress("db1", 27017));
+        MongoPoolWaitListener listener = new MongoPoolWaitListener(meterRegistry);
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId), 1, TimeUnit.MILLISECONDS.toNanos(3)));
+        listener.connectionCheckedOut(new ConnectionCheckedOutEvent(new ConnectionId(serverId), 2, TimeUnit.MILLISECONDS.toNanos(5)));
+        listener.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(serverId, 3,
+                ConnectionCheckOutFailedEvent.Reason.TIMEOUT, TimeUnit.MILLISECONDS.toNanos(2000)));
+
+        Timer acquired = meterRegistry.get("mongodb.driver.pool.wait").tags("server.address", "db1:27017", "outcome", "acquired").timer();
+        assertEquals(2, acquired.count());
+        assertEquals(8, acquired.totalTime(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(1, meterRegistry.get("mongodb.driver.pool.wait").tag("outcome", "timeout").timer().count());
+    }
+}
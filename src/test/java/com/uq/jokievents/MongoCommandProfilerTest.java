@@ -0,0 +1,99 @@
+package com.uq.jokievents;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.uq.jokievents.dtos.SlowQueryDTO;
+import com.uq.jokievents.utils.MongoCommandProfiler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MongoCommandProfilerTest {
+
+    private static final ConnectionDescription CONNECTION = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+    private static final Document COLLSCAN_EXPLAIN = Document.parse("""
+            {queryPlanner: {winningPlan: {stage: "COLLSCAN", filter: {paymentGatewayId: {$eq: "x"}}}},
+             executionStats: {nReturned: 1, totalDocsExamined: 48000}}""");
+
+    private int requestId;
+
+    @Test
+    public void testSlowCollectionScanIsExplainedAndReported() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AtomicInteger explains = new AtomicInteger();
+        MongoCommandProfiler profiler = new MongoCommandProfiler((database, command) -> {
+            explains.incrementAndGet();
+            assertFalse(command.containsKey("$db"));
+            return COLLSCAN_EXPLAIN;
+        }, 100, 60_000, 100, meterRegistry);
+
+        // Same shape with other values, only the last one is slow
+        run(profiler, "find", "{find: 'shoppingCarts', filter: {paymentGatewayId: 'A'}, $db: 'jokievents'}", "{cursor: {firstBatch: [{}]}}", 5);
+        run(profiler, "find", "{find: 'shoppingCarts', filter: {paymentGatewayId: 'B'}, $db: 'jokievents'}", "{cursor: {firstBatch: [{}]}}", 250);
+        // Fast queries never show up
+        run(profiler, "find", "{find: 'events', filter: {_id: 'x'}, $db: 'jokievents'}", "{cursor: {firstBatch: [{}]}}", 2);
+
+        SlowQueryDTO slow = awaitExplained(profiler);
+        assertEquals("shoppingCarts", slow.collection());
+        assertEquals("find shoppingCarts {paymentGatewayId: ?}", slow.shape());
+        assertEquals(2, slow.executions());
+        assertEquals(1, slow.slowExecutions());
+        assertEquals(48000L, slow.docsExamined());
+        assertEquals(1L, slow.docsReturned());
+        assertTrue(slow.collectionScan());
+        assertEquals("COLLSCAN", slow.plan());
+        assertEquals(1, profiler.slowQueries(10).size());
+        assertEquals(1, explains.get());
+        assertEquals(1, meterRegistry.get("mongodb.collection.scans").tag("collection", "shoppingCarts").counter().count());
+        profiler.shutdown();
+    }
+
+    @Test
+    public void testWritesAreTimedButNotExplained() {
+        AtomicInteger explains = new AtomicInteger();
+        MongoCommandProfiler profiler = new MongoCommandProfiler((database, command) -> {
+            explains.incrementAndGet();
+            return COLLSCAN_EXPLAIN;
+        }, 100, 60_000, 100, new SimpleMeterRegistry());
+
+        run(profiler, "update", "{update: 'events', updates: [{q: {city: 'Armenia', eventDate: {$gte: 1}}, u: {$set: {a: 1}}}], $db: 'jokievents'}", "{n: 3}", 300);
+
+        List<SlowQueryDTO> slow = profiler.slowQueries(10);
+        assertEquals(1, slow.size());
+        assertEquals("update events {city: ?, eventDate: {$gte: ?}}", slow.get(0).shape());
+        assertEquals(3L, slow.get(0).docsReturned());
+        assertNull(slow.get(0).docsExamined());
+        assertEquals(0, explains.get());
+        profiler.shutdown();
+    }
+
+    private void run(MongoCommandProfiler profiler, String commandName, String command, String response, long millis) {
+        int id = ++requestId;
+        profiler.commandStarted(new CommandStartedEvent(null, id, id, CONNECTION, "jokievents", commandName, BsonDocument.parse(command)));
+        profiler.commandSucceeded(new CommandSucceededEvent(null, id, id, CONNECTION, "jokievents", commandName,
+                BsonDocument.parse(response), TimeUnit.MILLISECONDS.toNanos(millis)));
+    }
+
+    private static SlowQueryDTO awaitExplained(MongoCommandProfiler profiler) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (System.currentTimeMillis() < deadline) {
+            List<SlowQueryDTO> slow = profiler.slowQueries(10);
+            if (!slow.isEmpty() && slow.get(0).plan() != null) {
+                return slow.get(0);
+            }
+            Thread.sleep(10);
+        }
+        return fail("The slow query was never explained");
+    }
+}
@@ -0,0 +1,103 @@
+package com.uq.jokievents;
+
+import com.mongodb.client.result.UpdateResult;
+import com.uq.jokievents.utils.MongoDataMigrations;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class MongoDataMigrationsTest {
+
+    private MongoTemplate mongoTemplate;
+    private MongoDataMigrations migrations;
+
+    @BeforeEach
+    public void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), anyString())).thenAnswer(invocation -> Stream.empty());
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), anyString()))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(mongoTemplate.updateMulti(any(Query.class), any(UpdateDefinition.class), anyString()))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        migrations = new MongoDataMigrations(mongoTemplate, true);
+    }
+
+    @Test
+    public void testLegacyCartTotalsMoveToCents() {
+        ObjectId couponCart = new ObjectId();
+        ObjectId plainCart = new ObjectId();
+        ObjectId factorlessCart = new ObjectId();
+        when(mongoTemplate.stream(any(Query.class), eq(Document.class), eq("shopping-carts"))).thenAnswer(invocation -> Stream.of(
+                new Document("_id", couponCart).append("totalPrice", 1500.29).append("totalPriceWithDiscount", 1275.2465)
+                        .append("appliedDiscountPercent", 0.85),
+                new Document("_id", plainCart).append("totalPrice", 0.29).append("totalPriceWithDiscount", 0.29)
+                        .append("appliedDiscountPercent", 1.0),
+                new Document("_id", factorlessCart).append("totalPrice", 200.0).append("totalPriceWithDiscount", 180.0)));
+
+        migrations.migrate();
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(3)).updateFirst(queries.capture(), updates.capture(), eq("shopping-carts"));
+        assertEquals(couponCart, queries.getAllValues().get(0).getQueryObject().get("_id"));
+        assertEquals(150_029, cents(updates, 0));
+        assertEquals(1500, basisPoints(updates, 0));
+        assertEquals(29, cents(updates, 1)); // 0.29 * 100 is 28.999... in a double
+        assertEquals(0, basisPoints(updates, 1));
+        assertEquals(20_000, cents(updates, 2));
+        assertEquals(1000, basisPoints(updates, 2)); // Worked out from the two totals
+        assertEquals(List.of("totalPrice", "totalPriceWithDiscount", "appliedDiscountPercent"),
+                List.copyOf(updates.getValue().getUpdateObject().get("$unset", Document.class).keySet()));
+    }
+
+    @Test
+    public void testEmptyIdCardsAreRemoved() {
+        migrations.migrate();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateMulti(query.capture(), update.capture(), eq("clients"));
+        assertEquals(new Document("idCard", ""), query.getValue().getQueryObject());
+        assertEquals(new Document("$unset", new Document("idCard", 1)), update.getValue().getUpdateObject());
+    }
+
+    @Test
+    public void testOwnerlessCartsGetTheirClient() {
+        ObjectId ownedCart = new ObjectId();
+        ObjectId orphanCart = new ObjectId();
+        ObjectId client = new ObjectId();
+        when(mongoTemplate.stream(argThat(query -> query != null && query.getQueryObject().containsKey("clientId")), eq(Document.class), eq("shopping-carts")))
+                .thenAnswer(invocation -> Stream.of(new Document("_id", ownedCart), new Document("_id", orphanCart)));
+        when(mongoTemplate.findOne(any(Query.class), eq(Document.class), eq("clients"))).thenAnswer(invocation ->
+                invocation.getArgument(0, Query.class).getQueryObject().get("idShoppingCart").equals(ownedCart.toHexString())
+                        ? new Document("_id", client) : null);
+
+        migrations.migrate();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> update = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq("shopping-carts"));
+        assertEquals(ownedCart, query.getValue().getQueryObject().get("_id"));
+        assertEquals(new Document("clientId", client.toHexString()), update.getValue().getUpdateObject().get("$set"));
+    }
+
+    private static long cents(ArgumentCaptor<UpdateDefinition> updates, int index) {
+        return updates.getAllValues().get(index).getUpdateObject().get("$set", Document.class).getLong("totalPriceCents");
+    }
+
+    private static int basisPoints(ArgumentCaptor<UpdateDefinition> updates, int index) {
+        return updates.getAllValues().get(index).getUpdateObject().get("$set", Document.class).getInteger("discountBasisPoints");
+    }
+}
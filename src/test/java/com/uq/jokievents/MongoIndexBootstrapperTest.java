@@ -0,0 +1,122 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.IndexStatusDTO;
+import com.uq.jokievents.model.*;
+import com.uq.jokievents.model.enums.IndexStatus;
+import com.uq.jokievents.utils.MongoIndexBootstrapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class MongoIndexBootstrapperTest {
+
+    private final Map<String, IndexOperations> indexOpsByCollection = new HashMap<>();
+
+    @Test
+    public void testMissingIndexesAreBuiltAndExistingOnesKept() {
+        MongoTemplate mongoTemplate = mongoTemplate();
+        // clients already has the email index under another name, and a non unique idCard index
+        when(indexOps("clients").getIndexInfo()).thenReturn(List.of(
+                IndexInfo.indexInfoOf(new Document("name", "email_1").append("key", new Document("email", 1)).append("unique", true)),
+                IndexInfo.indexInfoOf(new Document("name", "idCard_1").append("key", new Document("idCard", 1)))));
+
+        MongoIndexBootstrapper bootstrapper = new MongoIndexBootstrapper(mongoTemplate, new TaskExecutorAdapter(new SyncTaskExecutor()),
+                new SimpleMeterRegistry(), "create");
+        List<IndexStatusDTO> report = bootstrapper.bootstrap(true);
+
+        assertEquals(IndexStatus.PRESENT, find(report, "clients", "email:1").status());
+        IndexStatusDTO idCard = find(report, "clients", "idCard:1");
+        assertEquals(IndexStatus.MISSING, idCard.status());
+        assertTrue(idCard.detail().contains("not unique"));
+
+        IndexStatusDTO purchases = find(report, "purchases", "clientId:1, purchaseDate:-1");
+        assertEquals(IndexStatus.CREATED, purchases.status());
+        assertEquals(IndexStatus.CREATED, find(report, "events", "city:1, eventDate:1, eventType:1").status());
+        assertTrue(find(report, "shopping-carts", "clientId:1").unique());
+        verify(indexOps("purchases"), atLeastOnce()).ensureIndex(any(IndexDefinition.class));
+        verify(indexOps("clients"), never()).ensureIndex(any(IndexDefinition.class));
+    }
+
+    // An idCard index built before it was partial still makes every client without an ID card collide
+    @Test
+    public void testIndexWithAnotherPartialFilterIsReported() {
+        MongoTemplate mongoTemplate = mongoTemplate();
+        when(indexOps("clients").getIndexInfo()).thenReturn(List.of(
+                IndexInfo.indexInfoOf(new Document("name", "idCard").append("key", new Document("idCard", 1)).append("unique", true))));
+
+        List<IndexStatusDTO> report = new MongoIndexBootstrapper(mongoTemplate, new TaskExecutorAdapter(new SyncTaskExecutor()),
+                new SimpleMeterRegistry(), "create").bootstrap(true);
+
+        IndexStatusDTO idCard = find(report, "clients", "idCard:1");
+        assertEquals(IndexStatus.MISSING, idCard.status());
+        assertTrue(idCard.detail().contains("partial filter"), idCard.detail());
+
+        when(indexOps("clients").getIndexInfo()).thenReturn(List.of(
+                IndexInfo.indexInfoOf(new Document("name", "idCard").append("key", new Document("idCard", 1)).append("unique", true)
+                        .append("partialFilterExpression", new Document("idCard", new Document("$gt", ""))))));
+        report = new MongoIndexBootstrapper(mongoTemplate, new TaskExecutorAdapter(new SyncTaskExecutor()),
+                new SimpleMeterRegistry(), "create").bootstrap(true);
+        assertEquals(IndexStatus.PRESENT, find(report, "clients", "idCard:1").status());
+    }
+
+    @Test
+    public void testVerifyModeOnlyReports() {
+        MongoTemplate mongoTemplate = mongoTemplate();
+        IndexOperations eventIndexOps = indexOps("events");
+        doThrow(new IllegalStateException("should not build")).when(eventIndexOps).ensureIndex(any(IndexDefinition.class));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        MongoIndexBootstrapper bootstrapper = new MongoIndexBootstrapper(mongoTemplate, new TaskExecutorAdapter(new SyncTaskExecutor()),
+                meterRegistry, "verify");
+        bootstrapper.onApplicationReady();
+
+        List<IndexStatusDTO> report = bootstrapper.getLastReport();
+        assertFalse(report.isEmpty());
+        assertTrue(report.stream().allMatch(index -> index.status() == IndexStatus.MISSING));
+        assertEquals(report.size(), meterRegistry.get("mongodb.indexes.missing").gauge().value());
+    }
+
+    private MongoTemplate mongoTemplate() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        mappingContext.setInitialEntitySet(Set.of(Admin.class, CheckIn.class, Client.class, Coupon.class, Event.class,
+                PaymentCapture.class, Purchase.class, ShoppingCart.class, Ticket.class));
+        mappingContext.afterPropertiesSet();
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getConverter()).thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext));
+        when(mongoTemplate.indexOps(anyString())).thenAnswer(invocation -> indexOps(invocation.getArgument(0)));
+        return mongoTemplate;
+    }
+
+    private IndexOperations indexOps(String collection) {
+        return indexOpsByCollection.computeIfAbsent(collection, name -> {
+            IndexOperations indexOps = mock(IndexOperations.class);
+            when(indexOps.getIndexInfo()).thenReturn(List.of());
+            return indexOps;
+        });
+    }
+
+    private static IndexStatusDTO find(List<IndexStatusDTO> report, String collection, String keys) {
+        return report.stream()
+                .filter(index -> index.collection().equals(collection) && index.keys().equals(keys))
+                .findFirst()
+                .orElseGet(() -> fail("No " + keys + " index declared on " + collection));
+    }
+}
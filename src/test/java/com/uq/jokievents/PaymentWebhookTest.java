@@ -0,0 +1,271 @@
+package com.uq.jokievents;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uq.jokievents.controller.PaymentController;
+import com.uq.jokievents.dtos.WebhookEventDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.model.enums.CaptureStatus;
+import com.uq.jokievents.service.interfaces.CaptureIdempotencyService;
+import com.uq.jokievents.service.interfaces.PaymentService;
+import com.uq.jokievents.utils.ApiResponse;
+import com.uq.jokievents.utils.PaymentWebhookProcessor;
+import com.uq.jokievents.utils.WebhookSignatureVerifier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PaymentWebhookTest {
+
+    private static final String WEBHOOK_ID = "WH-TEST-1";
+    private static final String CERT_URL = "https://api.sandbox.paypal.com/v1/notifications/certs/CERT-TEST";
+
+    private KeyPair keyPair;
+    private PaymentService paymentService;
+    private PaymentWebhookProcessor processor;
+    private PaymentController controller;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+
+        paymentService = mock(PaymentService.class);
+        processor = new PaymentWebhookProcessor(event -> {
+            try {
+                paymentService.finishPayment(event.orderId(), event.eventType().startsWith("PAYMENT.CAPTURE"));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, 2, 20, 100);
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(WEBHOOK_ID, certUrl -> keyPair.getPublic());
+        controller = new PaymentController(paymentService, mock(CaptureIdempotencyService.class), verifier, processor, new ObjectMapper());
+        ReflectionTestUtils.setField(controller, "webhookEnabled", true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        processor.shutdown();
+    }
+
+    @Test
+    public void testSignedEventsCompleteTheirOrders() throws Exception {
+        CountDownLatch done = new CountDownLatch(2);
+        when(paymentService.finishPayment(anyString(), anyBoolean())).thenAnswer(invocation -> {
+            done.countDown();
+            return null;
+        });
+
+        assertEquals(HttpStatus.OK, send("WH-1", orderApproved("ORDER-1")).getStatusCode());
+        assertEquals(HttpStatus.OK, send("WH-2", captureCompleted("ORDER-2")).getStatusCode());
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        verify(paymentService).finishPayment("ORDER-1", false);
+        verify(paymentService).finishPayment("ORDER-2", true);
+    }
+
+    @Test
+    public void testTamperedBodyIsRejected() throws Exception {
+        String body = orderApproved("ORDER-1");
+        Map<String, String> headers = sign("WH-1", body);
+
+        ResponseEntity<ApiResponse<String>> response = controller.handleWebhook(headers.get("id"), headers.get("time"),
+                CERT_URL, "SHA256withRSA", headers.get("sig"), body.replace("ORDER-1", "ORDER-666"));
+
+        assertEquals(HttpStatus.UNAUTHORIZED, response.getStatusCode());
+        Thread.sleep(200);
+        verify(paymentService, never()).finishPayment(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testUnhandledEventsAreAcknowledged() throws Exception {
+        String body = "{\"id\":\"WH-9\",\"event_type\":\"BILLING.PLAN.CREATED\",\"resource\":{\"id\":\"P-1\"}}";
+
+        assertEquals(HttpStatus.OK, send("WH-9", body).getStatusCode());
+        Thread.sleep(200);
+        verify(paymentService, never()).finishPayment(anyString(), anyBoolean());
+    }
+
+    // With paypal.webhook.enabled=false even a properly signed event is turned away and nothing is completed
+    @Test
+    public void testDisabledWebhookIsNotFound() throws Exception {
+        ReflectionTestUtils.setField(controller, "webhookEnabled", false);
+
+        assertEquals(HttpStatus.NOT_FOUND, send("WH-1", orderApproved("ORDER-1")).getStatusCode());
+        Thread.sleep(200);
+        verify(paymentService, never()).finishPayment(anyString(), anyBoolean());
+    }
+
+    @Test
+    public void testBatchCollapsesEventsOfTheSameOrder() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<WebhookEventDTO> handled = Collections.synchronizedList(new ArrayList<>());
+        PaymentWebhookProcessor single = new PaymentWebhookProcessor(event -> {
+            handled.add(event);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 50, 100);
+        try {
+            // The first event keeps the only worker busy so the rest pile up into one batch
+            single.submit(new WebhookEventDTO("WH-0", "CHECKOUT.ORDER.APPROVED", "ORDER-0"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            single.submit(new WebhookEventDTO("WH-1", "CHECKOUT.ORDER.APPROVED", "ORDER-1"));
+            single.submit(new WebhookEventDTO("WH-2", "PAYMENT.CAPTURE.COMPLETED", "ORDER-1"));
+            single.submit(new WebhookEventDTO("WH-3", "CHECKOUT.ORDER.APPROVED", "ORDER-1"));
+            release.countDown();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (handled.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(100);
+            assertEquals(2, handled.size());
+            assertEquals("WH-2", handled.get(1).id());
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void testFullQueueAsksPayPalToRetry() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PaymentWebhookProcessor tiny = new PaymentWebhookProcessor(event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, 1, 1);
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(WEBHOOK_ID, certUrl -> keyPair.getPublic());
+        PaymentController busy = new PaymentController(paymentService, mock(CaptureIdempotencyService.class), verifier, tiny, new ObjectMapper());
+        ReflectionTestUtils.setField(busy, "webhookEnabled", true);
+        try {
+            HttpStatus last = HttpStatus.OK;
+            for (int i = 0; i < 5 && last == HttpStatus.OK; i++) {
+                String body = orderApproved("ORDER-" + i);
+                Map<String, String> headers = sign("WH-" + i, body);
+                last = (HttpStatus) busy.handleWebhook(headers.get("id"), headers.get("time"), CERT_URL, "SHA256withRSA",
+                        headers.get("sig"), body).getStatusCode();
+            }
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, last);
+        } finally {
+            release.countDown();
+            tiny.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedCompletionIsRetriedWithBackoff() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(1);
+        PaymentWebhookProcessor retrying = new PaymentWebhookProcessor(event -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new PaymentException("Mongo is down");
+            }
+            done.countDown();
+        }, 1, 10, 10, 5, 10);
+        try {
+            retrying.submit(new WebhookEventDTO("WH-1", "PAYMENT.CAPTURE.COMPLETED", "ORDER-1"));
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(3, calls.get());
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    @Test
+    public void testRetriesStopAfterMaxAttempts() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        PaymentWebhookProcessor retrying = new PaymentWebhookProcessor(event -> {
+            calls.incrementAndGet();
+            throw new PaymentException("Order is gone");
+        }, 1, 10, 10, 3, 5);
+        try {
+            retrying.submit(new WebhookEventDTO("WH-1", "CHECKOUT.ORDER.APPROVED", "ORDER-1"));
+
+            Thread.sleep(500);
+            assertEquals(3, calls.get());
+        } finally {
+            retrying.shutdown();
+        }
+    }
+
+    // The webhook never made it, or the worker gave up: the redirect finishes the order itself
+    @Test
+    public void testSuccessRedirectFinishesOrdersTheWebhookDidNot() throws Exception {
+        CaptureIdempotencyService captureIdempotencyService = mock(CaptureIdempotencyService.class);
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(WEBHOOK_ID, certUrl -> keyPair.getPublic());
+        PaymentController webhookController = new PaymentController(paymentService, captureIdempotencyService, verifier, processor, new ObjectMapper());
+        ReflectionTestUtils.setField(webhookController, "webhookEnabled", true);
+        when(captureIdempotencyService.getStatus("ORDER-1")).thenReturn(Optional.empty());
+        when(captureIdempotencyService.getStatus("ORDER-2")).thenReturn(Optional.of(CaptureStatus.FAILED));
+        when(captureIdempotencyService.getStatus("ORDER-3")).thenReturn(Optional.of(CaptureStatus.IN_PROGRESS));
+        when(paymentService.finishPayment(anyString(), eq(false))).thenReturn(CaptureStatus.COMPLETED);
+
+        assertEquals(HttpStatus.OK, webhookController.handlePaymentSuccess("ORDER-1").getStatusCode());
+        assertEquals(HttpStatus.OK, webhookController.handlePaymentSuccess("ORDER-2").getStatusCode());
+        assertEquals(HttpStatus.ACCEPTED, webhookController.handlePaymentSuccess("ORDER-3").getStatusCode());
+
+        verify(paymentService).finishPayment("ORDER-1", false);
+        verify(paymentService).finishPayment("ORDER-2", false);
+        verify(paymentService, never()).finishPayment(eq("ORDER-3"), anyBoolean());
+    }
+
+    @Test
+    public void testForeignCertificateHostIsRefused() {
+        WebhookSignatureVerifier verifier = new WebhookSignatureVerifier(WEBHOOK_ID, certUrl -> {
+            throw new PaymentException("Webhook certificate is not hosted by PayPal: " + certUrl);
+        });
+        assertThrows(PaymentException.class, () -> verifier.verify("id", "time", "https://evil.example.com/cert",
+                "SHA256withRSA", "AAAA", "{}"));
+    }
+
+    // The stub sender: signs like PayPal does, with our own key standing in for PayPal's certificate
+    private ResponseEntity<ApiResponse<String>> send(String transmissionId, String body) throws Exception {
+        Map<String, String> headers = sign(transmissionId, body);
+        return controller.handleWebhook(headers.get("id"), headers.get("time"), CERT_URL, "SHA256withRSA", headers.get("sig"), body);
+    }
+
+    private Map<String, String> sign(String transmissionId, String body) throws Exception {
+        String time = "2024-10-18T10:00:00Z";
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update((transmissionId + "|" + time + "|" + WEBHOOK_ID + "|" + crc.getValue()).getBytes(StandardCharsets.UTF_8));
+        return Map.of("id", transmissionId, "time", time, "sig", Base64.getEncoder().encodeToString(signature.sign()));
+    }
+
+    private static String orderApproved(String orderId) {
+        return "{\"id\":\"WH-" + orderId + "\",\"event_type\":\"CHECKOUT.ORDER.APPROVED\",\"resource\":{\"id\":\"" + orderId + "\"}}";
+    }
+
+    private static String captureCompleted(String orderId) {
+        return "{\"id\":\"WH-" + orderId + "\",\"event_type\":\"PAYMENT.CAPTURE.COMPLETED\",\"resource\":{\"id\":\"CAP-1\","
+                + "\"supplementary_data\":{\"related_ids\":{\"order_id\":\"" + orderId + "\"}}}}";
+    }
+}
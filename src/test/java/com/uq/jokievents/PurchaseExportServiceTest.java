@@ -0,0 +1,116 @@
+package com.uq.jokievents;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.LocalityOrder;
+import com.uq.jokievents.model.Purchase;
+import com.uq.jokievents.model.enums.ExportFormat;
+import com.uq.jokievents.service.implementation.PurchaseExportServiceImpl;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class PurchaseExportServiceTest {
+
+    private MongoTemplate mongoTemplate;
+    private PurchaseExportServiceImpl exportService;
+    private final AtomicBoolean cursorClosed = new AtomicBoolean();
+
+    @BeforeEach
+    public void setup() {
+        mongoTemplate = mock(MongoTemplate.class);
+        exportService = new PurchaseExportServiceImpl(mongoTemplate, new ObjectMapper(), new SimpleMeterRegistry(), 500, 100);
+        when(mongoTemplate.findOne(any(Query.class), eq(Event.class))).thenAnswer(invocation -> {
+            String eventId = invocation.getArgument(0, Query.class).getQueryObject().getString("_id");
+            return eventId.equals("event-1") ? Event.builder().id("event-1").name("Rock, al \"Parque\"").build() : null;
+        });
+        List<Purchase> purchases = IntStream.range(0, 3)
+                .mapToObj(i -> Purchase.builder()
+                        .id("purchase-" + i)
+                        .clientId("client-" + i)
+                        .purchaseDate(LocalDateTime.of(2030, 5, 1 + i, 10, 0))
+                        .totalAmount(new BigDecimal("150000.50"))
+                        .paymentMethod("PayPal")
+                        .purchasedItems(List.of(
+                                item("event-1", "VIP", 2, 100000.0),
+                                item(i == 2 ? "event-gone" : "event-1", "General", 1, 50000.5)))
+                        .build())
+                .toList();
+        when(mongoTemplate.stream(any(Query.class), eq(Purchase.class)))
+                .thenAnswer(invocation -> purchases.stream().onClose(() -> cursorClosed.set(true)));
+    }
+
+    @Test
+    public void testNdjsonHasOneLinePerItemAndLooksEventsUpOnce() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.exportPurchases(LocalDateTime.of(2030, 5, 1, 0, 0), LocalDateTime.of(2030, 6, 1, 0, 0),
+                ExportFormat.NDJSON, false, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(6, rows);
+        assertEquals(6, lines.length);
+        JsonNode first = new ObjectMapper().readTree(lines[0]);
+        assertEquals("purchase-0", first.get("purchaseId").asText());
+        assertEquals("2030-05-01T10:00", first.get("purchaseDate").asText());
+        assertEquals("Rock, al \"Parque\"", first.get("eventName").asText());
+        assertEquals(2, first.get("tickets").asInt());
+        assertTrue(lines[0].contains("\"purchaseTotal\":150000.50,"), lines[0]); // Written as the exact decimal
+        assertEquals("", new ObjectMapper().readTree(lines[5]).get("eventName").asText());
+
+        // Two distinct events, each looked up once
+        verify(mongoTemplate, times(2)).findOne(any(Query.class), eq(Event.class));
+        assertTrue(cursorClosed.get());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(Purchase.class));
+        assertEquals(500, query.getValue().getMeta().getCursorBatchSize());
+        assertTrue(query.getValue().getQueryObject().containsKey("purchaseDate"));
+    }
+
+    @Test
+    public void testGzippedCsvIsEscaped() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportPurchases(null, null, ExportFormat.CSV, true, out);
+
+        String csv;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            csv = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        String[] lines = csv.split("\n");
+        assertEquals(7, lines.length);
+        assertEquals("purchaseId,purchaseDate,clientId,paymentMethod,purchaseTotal,eventId,eventName,localityName,tickets,itemTotal,payingOrderId", lines[0]);
+        assertEquals("purchase-0,2030-05-01T10:00,client-0,PayPal,150000.50,event-1,\"Rock, al \"\"Parque\"\"\",VIP,2,100000.0,order-1", lines[1]);
+        assertEquals("purchase-2,2030-05-03T10:00,client-2,PayPal,150000.50,event-gone,,General,1,50000.5,order-1", lines[6]);
+    }
+
+    private static LocalityOrder item(String eventId, String localityName, int tickets, double total) {
+        LocalityOrder item = new LocalityOrder();
+        item.setEventId(eventId);
+        item.setLocalityName(localityName);
+        item.setNumTicketsSelected(tickets);
+        item.setTotalPaymentAmount(total);
+        item.setPayingOrderId("order-1");
+        return item;
+    }
+}
@@ -0,0 +1,116 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.exceptions.PaymentGatewayUnavailableException;
+import com.uq.jokievents.service.implementation.ResilientPaymentGateway;
+import com.uq.jokievents.service.interfaces.PaymentGateway;
+import com.uq.jokievents.utils.CircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResilientPaymentGatewayTest {
+
+    // Fake gateway whose behavior is switched from the test
+    private static class FakeGateway implements PaymentGateway {
+        volatile long delayMs;
+        volatile boolean failing;
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public String name() {
+            return "Fake";
+        }
+
+        @Override
+        public GatewayOrderDTO createOrder(String referenceId, String description, BigDecimal amount) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failing) {
+                throw new PaymentException("Gateway down");
+            }
+            return new GatewayOrderDTO("ORDER", "CREATED", "http://approve");
+        }
+
+        @Override
+        public GatewayCaptureDTO captureOrder(String orderId) {
+            return new GatewayCaptureDTO(orderId, "CAP", "COMPLETED");
+        }
+    }
+
+    @Test
+    public void testSlowGatewayHitsTheDeadline() {
+        FakeGateway fake = new FakeGateway();
+        fake.delayMs = 1000;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ResilientPaymentGateway gateway = new ResilientPaymentGateway(fake, new CircuitBreaker(10, 0.5, 1000), registry, 4, 100, 100, 100);
+        try {
+            long start = System.nanoTime();
+            assertThrows(PaymentGatewayUnavailableException.class, () -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+            assertEquals(1, registry.get("payment.gateway.requests").tag("operation", "create").tag("outcome", "timeout").timer().count());
+        } finally {
+            gateway.shutdown();
+        }
+    }
+
+    @Test
+    public void testBreakerOpensAndRecovers() {
+        FakeGateway fake = new FakeGateway();
+        fake.failing = true;
+        AtomicLong now = new AtomicLong();
+        CircuitBreaker breaker = new CircuitBreaker(4, 0.5, 1000, now::get);
+        ResilientPaymentGateway gateway = new ResilientPaymentGateway(fake, breaker, new SimpleMeterRegistry(), 4, 100, 1000, 1000);
+        try {
+            for (int i = 0; i < 4; i++) {
+                assertThrows(PaymentException.class, () -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            }
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+            // While open nothing reaches the gateway
+            assertThrows(PaymentGatewayUnavailableException.class, () -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            assertEquals(4, fake.calls.get());
+
+            // After the open window one trial goes through, and it working closes the breaker
+            now.addAndGet(1000);
+            fake.failing = false;
+            assertEquals("ORDER", gateway.createOrder("cart", "", BigDecimal.TEN).orderId());
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        } finally {
+            gateway.shutdown();
+        }
+    }
+
+    @Test
+    public void testBulkheadRejectsWhenFull() throws Exception {
+        FakeGateway fake = new FakeGateway();
+        fake.delayMs = 500;
+        ResilientPaymentGateway gateway = new ResilientPaymentGateway(fake, new CircuitBreaker(10, 0.5, 1000), new SimpleMeterRegistry(), 2, 50, 2000, 2000);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> first = callers.submit(() -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            Future<?> second = callers.submit(() -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            Thread.sleep(100);
+
+            assertThrows(PaymentGatewayUnavailableException.class, () -> gateway.createOrder("cart", "", BigDecimal.TEN));
+            first.get();
+            second.get();
+            assertEquals("ORDER", gateway.createOrder("cart", "", BigDecimal.TEN).orderId());
+        } finally {
+            callers.shutdownNow();
+            gateway.shutdown();
+        }
+    }
+}
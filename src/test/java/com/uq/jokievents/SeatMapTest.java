@@ -0,0 +1,151 @@
+package com.uq.jokievents;
+
+import com.mongodb.client.result.UpdateResult;
+import com.uq.jokievents.exceptions.EventException;
+import com.uq.jokievents.model.Event;
+import com.uq.jokievents.model.Locality;
+import com.uq.jokievents.repository.EventRepository;
+import com.uq.jokievents.service.implementation.SeatMapServiceImpl;
+import com.uq.jokievents.utils.SeatMap;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class SeatMapTest {
+
+    @Test
+    public void testContiguousBlocksAndRunLengths() {
+        SeatMap seatMap = new SeatMap(100);
+
+        assertArrayEquals(new int[]{0, 1, 2, 3}, seatMap.claimBestAvailable(4));
+        assertTrue(seatMap.claim(6));
+        // Seats 4 and 5 are a hole of two, a group of three has to go after seat 6
+        assertArrayEquals(new int[]{7, 8, 9}, seatMap.claimBestAvailable(3));
+        assertArrayEquals(new int[]{0, 4, 2, 4, 90}, seatMap.runLengths());
+        assertEquals(92, seatMap.available());
+
+        SeatMap restored = SeatMap.fromBytes(100, seatMap.toBytes());
+        assertArrayEquals(seatMap.runLengths(), restored.runLengths());
+    }
+
+    @Test
+    public void testFragmentedLocalityFallsBackToSingleSeats() {
+        SeatMap seatMap = new SeatMap(10);
+        for (int seat = 0; seat < 10; seat += 2) {
+            seatMap.claim(seat);
+        }
+
+        assertArrayEquals(new int[]{1, 3, 5}, seatMap.claimBestAvailable(3));
+        assertArrayEquals(new int[]{7, 9}, seatMap.claimBestAvailable(3)); // Sold out after two
+        assertEquals(0, seatMap.available());
+    }
+
+    // Stadium sized locality sold out by many buyers at once, no seat can be given twice. SeatMapBenchmark measures the throughput
+    @Test
+    public void testConcurrentAllocationInStadiumLocality() throws Exception {
+        int capacity = 60_000;
+        int buyers = 16;
+        SeatMap seatMap = new SeatMap(capacity);
+        AtomicIntegerArray owners = new AtomicIntegerArray(capacity);
+
+        ExecutorService pool = Executors.newFixedThreadPool(buyers);
+        List<Future<Integer>> runs = new ArrayList<>();
+        for (int buyer = 1; buyer <= buyers; buyer++) {
+            int buyerId = buyer;
+            runs.add(pool.submit(() -> {
+                Random random = new Random(buyerId);
+                int allocations = 0;
+                while (true) {
+                    int[] seats = seatMap.claimBestAvailable(1 + random.nextInt(8));
+                    if (seats.length == 0) {
+                        return allocations;
+                    }
+                    for (int seat : seats) {
+                        assertTrue(owners.compareAndSet(seat, 0, buyerId), "Seat " + seat + " given twice");
+                    }
+                    allocations++;
+                }
+            }));
+        }
+        int allocations = 0;
+        for (Future<Integer> run : runs) {
+            allocations += run.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertTrue(allocations >= capacity / 8);
+        assertEquals(0, seatMap.available());
+        for (int seat = 0; seat < capacity; seat++) {
+            assertNotEquals(0, owners.get(seat));
+        }
+        assertArrayEquals(new int[]{0, capacity}, seatMap.runLengths());
+    }
+
+    // Another node sold seats 0 and 1 after this one cached the map, its write must not be overwritten
+    @Test
+    public void testClaimRetriesWhenAnotherNodeWroteFirst() {
+        SeatMap soldElsewhere = new SeatMap(10);
+        soldElsewhere.claim(0);
+        soldElsewhere.claim(1);
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findById("event"))
+                .thenReturn(Optional.of(eventWithSeats(null, 0)))
+                .thenReturn(Optional.of(eventWithSeats(soldElsewhere.toBytes(), 1)));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Event.class))).thenReturn(
+                UpdateResult.acknowledged(0, 0L, null),
+                UpdateResult.acknowledged(1, 1L, null));
+        SeatMapServiceImpl seatMapService = new SeatMapServiceImpl(eventRepository, mongoTemplate);
+
+        assertArrayEquals(new int[]{2, 3}, seatMapService.claimSeats("event", "Platea", 2));
+
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<UpdateDefinition> updates = ArgumentCaptor.forClass(UpdateDefinition.class);
+        verify(mongoTemplate, times(2)).updateFirst(queries.capture(), updates.capture(), eq(Event.class));
+        Document retried = queries.getAllValues().get(1).getQueryObject().get("localities", Document.class).get("$elemMatch", Document.class);
+        assertEquals(1L, retried.get("seatMapVersion"));
+        byte[] stored = (byte[]) updates.getAllValues().get(1).getUpdateObject().get("$set", Document.class).get("localities.$.seatMap");
+        assertArrayEquals(new int[]{0, 4, 6}, SeatMap.fromBytes(10, stored).runLengths());
+        assertEquals(6, seatMapService.getSeatAvailability("event", "Platea").get("available")); // Served from the cache
+        verify(eventRepository, times(2)).findById("event");
+    }
+
+    @Test
+    public void testClaimIsAllOrNothing() {
+        SeatMap almostFull = new SeatMap(10);
+        for (int seat = 0; seat < 9; seat++) {
+            almostFull.claim(seat);
+        }
+        EventRepository eventRepository = mock(EventRepository.class);
+        when(eventRepository.findById("event")).thenReturn(Optional.of(eventWithSeats(almostFull.toBytes(), 3)));
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        SeatMapServiceImpl seatMapService = new SeatMapServiceImpl(eventRepository, mongoTemplate);
+
+        assertThrows(EventException.class, () -> seatMapService.claimSeats("event", "Platea", 2));
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(UpdateDefinition.class), eq(Event.class));
+        verify(eventRepository, times(2)).findById("event"); // The cached map is checked against the stored one before saying no
+        assertEquals(1, seatMapService.getSeatAvailability("event", "Platea").get("available"));
+    }
+
+    private static Event eventWithSeats(byte[] seatMap, long version) {
+        Locality locality = Locality.builder().name("Platea").maxCapacity(10).numberedSeating(true)
+                .seatMap(seatMap).seatMapVersion(version).build();
+        return Event.builder().id("event").localities(List.of(locality)).build();
+    }
+}
@@ -0,0 +1,46 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.GatewayCaptureDTO;
+import com.uq.jokievents.dtos.GatewayOrderDTO;
+import com.uq.jokievents.exceptions.PaymentException;
+import com.uq.jokievents.service.implementation.SimulatedPaymentGateway;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SimulatedPaymentGatewayTest {
+
+    private SimulatedPaymentGateway gateway(long latencyMs, double failureRate) {
+        SimulatedPaymentGateway gateway = new SimulatedPaymentGateway();
+        ReflectionTestUtils.setField(gateway, "latencyMs", latencyMs);
+        ReflectionTestUtils.setField(gateway, "jitterMs", 0L);
+        ReflectionTestUtils.setField(gateway, "failureRate", failureRate);
+        ReflectionTestUtils.setField(gateway, "returnUrl", "http://localhost:8080/api/payment/success");
+        return gateway;
+    }
+
+    @Test
+    public void testOrderCanBeCapturedOnce() {
+        SimulatedPaymentGateway gateway = gateway(0, 0.0);
+
+        GatewayOrderDTO order = gateway.createOrder("cart-1", " | 2x VIP", new BigDecimal("120.50"));
+        assertTrue(order.approvalUrl().endsWith("?token=" + order.orderId()));
+
+        GatewayCaptureDTO capture = gateway.captureOrder(order.orderId());
+        assertEquals("COMPLETED", capture.status());
+        assertThrows(PaymentException.class, () -> gateway.captureOrder(order.orderId()));
+    }
+
+    @Test
+    public void testFailureRateAndLatencyAreApplied() {
+        assertThrows(PaymentException.class, () -> gateway(0, 1.0).createOrder("cart-1", "", BigDecimal.TEN));
+
+        SimulatedPaymentGateway slow = gateway(50, 0.0);
+        long start = System.nanoTime();
+        slow.createOrder("cart-1", "", BigDecimal.TEN);
+        assertTrue(System.nanoTime() - start >= 50_000_000L);
+    }
+}
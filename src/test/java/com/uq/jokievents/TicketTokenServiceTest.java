@@ -0,0 +1,52 @@
+package com.uq.jokievents;
+
+import com.uq.jokievents.dtos.TicketTokenDTO;
+import com.uq.jokievents.exceptions.LogicException;
+import com.uq.jokievents.service.implementation.TicketTokenServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TicketTokenServiceTest {
+
+    private TicketTokenServiceImpl ticketTokenService;
+
+    @BeforeEach
+    public void setup() {
+        ticketTokenService = new TicketTokenServiceImpl();
+        ReflectionTestUtils.setField(ticketTokenService, "ticketSecret", "a-test-secret-that-is-long-enough-for-hmac");
+    }
+
+    @Test
+    public void testIssuedTokenVerifies() {
+        TicketTokenDTO ticket = new TicketTokenDTO("67a1c2d3e4f5a6b7c8d9e0f1", "6706a5101654657267419fef", "66f3b71c95dcb9591580d078", "VIP Ñandú", 4);
+        TicketTokenDTO generalAdmission = new TicketTokenDTO("67a1c2d3e4f5a6b7c8d9e0f2", "6706a5101654657267419fef", "66f3b71c95dcb9591580d078", "General", null);
+
+        assertEquals(ticket, ticketTokenService.verifyToken(ticketTokenService.issueToken(ticket)));
+        assertEquals(generalAdmission, ticketTokenService.verifyToken(ticketTokenService.issueToken(generalAdmission)));
+    }
+
+    @Test
+    public void testTamperedTokenIsRejected() {
+        String token = ticketTokenService.issueToken(new TicketTokenDTO("ticket", "purchase", "event", "General", 12));
+        byte[] raw = Base64.getUrlDecoder().decode(token);
+        raw[raw.length - 17] ^= 1; // flip a bit of the seat number
+        String tampered = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+
+        assertThrows(LogicException.class, () -> ticketTokenService.verifyToken(tampered));
+    }
+
+    @Test
+    public void testTokenFromAnotherSecretIsRejected() {
+        TicketTokenServiceImpl otherIssuer = new TicketTokenServiceImpl();
+        ReflectionTestUtils.setField(otherIssuer, "ticketSecret", "somebody-else-secret");
+        String token = otherIssuer.issueToken(new TicketTokenDTO("ticket", "purchase", "event", "General", null));
+
+        assertThrows(LogicException.class, () -> ticketTokenService.verifyToken(token));
+        assertThrows(LogicException.class, () -> ticketTokenService.verifyToken("not a token"));
+    }
+}